@@ -78,6 +78,17 @@ class ElasticAttributeProvider extends GeoServerDataProvider<ElasticAttribute> {
      */
     static final Property<ElasticAttribute> STORED = new BeanProperty<>("stored", "stored");
 
+    /**
+     * Retrieve field through doc values
+     */
+    static final Property<ElasticAttribute> DOC_VALUES = new BeanProperty<>("useDocValues", "useDocValues");
+
+    /**
+     * Binary field holding the geometry as WKB
+     */
+    static final Property<ElasticAttribute> BINARY_GEOMETRY = new BeanProperty<>("binaryGeometryField",
+            "binaryGeometryField");
+
     /**
      * Order of the field
      */
@@ -99,7 +110,7 @@ class ElasticAttributeProvider extends GeoServerDataProvider<ElasticAttribute> {
 
     @Override
     protected List<org.geoserver.web.wicket.GeoServerDataProvider.Property<ElasticAttribute>> getProperties() {
-        return Arrays.asList(USE, NAME, TYPE, ORDER, CUSTOM_NAME, DEFAULT_GEOMETRY, STORED, ANALYZED, SRID, DATE_FORMAT);
+        return Arrays.asList(USE, NAME, TYPE, ORDER, CUSTOM_NAME, DEFAULT_GEOMETRY, STORED, DOC_VALUES, BINARY_GEOMETRY, ANALYZED, SRID, DATE_FORMAT);
     }
 
     @Override
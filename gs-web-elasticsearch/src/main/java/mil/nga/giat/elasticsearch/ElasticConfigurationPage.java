@@ -256,6 +256,12 @@ abstract class ElasticConfigurationPage extends Panel {
      */
     private GeoServerTablePanel<ElasticAttribute> getElasticAttributePanel(
             ElasticAttributeProvider attProvider) {
+        final List<String> binaryFields = new ArrayList<>();
+        for (ElasticAttribute attribute : attProvider.getItems()) {
+            if (byte[].class.equals(attribute.getType())) {
+                binaryFields.add(attribute.getName());
+            }
+        }
         GeoServerTablePanel<ElasticAttribute> atts = new GeoServerTablePanel<ElasticAttribute>(
                 "esAttributes", attProvider) {
             @Override
@@ -323,6 +329,27 @@ abstract class ElasticConfigurationPage extends Panel {
                     } else {
                         return new Fragment(id, "empty", ElasticConfigurationPage.this);
                     } 
+                } else if (property == ElasticAttributeProvider.DOC_VALUES) {
+                    if (att.isDocValues()) {
+                        Fragment f = new Fragment(id, "checkboxDocValues", ElasticConfigurationPage.this);
+                        f.add(new CheckBox("useDocValues", new PropertyModel<>(itemModel, "useDocValues")));
+                        return f;
+                    } else {
+                        return new Fragment(id, "empty", ElasticConfigurationPage.this);
+                    }
+                } else if (property == ElasticAttributeProvider.BINARY_GEOMETRY) {
+                    if (isGeometry && !binaryFields.isEmpty()) {
+                        Fragment f = new Fragment(id, "binaryGeometry", ElasticConfigurationPage.this);
+                        DropDownChoice<String> binaryField = new DropDownChoice<>("binaryGeometryField",
+                                new PropertyModel<>(itemModel, "binaryGeometryField"), binaryFields);
+                        binaryField.setNullValid(true);
+                        f.add(binaryField);
+                        f.add(new CheckBox("binaryGeometryFallback",
+                                new PropertyModel<>(itemModel, "binaryGeometryFallback")));
+                        return f;
+                    } else {
+                        return new Fragment(id, "empty", ElasticConfigurationPage.this);
+                    }
                 } else if (property == ElasticAttributeProvider.ORDER) {
                     TextField<Integer> order = new TextField<>("order", new PropertyModel<>(itemModel, "order"));
                     Fragment f = new Fragment(id, "textOrderValue", ElasticConfigurationPage.this);
@@ -343,6 +370,8 @@ abstract class ElasticConfigurationPage extends Panel {
                     item.add(new AttributeModifier("style",Model.of("text-align:center")));
                 } else if (property == ElasticAttributeProvider.ANALYZED) {
                     item.add(new AttributeModifier("style",Model.of("text-align:center")));
+                } else if (property == ElasticAttributeProvider.DOC_VALUES) {
+                    item.add(new AttributeModifier("style",Model.of("text-align:center")));
                 }
             }
         };
@@ -0,0 +1,48 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.elasticsearch;
+
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.Request;
+
+import mil.nga.giat.data.elasticsearch.ElasticOpaqueId;
+
+/**
+ * Makes an id of the OWS request being dispatched available to the
+ * Elasticsearch data store, which includes it in the {@code X-Opaque-Id}
+ * header of the Elasticsearch requests made while handling the request.
+ * An {@code X-Request-Id} header on the incoming request (e.g. set by a
+ * proxy) is used when present, trimmed, sanitized and truncated by
+ * {@link ElasticOpaqueId#setRequestId(String)}, otherwise a random id is
+ * generated.
+ */
+public class ElasticRequestIdCallback extends AbstractDispatcherCallback {
+
+    static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    @Override
+    public Request init(Request request) {
+        final HttpServletRequest httpRequest = request.getHttpRequest();
+        final String header = httpRequest != null ? httpRequest.getHeader(REQUEST_ID_HEADER) : null;
+        final String requestId;
+        if (header != null && !header.trim().isEmpty()) {
+            requestId = header;
+        } else {
+            requestId = UUID.randomUUID().toString();
+        }
+        ElasticOpaqueId.setRequestId(requestId);
+        return request;
+    }
+
+    @Override
+    public void finished(Request request) {
+        ElasticOpaqueId.clearRequestId();
+    }
+
+}
@@ -12,6 +12,6 @@ public interface AggregationCache {
 
     List<Map<String, Object>> getBuckets(int precision, Query query);
 
-    boolean supportsQuery(FilterToElastic filterToElastic);
+    boolean supportsQuery(ElasticQueryPlan queryPlan);
 
 }
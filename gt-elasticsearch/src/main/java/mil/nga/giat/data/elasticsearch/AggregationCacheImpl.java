@@ -12,9 +12,16 @@ import org.geotools.data.Query;
 import org.geotools.util.logging.Logging;
 import org.opengis.filter.spatial.BBOX;
 import org.opengis.geometry.BoundingBox;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -25,6 +32,9 @@ public class AggregationCacheImpl implements AggregationCache {
 
     private static final int MAX_CACHED_PRECISION = 6;
     private static final int MAX_NESTED_AGGREGATION_PRECISION = 5;
+    private static final int MAX_CONCURRENT_AGGREGATIONS = 8;
+    /** Cached layer, whose type name is also its document type */
+    private static final String TYPE_NAME = "cell-towers";
 
     private Map<Integer, RTree<Map<String, Object>, Geometry>> treesByPrecision;
 
@@ -69,15 +79,11 @@ public class AggregationCacheImpl implements AggregationCache {
     }
 
     @Override
-    public boolean supportsQuery(FilterToElastic filterToElastic) {
-        boolean nestedAggregationRequested = false;
-        Integer precision = null;
-        if (filterToElastic.getAggregations() != null && filterToElastic.getAggregations().containsKey("agg")) {
-            precision = Integer.parseInt((String) filterToElastic.getAggregations().get("agg").get("geohash_grid").get("precision"));
-            nestedAggregationRequested = filterToElastic.getAggregations().get("agg").size() > 1;
-        }
+    public boolean supportsQuery(ElasticQueryPlan queryPlan) {
+        final Integer precision = queryPlan.getPrecision();
+        final boolean nestedAggregationRequested = queryPlan.isNestedAggregation();
 
-        boolean userFilterApplied = filterToElastic.getNativeQueryBuilder().size() != 1 || filterToElastic.getNativeQueryBuilder().keySet().iterator().next() != "match_all";
+        boolean userFilterApplied = queryPlan.getNativeQueryBuilder().size() != 1 || queryPlan.getNativeQueryBuilder().keySet().iterator().next() != "match_all";
 
         return precision != null &&
                 precision <= MAX_CACHED_PRECISION &&
@@ -94,20 +100,58 @@ public class AggregationCacheImpl implements AggregationCache {
     }
 
     private void performAggregationAndCacheResults(ElasticDataStore dataStore, int precision, int latitudeSize, int longitudeSize) throws IOException {
+        // tiles are requested concurrently on the data store executor, limited to avoid overloading the cluster
+        ExecutorService executor = dataStore.getExecutor();
+        Semaphore permits = new Semaphore(MAX_CONCURRENT_AGGREGATIONS);
+        List<Future<List<Map<String, Object>>>> tiles = new ArrayList<>();
         List<Map<String, Object>> buckets = new ArrayList<>();
-        for (double minLat = -180d; minLat <= (180d - latitudeSize); minLat += latitudeSize) {
-            for (double minLon = -90d; minLon <= (90 - longitudeSize); minLon += longitudeSize) {
-                LOGGER.severe("Agg for precision " + precision + " lat: " + minLat + " to " + (minLat + latitudeSize) + ", lon: " + minLon + " to " + (minLon + longitudeSize));
-                buckets.addAll(performAggregation(dataStore, precision, minLat, minLat + latitudeSize, minLon, minLon + longitudeSize));
+        String opaqueId = ElasticOpaqueId.create(TYPE_NAME, ElasticOpaqueId.AGGREGATION_CACHE_WARMUP);
+        try {
+            for (double minLat = -180d; minLat <= (180d - latitudeSize); minLat += latitudeSize) {
+                for (double minLon = -90d; minLon <= (90 - longitudeSize); minLon += longitudeSize) {
+                    final double tileMinLat = minLat;
+                    final double tileMinLon = minLon;
+                    LOGGER.severe("Agg for precision " + precision + " lat: " + minLat + " to " + (minLat + latitudeSize) + ", lon: " + minLon + " to " + (minLon + longitudeSize));
+                    permits.acquire();
+                    try {
+                        // the security context is propagated to the worker and the opaque id holds the caller request id
+                        tiles.add(executor.submit(new DelegatingSecurityContextCallable<>(() -> {
+                            try {
+                                return performAggregation(dataStore, opaqueId, precision, tileMinLat, tileMinLat + latitudeSize, tileMinLon, tileMinLon + longitudeSize);
+                            } finally {
+                                permits.release();
+                            }
+                        })));
+                    } catch (RejectedExecutionException e) {
+                        // the executor is shut down once the data store is disposed
+                        permits.release();
+                        tiles.forEach(tile -> tile.cancel(true));
+                        throw new IOException("Error initializing aggregation cache", e);
+                    }
+                }
+            }
+            for (Future<List<Map<String, Object>>> tile : tiles) {
+                buckets.addAll(tile.get());
+            }
+        } catch (InterruptedException e) {
+            tiles.forEach(tile -> tile.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while initializing aggregation cache");
+        } catch (ExecutionException e) {
+            tiles.forEach(tile -> tile.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException("Error initializing aggregation cache", e.getCause());
         }
         LOGGER.severe("Initialized precision " + precision + " with " + buckets.size() + " buckets");
         this.putBuckets(precision, buckets);
     }
 
-    private List<Map<String, Object>> performAggregation(ElasticDataStore dataStore, int precision, double minLat, double maxLat, double minLon, double maxLon) throws IOException {
+    private List<Map<String, Object>> performAggregation(ElasticDataStore dataStore, String opaqueId, int precision, double minLat, double maxLat, double minLon, double maxLon) throws IOException {
         ElasticRequest searchRequest = prepareSearchRequest(precision, minLat, maxLat, minLon, maxLon);
-        ElasticResponse response = dataStore.getClient().search(dataStore.getIndexName(), "cell-towers", searchRequest);
+        searchRequest.setOpaqueId(opaqueId);
+        ElasticResponse response = dataStore.getClient().search(dataStore.getIndexName(), TYPE_NAME, searchRequest);
         return response.getAggregations().values().iterator().next().getBuckets();
     }
 
@@ -0,0 +1,94 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticBuckets.DOC_COUNT;
+import static mil.nga.giat.data.elasticsearch.ElasticBuckets.KEY;
+import static mil.nga.giat.data.elasticsearch.ElasticBuckets.VALUE;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Deserializes an aggregation bucket array directly into
+ * {@link ElasticBuckets} without creating intermediate bucket maps.
+ */
+public class BucketsDeserializer extends StdDeserializer<List<Map<String,Object>>> {
+
+    public BucketsDeserializer() {
+        super(List.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Map<String,Object>> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()) {
+            return (List<Map<String,Object>>) context.handleUnexpectedToken(List.class, parser);
+        }
+        final ElasticBuckets.Builder builder = new ElasticBuckets.Builder();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                return (List<Map<String,Object>>) context.handleUnexpectedToken(Map.class, parser);
+            }
+            builder.startBucket();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                token = parser.nextToken();
+                if (KEY.equals(name)) {
+                    builder.setKey(token == JsonToken.VALUE_STRING ? parser.getText() : context.readValue(parser, Object.class));
+                } else if (DOC_COUNT.equals(name) && token == JsonToken.VALUE_NUMBER_INT) {
+                    builder.setDocCount(parser.getLongValue());
+                } else if (token == JsonToken.START_OBJECT) {
+                    readSubAggregation(name, parser, context, builder);
+                } else {
+                    builder.setOther(name, context.readValue(parser, Object.class));
+                }
+            }
+            builder.endBucket();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read a sub-aggregation, as a metric column if it holds a single numeric
+     * (or null) value and otherwise as a map.
+     */
+    private void readSubAggregation(String name, JsonParser parser, DeserializationContext context,
+            ElasticBuckets.Builder builder) throws IOException {
+        final Map<String,Object> values = new LinkedHashMap<>();
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.FIELD_NAME && VALUE.equals(parser.getCurrentName())) {
+            token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL || token.isNumeric()) {
+                final Number value = token == JsonToken.VALUE_NULL ? null : parser.getNumberValue();
+                token = parser.nextToken();
+                if (token == JsonToken.END_OBJECT) {
+                    builder.setMetric(name, value);
+                    return;
+                }
+                values.put(VALUE, value);
+            } else {
+                values.put(VALUE, context.readValue(parser, Object.class));
+                token = parser.nextToken();
+            }
+        }
+        while (token == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            values.put(field, context.readValue(parser, Object.class));
+            token = parser.nextToken();
+        }
+        builder.setOther(name, values);
+    }
+
+}
@@ -5,6 +5,7 @@
 package mil.nga.giat.data.elasticsearch;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import java.util.List;
 import java.util.Map;
@@ -12,6 +13,7 @@ import java.util.Map;
 @JsonIgnoreProperties(ignoreUnknown = true)
 class ElasticAggregation {
 
+    @JsonDeserialize(using = BucketsDeserializer.class)
     private List<Map<String,Object>> buckets;
 
     public List<Map<String, Object>> getBuckets() {
@@ -50,6 +50,14 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
 
     private boolean nested;
 
+    private boolean docValues;
+
+    private boolean useDocValues;
+
+    private String binaryGeometryField;
+
+    private boolean binaryGeometryFallback;
+
     private Integer order;
 
     private String customName;
@@ -77,6 +85,10 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
         this.analyzed = other.analyzed;
         this.stored = other.stored;
         this.nested = other.nested;
+        this.docValues = other.docValues;
+        this.useDocValues = other.useDocValues;
+        this.binaryGeometryField = other.binaryGeometryField;
+        this.binaryGeometryFallback = other.binaryGeometryFallback;
         this.order = other.order;
         this.customName = other.customName;
     }
@@ -173,6 +185,58 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
         this.nested = nested;
     }
 
+    /**
+     * @return Whether the field has doc values that can be retrieved through
+     * {@code docvalue_fields} (keyword, numeric, boolean, date and geo_point
+     * fields not disabling doc values)
+     */
+    public boolean isDocValues() {
+        return docValues;
+    }
+
+    public void setDocValues(boolean docValues) {
+        this.docValues = docValues;
+    }
+
+    /**
+     * @return Whether to retrieve the field through {@code docvalue_fields}
+     * instead of the document source
+     */
+    public boolean isUseDocValues() {
+        return useDocValues;
+    }
+
+    public void setUseDocValues(boolean useDocValues) {
+        this.useDocValues = useDocValues;
+    }
+
+    /**
+     * @return Full name of a binary field holding the geometry as WKB, read
+     * instead of the geometry field, or null to read the geometry field. The
+     * geometry field is still used in filters and is only retrieved if
+     * {@link #isBinaryGeometryFallback()} is set.
+     */
+    public String getBinaryGeometryField() {
+        return binaryGeometryField;
+    }
+
+    public void setBinaryGeometryField(String binaryGeometryField) {
+        this.binaryGeometryField = binaryGeometryField;
+    }
+
+    /**
+     * @return Whether to also retrieve the geometry field along with the
+     * binary field, to decode it for documents without a valid WKB value.
+     * Without the fallback such documents have no geometry.
+     */
+    public boolean isBinaryGeometryFallback() {
+        return binaryGeometryFallback;
+    }
+
+    public void setBinaryGeometryFallback(boolean binaryGeometryFallback) {
+        this.binaryGeometryFallback = binaryGeometryFallback;
+    }
+
     public void setOrder(Integer order) {
         this.order = order;
     }
@@ -202,7 +266,7 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
     @Override
     public int hashCode() {
         return Objects.hash(name, type, use, defaultGeometry, srid, dateFormat,
-                useShortName, geometryType, analyzed, stored, nested, order, customName);
+                useShortName, geometryType, analyzed, stored, nested, docValues, useDocValues, binaryGeometryField, binaryGeometryFallback, order, customName);
     }
 
     @Override
@@ -223,6 +287,10 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
             equal &= Objects.equals(analyzed, other.analyzed);
             equal &= Objects.equals(stored, other.stored);
             equal &= Objects.equals(nested, other.nested);
+            equal &= Objects.equals(docValues, other.docValues);
+            equal &= Objects.equals(useDocValues, other.useDocValues);
+            equal &= Objects.equals(binaryGeometryField, other.binaryGeometryField);
+            equal &= Objects.equals(binaryGeometryFallback, other.binaryGeometryFallback);
             equal &= Objects.equals(order, other.order);
             equal &= Objects.equals(customName, other.customName);
         }
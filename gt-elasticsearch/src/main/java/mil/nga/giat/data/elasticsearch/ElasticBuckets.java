@@ -0,0 +1,453 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact, column oriented aggregation buckets. Geohash keys are held as
+ * {@code long} morton codes, {@code doc_count} values as a {@code long[]} and
+ * single value metric sub-aggregations (e.g. {@code {"value": 1.5}}) as
+ * {@code double[]} columns. Other bucket entries (e.g. nested bucket
+ * aggregations) are kept as maps.
+ * <p>
+ * The buckets are also a read-only {@code List<Map<String,Object>>} whose
+ * elements are views created on access, so existing consumers of the untyped
+ * representation are unaffected.
+ */
+final class ElasticBuckets extends AbstractList<Map<String,Object>> {
+
+    static final String KEY = "key";
+
+    static final String DOC_COUNT = "doc_count";
+
+    static final String VALUE = "value";
+
+    /** Maximum geohash precision that fits a morton code */
+    static final int MAX_GEOHASH_PRECISION = 12;
+
+    /** Morton code returned for strings that are not valid geohashes */
+    static final long INVALID_GEOHASH = -1;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private static final int[] BASE32_INDEX = new int[128];
+
+    static {
+        Arrays.fill(BASE32_INDEX, -1);
+        for (int i = 0; i < BASE32.length(); i++) {
+            BASE32_INDEX[BASE32.charAt(i)] = i;
+        }
+    }
+
+    private final int size;
+
+    /** Geohash keys, or null if any key is not a geohash */
+    private final long[] geohashes;
+
+    /** Keys when not all keys are geohashes */
+    private final Object[] keys;
+
+    private final BitSet keyed;
+
+    private final long[] docCounts;
+
+    private final BitSet counted;
+
+    private final Map<String,MetricColumn> metrics;
+
+    /** Remaining entries of each bucket, or null if there are none */
+    private final Map<String,Object>[] others;
+
+    private ElasticBuckets(Builder builder) {
+        this.size = builder.size;
+        this.geohashes = builder.geohashes != null ? Arrays.copyOf(builder.geohashes, size) : null;
+        this.keys = builder.keys != null ? Arrays.copyOf(builder.keys, size) : null;
+        this.keyed = builder.keyed;
+        this.docCounts = Arrays.copyOf(builder.docCounts, size);
+        this.counted = builder.counted;
+        this.metrics = builder.metrics;
+        for (final MetricColumn column : metrics.values()) {
+            column.trim(size);
+        }
+        this.others = builder.others != null ? Arrays.copyOf(builder.others, size) : null;
+    }
+
+    /**
+     * Get compact buckets for a list of bucket maps.
+     *
+     * @param buckets Bucket maps
+     * @return The buckets if already compact, otherwise a compact copy or null
+     * if buckets is null
+     */
+    @SuppressWarnings("unchecked")
+    static ElasticBuckets valueOf(List<Map<String,Object>> buckets) {
+        if (buckets == null || buckets instanceof ElasticBuckets) {
+            return (ElasticBuckets) buckets;
+        }
+        final Builder builder = new Builder();
+        for (final Map<String,Object> bucket : buckets) {
+            builder.startBucket();
+            for (final Map.Entry<String,Object> entry : bucket.entrySet()) {
+                final Object value = entry.getValue();
+                if (KEY.equals(entry.getKey())) {
+                    builder.setKey(value);
+                } else if (DOC_COUNT.equals(entry.getKey()) && isIntegral(value)) {
+                    builder.setDocCount(((Number) value).longValue());
+                } else if (value instanceof Map && ((Map<?,?>) value).size() == 1 && ((Map<?,?>) value).containsKey(VALUE)
+                        && (((Map<?,?>) value).get(VALUE) == null || ((Map<?,?>) value).get(VALUE) instanceof Number)) {
+                    builder.setMetric(entry.getKey(), (Number) ((Map<?,?>) value).get(VALUE));
+                } else {
+                    builder.setOther(entry.getKey(), value);
+                }
+            }
+            builder.endBucket();
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return View of the bucket at the given index
+     */
+    @Override
+    public Map<String,Object> get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new BucketMap(index);
+    }
+
+    /**
+     * @return Whether all keys are geohashes
+     */
+    boolean isGeohashKeyed() {
+        return geohashes != null;
+    }
+
+    /**
+     * @return Morton code of the geohash key at the given index
+     * @see #isGeohashKeyed()
+     */
+    long getGeohash(int index) {
+        return geohashes[index];
+    }
+
+    /**
+     * @return Key at the given index or null if the bucket has no key
+     */
+    Object getKey(int index) {
+        if (!keyed.get(index)) {
+            return null;
+        }
+        return geohashes != null ? decodeGeohash(geohashes[index]) : keys[index];
+    }
+
+    /**
+     * @return Document count at the given index or 0 if the bucket has no
+     * document count
+     */
+    long getDocCount(int index) {
+        return docCounts[index];
+    }
+
+    long getMaxDocCount() {
+        long max = 0;
+        for (final long docCount : docCounts) {
+            max = Math.max(max, docCount);
+        }
+        return max;
+    }
+
+    /**
+     * @return Bucket indexes in ascending order of document count. The sort is
+     * stable.
+     */
+    int[] sortByDocCount() {
+        final int[] order = new int[size];
+        if (getMaxDocCount() <= Integer.MAX_VALUE) {
+            // sort document count and index packed into a single value
+            final long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = docCounts[i] << 32 | i;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) packed[i];
+            }
+        } else {
+            final Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, (i1, i2) -> Long.compare(docCounts[i1], docCounts[i2]));
+            for (int i = 0; i < size; i++) {
+                order[i] = boxed[i];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return Names of single value metric sub-aggregations
+     */
+    Set<String> getMetricNames() {
+        return Collections.unmodifiableSet(metrics.keySet());
+    }
+
+    /**
+     * @return Value of a metric sub-aggregation at the given index, or NaN if
+     * the value is null or missing
+     */
+    double getMetric(String name, int index) {
+        final MetricColumn column = metrics.get(name);
+        return column != null && column.present.get(index) ? column.values[index] : Double.NaN;
+    }
+
+    /**
+     * Encode a geohash as a morton code. The five bit groups of the geohash
+     * are concatenated, which interleaves the longitude and latitude bits, and
+     * the precision is held in the low four bits.
+     *
+     * @param geohash Geohash
+     * @return Morton code or {@link #INVALID_GEOHASH} if the value is not a
+     * lower case geohash of at most {@link #MAX_GEOHASH_PRECISION} characters
+     */
+    static long encodeGeohash(String geohash) {
+        final int precision = geohash.length();
+        if (precision == 0 || precision > MAX_GEOHASH_PRECISION) {
+            return INVALID_GEOHASH;
+        }
+        long bits = 0;
+        for (int i = 0; i < precision; i++) {
+            final char c = geohash.charAt(i);
+            final int value = c < BASE32_INDEX.length ? BASE32_INDEX[c] : -1;
+            if (value < 0) {
+                return INVALID_GEOHASH;
+            }
+            bits = bits << 5 | value;
+        }
+        return bits << (5 * (MAX_GEOHASH_PRECISION - precision) + 4) | precision;
+    }
+
+    static String decodeGeohash(long code) {
+        final int precision = (int) (code & 0xf);
+        final char[] chars = new char[precision];
+        for (int i = 0; i < precision; i++) {
+            chars[i] = BASE32.charAt((int) (code >>> (64 - 5 * (i + 1)) & 0x1f));
+        }
+        return new String(chars);
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    private static Number box(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    /**
+     * Lazy map view of a bucket. Integral values are boxed as Integer when in
+     * range, like untyped deserialization.
+     */
+    private class BucketMap extends AbstractMap<String,Object> {
+
+        private final int index;
+
+        BucketMap(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object get(Object name) {
+            if (KEY.equals(name) && keyed.get(index)) {
+                return getKey(index);
+            } else if (DOC_COUNT.equals(name) && counted.get(index)) {
+                return box(docCounts[index]);
+            }
+            final MetricColumn column = metrics.get(name);
+            if (column != null && column.present.get(index)) {
+                return column.getValue(index);
+            }
+            return others != null && others[index] != null ? others[index].get(name) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            if (KEY.equals(name) && keyed.get(index) || DOC_COUNT.equals(name) && counted.get(index)) {
+                return true;
+            }
+            final MetricColumn column = metrics.get(name);
+            if (column != null && column.present.get(index)) {
+                return true;
+            }
+            return others != null && others[index] != null && others[index].containsKey(name);
+        }
+
+        @Override
+        public Set<Entry<String,Object>> entrySet() {
+            final Map<String,Object> values = new LinkedHashMap<>();
+            if (keyed.get(index)) {
+                values.put(KEY, getKey(index));
+            }
+            if (counted.get(index)) {
+                values.put(DOC_COUNT, box(docCounts[index]));
+            }
+            for (final Map.Entry<String,MetricColumn> entry : metrics.entrySet()) {
+                if (entry.getValue().present.get(index)) {
+                    values.put(entry.getKey(), entry.getValue().getValue(index));
+                }
+            }
+            if (others != null && others[index] != null) {
+                values.putAll(others[index]);
+            }
+            return Collections.unmodifiableMap(values).entrySet();
+        }
+
+    }
+
+    private static class MetricColumn {
+
+        private double[] values = new double[16];
+
+        private final BitSet present = new BitSet();
+
+        /** Whether all values were integral and can be boxed as such */
+        private boolean integral = true;
+
+        void set(int index, Number value) {
+            if (index >= values.length) {
+                values = Arrays.copyOf(values, Math.max(index + 1, values.length * 2));
+            }
+            if (value == null) {
+                values[index] = Double.NaN;
+            } else {
+                values[index] = value.doubleValue();
+                integral &= isIntegral(value);
+            }
+            present.set(index);
+        }
+
+        Map<String,Object> getValue(int index) {
+            final double value = values[index];
+            final Object boxed;
+            if (Double.isNaN(value)) {
+                boxed = null;
+            } else if (integral) {
+                boxed = box((long) value);
+            } else {
+                boxed = value;
+            }
+            return Collections.singletonMap(VALUE, boxed);
+        }
+
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+    }
+
+    /**
+     * Collects buckets one at a time. Each bucket is started with
+     * {@link #startBucket()} and completed with {@link #endBucket()}.
+     */
+    static class Builder {
+
+        private int size;
+
+        private long[] geohashes = new long[16];
+
+        private Object[] keys;
+
+        private final BitSet keyed = new BitSet();
+
+        private long[] docCounts = new long[16];
+
+        private final BitSet counted = new BitSet();
+
+        private final Map<String,MetricColumn> metrics = new LinkedHashMap<>();
+
+        private Map<String,Object>[] others;
+
+        void startBucket() {
+            if (size == docCounts.length) {
+                final int capacity = size * 2;
+                docCounts = Arrays.copyOf(docCounts, capacity);
+                if (geohashes != null) {
+                    geohashes = Arrays.copyOf(geohashes, capacity);
+                } else {
+                    keys = Arrays.copyOf(keys, capacity);
+                }
+                if (others != null) {
+                    others = Arrays.copyOf(others, capacity);
+                }
+            }
+        }
+
+        void setKey(Object key) {
+            if (geohashes != null) {
+                final long geohash = key instanceof String ? encodeGeohash((String) key) : INVALID_GEOHASH;
+                if (geohash != INVALID_GEOHASH) {
+                    geohashes[size] = geohash;
+                    keyed.set(size);
+                    return;
+                }
+                keys = new Object[docCounts.length];
+                for (int i = 0; i < size; i++) {
+                    keys[i] = keyed.get(i) ? decodeGeohash(geohashes[i]) : null;
+                }
+                geohashes = null;
+            }
+            keys[size] = key;
+            keyed.set(size);
+        }
+
+        void setDocCount(long docCount) {
+            docCounts[size] = docCount;
+            counted.set(size);
+        }
+
+        void setMetric(String name, Number value) {
+            metrics.computeIfAbsent(name, n -> new MetricColumn()).set(size, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        void setOther(String name, Object value) {
+            if (others == null) {
+                others = new Map[docCounts.length];
+            }
+            if (others[size] == null) {
+                others[size] = new LinkedHashMap<>();
+            }
+            others[size].put(name, value);
+        }
+
+        void endBucket() {
+            size++;
+        }
+
+        ElasticBuckets build() {
+            return new ElasticBuckets(this);
+        }
+
+    }
+
+}
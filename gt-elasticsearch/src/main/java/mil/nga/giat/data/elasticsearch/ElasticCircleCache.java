@@ -0,0 +1,94 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the ordinates of polygons interpolated from circle
+ * geo_shapes, by centre, radius and number of points. Shared by the readers
+ * of a data store so that circles repeated across pages and tiles are
+ * interpolated once. Cached ordinates must not be modified.
+ */
+class ElasticCircleCache {
+
+    /** Default maximum number of cached circles */
+    static final int DEFAULT_MAX_CIRCLES = 10000;
+
+    private final Map<Key,double[]> circles;
+
+    ElasticCircleCache() {
+        this(DEFAULT_MAX_CIRCLES);
+    }
+
+    ElasticCircleCache(int maxCircles) {
+        this.circles = Collections.synchronizedMap(new LinkedHashMap<Key,double[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key,double[]> eldest) {
+                return size() > maxCircles;
+            }
+        });
+    }
+
+    /**
+     * @return Cached ordinates of the circle or null if not cached
+     */
+    double[] get(double x, double y, double radius, int numPoints) {
+        return circles.get(new Key(x, y, radius, numPoints));
+    }
+
+    void put(double x, double y, double radius, int numPoints, double[] ordinates) {
+        circles.put(new Key(x, y, radius, numPoints), ordinates);
+    }
+
+    int size() {
+        return circles.size();
+    }
+
+    /**
+     * Centre, radius and number of points of an interpolated circle.
+     */
+    private static final class Key {
+
+        private final double x;
+
+        private final double y;
+
+        private final double radius;
+
+        private final int numPoints;
+
+        Key(double x, double y, double radius, int numPoints) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.numPoints = numPoints;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return Double.compare(x, other.x) == 0 && Double.compare(y, other.y) == 0
+                    && Double.compare(radius, other.radius) == 0 && numPoints == other.numPoints;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Double.hashCode(x);
+            result = 31 * result + Double.hashCode(y);
+            result = 31 * result + Double.hashCode(radius);
+            return 31 * result + numPoints;
+        }
+
+    }
+
+}
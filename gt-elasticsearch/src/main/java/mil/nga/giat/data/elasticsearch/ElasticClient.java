@@ -22,7 +22,11 @@ interface ElasticClient extends Closeable {
 
     ElasticResponse search(String searchIndices, String type, ElasticRequest request) throws IOException;
 
-    ElasticResponse scroll(String scrollId, Integer scrollTime) throws IOException;
+    default ElasticResponse scroll(String scrollId, Integer scrollTime) throws IOException {
+        return scroll(scrollId, scrollTime, null);
+    }
+
+    ElasticResponse scroll(String scrollId, Integer scrollTime, String opaqueId) throws IOException;
 
     @Override
     void close() throws IOException;
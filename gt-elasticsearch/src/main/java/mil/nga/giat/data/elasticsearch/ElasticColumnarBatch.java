@@ -0,0 +1,443 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.type.AttributeDescriptor;
+
+/**
+ * Page of search hits in columnar form, for bulk consumers working on
+ * primitive arrays rather than features. Columns are filled from the hits of
+ * a response without building features or converted value objects:
+ * <ul>
+ * <li>points: {@code double[]} x and y ({@link PointColumn})</li>
+ * <li>dates: {@code long[]} epoch milliseconds ({@link LongColumn})</li>
+ * <li>integers and longs: {@code int[]} and {@code long[]}</li>
+ * <li>floating point numbers: {@code double[]} ({@link DoubleColumn})</li>
+ * <li>strings: dictionary encoded ({@link StringColumn})</li>
+ * <li>other attributes (non point geometries, booleans, objects): decoded
+ * values ({@link ObjectColumn})</li>
+ * </ul>
+ * Multi-valued fields contribute their first value, except for object
+ * columns which follow the data store array encoding.
+ */
+public final class ElasticColumnarBatch {
+
+    /**
+     * Column of attribute values. Rows without a value are null.
+     */
+    public abstract static class Column {
+
+        private final String name;
+
+        private final Class<?> binding;
+
+        private final ElasticExtractionPlan.Step step;
+
+        private final BitSet nulls;
+
+        private Column(String name, Class<?> binding, ElasticExtractionPlan.Step step) {
+            this.name = name;
+            this.binding = binding;
+            this.step = step;
+            this.nulls = new BitSet();
+        }
+
+        /** @return Attribute name */
+        public String getName() {
+            return name;
+        }
+
+        /** @return Attribute binding of the feature type */
+        public Class<?> getBinding() {
+            return binding;
+        }
+
+        /** @return Whether the row has no value */
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        void setNull(int row) {
+            nulls.set(row);
+        }
+
+        ElasticExtractionPlan.Step getStep() {
+            return step;
+        }
+
+        void read(int row, List<Object> values, ElasticHit hit, ElasticHitDecoder decoder) {
+            final Object value = values.get(0);
+            if (value == null) {
+                setNull(row);
+            } else {
+                set(row, value, hit, decoder);
+            }
+        }
+
+        abstract void set(int row, Object value, ElasticHit hit, ElasticHitDecoder decoder);
+
+    }
+
+    /**
+     * Point coordinates. Null rows are NaN.
+     */
+    public static final class PointColumn extends Column {
+
+        private final double[] x;
+
+        private final double[] y;
+
+        private PointColumn(String name, Class<?> binding, ElasticExtractionPlan.Step step, int size) {
+            super(name, binding, step);
+            this.x = new double[size];
+            this.y = new double[size];
+        }
+
+        public double[] getX() {
+            return x;
+        }
+
+        public double[] getY() {
+            return y;
+        }
+
+        @Override
+        void setNull(int row) {
+            super.setNull(row);
+            x[row] = Double.NaN;
+            y[row] = Double.NaN;
+        }
+
+        @Override
+        void read(int row, List<Object> values, ElasticHit hit, ElasticHitDecoder decoder) {
+            if (values.size() == 2 && values.get(0) instanceof Number && values.get(1) instanceof Number) {
+                // [lon, lat]
+                x[row] = ((Number) values.get(0)).doubleValue();
+                y[row] = ((Number) values.get(1)).doubleValue();
+            } else {
+                super.read(row, values, hit, decoder);
+            }
+        }
+
+        @Override
+        void set(int row, Object value, ElasticHit hit, ElasticHitDecoder decoder) {
+            final Object lat = value instanceof Map ? ((Map<?,?>) value).get("lat") : null;
+            final Object lon = value instanceof Map ? ((Map<?,?>) value).get("lon") : null;
+            final Coordinate coordinate = value instanceof String ? ElasticParserUtil.parseLatLon((String) value) : null;
+            if (lat instanceof Number && lon instanceof Number) {
+                x[row] = ((Number) lon).doubleValue();
+                y[row] = ((Number) lat).doubleValue();
+            } else if (value instanceof Point && !((Point) value).isEmpty()) {
+                // decoded point (e.g. from WKB)
+                x[row] = ((Point) value).getX();
+                y[row] = ((Point) value).getY();
+            } else if (coordinate != null) {
+                // "lat,lon"
+                x[row] = coordinate.x;
+                y[row] = coordinate.y;
+            } else {
+                // other point encodings (geohash, WKT, GeoJSON)
+                final Object geometry = decoder.decode(getStep(), hit);
+                if (geometry instanceof Point && !((Point) geometry).isEmpty()) {
+                    x[row] = ((Point) geometry).getX();
+                    y[row] = ((Point) geometry).getY();
+                } else {
+                    setNull(row);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Long values. Date values are epoch milliseconds.
+     */
+    public static final class LongColumn extends Column {
+
+        private final long[] values;
+
+        private LongColumn(String name, Class<?> binding, ElasticExtractionPlan.Step step, int size) {
+            super(name, binding, step);
+            this.values = new long[size];
+        }
+
+        public long[] getValues() {
+            return values;
+        }
+
+        @Override
+        void set(int row, Object value, ElasticHit hit, ElasticHitDecoder decoder) {
+            if (value instanceof Double || value instanceof Float) {
+                values[row] = Math.round(((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                values[row] = ((Number) value).longValue();
+            } else if (getStep().getKind() == ElasticExtractionPlan.Kind.DATE) {
+                // doc values are requested as epoch millis
+                final Date date = decoder.isDocValue(getStep(), hit) ? ElasticDateParser.parseEpochMillis((String) value) : null;
+                try {
+                    values[row] = (date != null ? date : getStep().getDateParser().parse((String) value)).getTime();
+                } catch (IllegalArgumentException e) {
+                    setNull(row);
+                }
+            } else {
+                try {
+                    values[row] = Long.parseLong(value.toString());
+                } catch (NumberFormatException e) {
+                    setNull(row);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Integer values (integer, short and byte attributes).
+     */
+    public static final class IntColumn extends Column {
+
+        private final int[] values;
+
+        private IntColumn(String name, Class<?> binding, ElasticExtractionPlan.Step step, int size) {
+            super(name, binding, step);
+            this.values = new int[size];
+        }
+
+        public int[] getValues() {
+            return values;
+        }
+
+        @Override
+        void set(int row, Object value, ElasticHit hit, ElasticHitDecoder decoder) {
+            if (value instanceof Number) {
+                values[row] = ((Number) value).intValue();
+            } else {
+                try {
+                    values[row] = Integer.parseInt(value.toString());
+                } catch (NumberFormatException e) {
+                    setNull(row);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Floating point values. Null rows are NaN.
+     */
+    public static final class DoubleColumn extends Column {
+
+        private final double[] values;
+
+        private DoubleColumn(String name, Class<?> binding, ElasticExtractionPlan.Step step, int size) {
+            super(name, binding, step);
+            this.values = new double[size];
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+
+        @Override
+        void setNull(int row) {
+            super.setNull(row);
+            values[row] = Double.NaN;
+        }
+
+        @Override
+        void set(int row, Object value, ElasticHit hit, ElasticHitDecoder decoder) {
+            if (value instanceof Number) {
+                values[row] = ((Number) value).doubleValue();
+            } else {
+                try {
+                    values[row] = Double.parseDouble(value.toString());
+                } catch (NumberFormatException e) {
+                    setNull(row);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Dictionary encoded string values. Each row holds the index of its value
+     * in the dictionary, or -1 for null rows.
+     */
+    public static final class StringColumn extends Column {
+
+        private final int[] codes;
+
+        private final List<String> dictionary;
+
+        private final Map<String,Integer> index;
+
+        private StringColumn(String name, Class<?> binding, ElasticExtractionPlan.Step step, int size) {
+            super(name, binding, step);
+            this.codes = new int[size];
+            this.dictionary = new ArrayList<>();
+            this.index = new HashMap<>();
+        }
+
+        public int[] getCodes() {
+            return codes;
+        }
+
+        public List<String> getDictionary() {
+            return Collections.unmodifiableList(dictionary);
+        }
+
+        /** @return Value of a row or null */
+        public String getValue(int row) {
+            return codes[row] >= 0 ? dictionary.get(codes[row]) : null;
+        }
+
+        @Override
+        void setNull(int row) {
+            super.setNull(row);
+            codes[row] = -1;
+        }
+
+        @Override
+        void set(int row, Object value, ElasticHit hit, ElasticHitDecoder decoder) {
+            final String text = value.toString();
+            Integer code = index.get(text);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(text);
+                index.put(text, code);
+            }
+            codes[row] = code;
+        }
+
+    }
+
+    /**
+     * Decoded values of attributes without a primitive representation.
+     */
+    public static final class ObjectColumn extends Column {
+
+        private final Object[] values;
+
+        private ObjectColumn(String name, Class<?> binding, ElasticExtractionPlan.Step step, int size) {
+            super(name, binding, step);
+            this.values = new Object[size];
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+
+        @Override
+        void read(int row, List<Object> values, ElasticHit hit, ElasticHitDecoder decoder) {
+            set(row, null, hit, decoder);
+        }
+
+        @Override
+        void set(int row, Object value, ElasticHit hit, ElasticHitDecoder decoder) {
+            values[row] = decoder.decode(getStep(), hit);
+            if (values[row] == null) {
+                setNull(row);
+            }
+        }
+
+    }
+
+    private final int size;
+
+    private final Map<String,Column> columns;
+
+    private ElasticColumnarBatch(int size, Map<String,Column> columns) {
+        this.size = size;
+        this.columns = columns;
+    }
+
+    /**
+     * Fill a batch from search hits.
+     *
+     * @param plan Extraction plan of the feature type
+     * @param names Attributes to include, or null for all attributes
+     * @param hits Search hits
+     * @param decoder Decoder used for meta fields and values without a
+     * primitive representation
+     * @return Batch
+     */
+    static ElasticColumnarBatch create(ElasticExtractionPlan plan, Set<String> names, List<ElasticHit> hits,
+            ElasticHitDecoder decoder) {
+        final int size = hits.size();
+        final Map<String,Column> columns = new LinkedHashMap<>();
+        for (final ElasticExtractionPlan.Step step : plan.getSteps()) {
+            final AttributeDescriptor descriptor = plan.getFeatureType().getDescriptor(step.getIndex());
+            final String name = descriptor.getLocalName();
+            if (names == null || names.contains(name)) {
+                columns.put(name, createColumn(name, descriptor.getType().getBinding(), step, size));
+            }
+        }
+
+        for (int row = 0; row < size; row++) {
+            final ElasticHit hit = hits.get(row);
+            for (final Column column : columns.values()) {
+                final List<Object> values = decoder.readValues(column.getStep(), hit);
+                if (values != null && !values.isEmpty()) {
+                    column.read(row, values, hit, decoder);
+                } else if (column.getStep().getMetaField() != null || column.getStep().getBinarySourceName() != null) {
+                    final Object value = decoder.decode(column.getStep(), hit);
+                    if (value != null) {
+                        column.set(row, value, hit, decoder);
+                    } else {
+                        column.setNull(row);
+                    }
+                } else {
+                    column.setNull(row);
+                }
+            }
+        }
+        return new ElasticColumnarBatch(size, columns);
+    }
+
+    private static Column createColumn(String name, Class<?> binding, ElasticExtractionPlan.Step step, int size) {
+        final Column column;
+        if (step.getKind() == ElasticExtractionPlan.Kind.GEOMETRY && Point.class.equals(binding)) {
+            column = new PointColumn(name, binding, step, size);
+        } else if (step.getKind() == ElasticExtractionPlan.Kind.DATE || Long.class.equals(binding)) {
+            column = new LongColumn(name, binding, step, size);
+        } else if (Integer.class.equals(binding) || Short.class.equals(binding) || Byte.class.equals(binding)) {
+            column = new IntColumn(name, binding, step, size);
+        } else if (Double.class.equals(binding) || Float.class.equals(binding)) {
+            column = new DoubleColumn(name, binding, step, size);
+        } else if (String.class.equals(binding) && step.getKind() == ElasticExtractionPlan.Kind.VALUE) {
+            column = new StringColumn(name, binding, step, size);
+        } else {
+            column = new ObjectColumn(name, binding, step, size);
+        }
+        return column;
+    }
+
+    /** @return Number of rows */
+    public int size() {
+        return size;
+    }
+
+    /** @return Attribute names of the columns */
+    public List<String> getColumnNames() {
+        return new ArrayList<>(columns.keySet());
+    }
+
+    /** @return Column of an attribute or null if the attribute is not included */
+    public Column getColumn(String name) {
+        return columns.get(name);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Reads the results of a query as {@link ElasticColumnarBatch}es, one batch
+ * per response page (the search response and following scroll pages).
+ */
+public class ElasticColumnarBatchReader implements Closeable {
+
+    private final ElasticDataStore dataStore;
+
+    private final ElasticExtractionPlan plan;
+
+    private final Set<String> names;
+
+    private final ElasticHitDecoder decoder;
+
+    private final int maxFeatures;
+
+    private final String opaqueId;
+
+    private final Set<String> scrollIds;
+
+    private String nextScrollId;
+
+    private ElasticResponse response;
+
+    private int numFeatures;
+
+    ElasticColumnarBatchReader(ElasticDataStore dataStore, ElasticExtractionPlan plan, Set<String> names,
+            ElasticResponse response, int maxFeatures, String opaqueId) {
+        this.dataStore = dataStore;
+        this.plan = plan;
+        this.names = names;
+        this.decoder = new ElasticHitDecoder(dataStore.getArrayEncoding(), response.getMaxScore(), dataStore.getCircleCache());
+        this.maxFeatures = maxFeatures;
+        this.opaqueId = opaqueId;
+        this.scrollIds = new HashSet<>();
+        this.response = response;
+        if (response.getScrollId() != null) {
+            scrollIds.add(response.getScrollId());
+        }
+    }
+
+    /**
+     * @return Whether another batch is available
+     */
+    public boolean hasNext() throws IOException {
+        if (response == null && nextScrollId != null && numFeatures < maxFeatures) {
+            response = dataStore.getClient().scroll(nextScrollId, dataStore.getScrollTime(), opaqueId);
+            nextScrollId = null;
+        }
+        return response != null && response.getNumHits() > 0 && numFeatures < maxFeatures;
+    }
+
+    /**
+     * @return Next batch
+     */
+    public ElasticColumnarBatch next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<ElasticHit> hits = response.getHits();
+        if (numFeatures + hits.size() > maxFeatures) {
+            hits = hits.subList(0, maxFeatures - numFeatures);
+        }
+        numFeatures += hits.size();
+        nextScrollId = response.getScrollId();
+        if (nextScrollId != null) {
+            scrollIds.add(nextScrollId);
+        }
+        response = null;
+        return ElasticColumnarBatch.create(plan, names, hits, decoder);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!scrollIds.isEmpty()) {
+            dataStore.getClient().clearScroll(scrollIds);
+            scrollIds.clear();
+        }
+        response = null;
+    }
+
+}
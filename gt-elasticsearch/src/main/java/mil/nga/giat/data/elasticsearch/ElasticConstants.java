@@ -42,4 +42,16 @@ final class ElasticConstants {
      */
     public static final String NESTED = "nested";
 
+    /**
+     * Key used in the feature type user data to indicate whether the field is
+     * retrieved through docvalue_fields.
+     */
+    public static final String DOC_VALUE = "doc_value";
+
+    /**
+     * Key used in the feature type user data to store the full name of the
+     * binary field holding the WKB of a geometry field, if relevant.
+     */
+    public static final String BINARY_GEOMETRY_FIELD = "binary_geometry_field";
+
 }
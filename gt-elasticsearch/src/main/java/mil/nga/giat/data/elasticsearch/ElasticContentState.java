@@ -0,0 +1,149 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.store.ContentEntry;
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Content state caching the feature type built from the layer configuration,
+ * the feature types retyped to the property lists of queries and the
+ * attribute extraction plans of the feature types read by queries. All are
+ * kept when the state is flushed.
+ */
+class ElasticContentState extends ContentState {
+
+    /** Maximum number of cached extraction plans */
+    static final int MAX_EXTRACTION_PLANS = 32;
+
+    /** Maximum number of cached retyped feature types */
+    static final int MAX_RETYPED_FEATURE_TYPES = 32;
+
+    /** Extraction plans by attribute names of their feature type */
+    private final Map<List<String>,ElasticExtractionPlan> extractionPlans;
+
+    /** Feature types retyped from {@link #retypedSchema} by property names */
+    private final Map<List<String>,SimpleFeatureType> retypedFeatureTypes;
+
+    private SimpleFeatureType retypedSchema;
+
+    private volatile VersionedFeatureType builtFeatureType;
+
+    private static final class VersionedFeatureType {
+
+        private final long version;
+
+        private final SimpleFeatureType featureType;
+
+        private VersionedFeatureType(long version, SimpleFeatureType featureType) {
+            this.version = version;
+            this.featureType = featureType;
+        }
+
+    }
+
+    public ElasticContentState(ContentEntry entry) {
+        super(entry);
+        this.extractionPlans = Collections.synchronizedMap(new LinkedHashMap<List<String>,ElasticExtractionPlan>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>,ElasticExtractionPlan> eldest) {
+                return size() > MAX_EXTRACTION_PLANS;
+            }
+        });
+        this.retypedFeatureTypes = new LinkedHashMap<List<String>,SimpleFeatureType>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>,SimpleFeatureType> eldest) {
+                return size() > MAX_RETYPED_FEATURE_TYPES;
+            }
+        };
+    }
+
+    protected ElasticContentState(ElasticContentState state) {
+        super(state);
+        this.extractionPlans = state.extractionPlans;
+        this.retypedFeatureTypes = state.retypedFeatureTypes;
+        this.builtFeatureType = state.builtFeatureType;
+    }
+
+    /**
+     * Get the feature type built for a layer configuration version, building
+     * it if the version has changed since the type was built.
+     *
+     * @param version Layer configuration version
+     * @param builder Builds the feature type from the layer configuration
+     * @return Feature type
+     */
+    SimpleFeatureType getBuiltFeatureType(long version, Supplier<SimpleFeatureType> builder) {
+        VersionedFeatureType built = builtFeatureType;
+        if (built == null || built.version != version) {
+            built = new VersionedFeatureType(version, builder.get());
+            builtFeatureType = built;
+            // plans of the previous configuration may have the same attribute names
+            extractionPlans.clear();
+        }
+        return built.featureType;
+    }
+
+    /**
+     * Get the schema retyped to a list of property names, retyping it only
+     * the first time the list is requested for the schema. The same feature
+     * type instance is therefore returned for repeated property lists, so
+     * that extraction plans and other state derived from it are reused.
+     *
+     * @param schema Schema
+     * @param names Property names
+     * @return Retyped feature type
+     */
+    SimpleFeatureType getRetypedFeatureType(SimpleFeatureType schema, List<String> names) {
+        synchronized (retypedFeatureTypes) {
+            if (schema != retypedSchema) {
+                retypedFeatureTypes.clear();
+                retypedSchema = schema;
+            }
+            return retypedFeatureTypes.computeIfAbsent(new ArrayList<>(names),
+                    key -> SimpleFeatureTypeBuilder.retype(schema, key));
+        }
+    }
+
+    /**
+     * Get the extraction plan for the feature type, building it if no plan
+     * has been built for an equal feature type. Plans are cached by
+     * attribute names, so plans of the types of different property lists
+     * are kept side by side.
+     *
+     * @param featureType Feature type
+     * @return Extraction plan
+     */
+    ElasticExtractionPlan getExtractionPlan(SimpleFeatureType featureType) {
+        final List<String> names = Arrays.asList(DataUtilities.attributeNames(featureType));
+        ElasticExtractionPlan plan = extractionPlans.get(names);
+        if (plan == null || (plan.getFeatureType() != featureType && !plan.getFeatureType().equals(featureType))) {
+            plan = new ElasticExtractionPlan(featureType);
+            extractionPlans.put(names, plan);
+        }
+        return plan;
+    }
+
+    @Override
+    public ContentState copy() {
+        return new ElasticContentState(this);
+    }
+
+}
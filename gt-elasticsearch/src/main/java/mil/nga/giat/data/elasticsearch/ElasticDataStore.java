@@ -6,11 +6,15 @@ package mil.nga.giat.data.elasticsearch;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -23,6 +27,7 @@ import org.geotools.data.Transaction;
 import org.geotools.data.store.ContentDataStore;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.data.store.ContentState;
 import org.geotools.feature.NameImpl;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Geometry;
@@ -51,8 +56,16 @@ public class ElasticDataStore extends ContentDataStore {
 
     private Map<String, ElasticLayerConfiguration> layerConfigurations;
 
+    /** Source of layer configuration versions, unique across layers */
+    private final AtomicLong layerConfigurationVersion = new AtomicLong();
+
+    /** Copy of the last layer configuration set for each layer, with its version */
+    private final Map<String, VersionedLayerConfiguration> layerConfigurationVersions = new ConcurrentHashMap<>();
+
     private boolean sourceFilteringEnabled;
 
+    private boolean searchTemplatesEnabled;
+
     private Integer defaultMaxFeatures;
 
     private Long scrollSize;
@@ -63,12 +76,28 @@ public class ElasticDataStore extends ContentDataStore {
 
     private ArrayEncoding arrayEncoding;
 
+    private AttributeDecoding attributeDecoding;
+
     private Long gridSize;
 
     private Double gridThreshold;
 
     private AggregationCache aggregationCache;
 
+    private final ElasticRetryPolicy retryPolicy;
+
+    private final ElasticFilterTemplateCache filterTemplateCache;
+
+    private final ElasticCircleCache circleCache;
+
+    private ExecutorMode executorMode;
+
+    private ExecutorService executor;
+
+    private int decodeThreads;
+
+    private ForkJoinPool decodePool;
+
     public enum ArrayEncoding {
 
         /**
@@ -82,6 +111,32 @@ public class ElasticDataStore extends ContentDataStore {
         CSV
     }
 
+    public enum AttributeDecoding {
+
+        /**
+         * Decode all attributes of each hit when the feature is read.
+         */
+        EAGER,
+
+        /**
+         * Decode attributes of each hit on first access.
+         */
+        LAZY
+    }
+
+    public enum ExecutorMode {
+
+        /**
+         * Run blocking calls off the calling thread on a pool of platform threads.
+         */
+        PLATFORM,
+
+        /**
+         * Run blocking calls off the calling thread on virtual threads (Java 21+).
+         */
+        VIRTUAL
+    }
+
     public ElasticDataStore(String searchHost, Integer hostPort, String indexName) throws IOException {
         this(RestClient.builder(new HttpHost(searchHost, hostPort, "http")).build(), indexName);
     }
@@ -91,16 +146,45 @@ public class ElasticDataStore extends ContentDataStore {
     }
 
     public ElasticDataStore(RestClient restClient, RestClient proxyRestClient, String indexName, boolean enableRunAs) throws IOException {
+        this(Collections.singletonList(restClient), Collections.singletonList(proxyRestClient), indexName, enableRunAs);
+    }
+
+    /**
+     * Creates a data store querying one or more clusters. When more than one
+     * REST client is provided, queries are sent to all clusters in parallel
+     * and the results merged (see {@link FederatedElasticClient}).
+     *
+     * @param restClients One REST client per cluster
+     * @param proxyRestClients Optional proxy REST client per cluster (list and elements may be null)
+     * @param indexName Index name, which must be the same on all clusters
+     * @param enableRunAs Whether to submit document search requests on behalf of the authenticated GeoServer user
+     * @throws IOException If a client could not be created
+     */
+    public ElasticDataStore(List<RestClient> restClients, List<RestClient> proxyRestClients, String indexName, boolean enableRunAs) throws IOException {
         LOGGER.fine("Initializing data store for " + indexName);
 
         this.indexName = indexName;
+        this.retryPolicy = new ElasticRetryPolicy();
+        this.filterTemplateCache = new ElasticFilterTemplateCache();
+        this.circleCache = new ElasticCircleCache();
+        this.executorMode = ExecutorMode.PLATFORM;
 
         try {
-            checkRestClient(restClient);
-            if (proxyRestClient != null) {
-                checkRestClient(proxyRestClient);
+            final List<RestElasticClient> clients = new ArrayList<>();
+            for (int i = 0; i < restClients.size(); i++) {
+                final RestClient restClient = restClients.get(i);
+                final RestClient proxyRestClient = proxyRestClients != null && i < proxyRestClients.size() ? proxyRestClients.get(i) : null;
+                checkRestClient(restClient);
+                if (proxyRestClient != null) {
+                    checkRestClient(proxyRestClient);
+                }
+                clients.add(new RestElasticClient(restClient, proxyRestClient, enableRunAs, retryPolicy));
+            }
+            if (clients.size() == 1) {
+                client = clients.get(0);
+            } else {
+                client = new FederatedElasticClient(clients, this::getExecutor);
             }
-            client = new RestElasticClient(restClient, proxyRestClient, enableRunAs);
         } catch (Exception e) {
             throw new IOException("Unable to create REST client", e);
         }
@@ -117,6 +201,7 @@ public class ElasticDataStore extends ContentDataStore {
         docTypes = new HashMap<>();
 
         arrayEncoding = ArrayEncoding.JSON;
+        attributeDecoding = AttributeDecoding.EAGER;
 
         aggregationCache = new AggregationCacheImpl();
         aggregationCache.initialize(this);
@@ -130,6 +215,11 @@ public class ElasticDataStore extends ContentDataStore {
         return names;
     }
 
+    @Override
+    protected ContentState createContentState(ContentEntry entry) {
+        return new ElasticContentState(entry);
+    }
+
     @Override
     protected ContentFeatureSource createFeatureSource(ContentEntry entry) throws IOException {
         return new ElasticFeatureSource(entry, Query.ALL, aggregationCache);
@@ -214,6 +304,14 @@ public class ElasticDataStore extends ContentDataStore {
         this.sourceFilteringEnabled = sourceFilteringEnabled;
     }
 
+    boolean isSearchTemplatesEnabled() {
+        return searchTemplatesEnabled;
+    }
+
+    public void setSearchTemplatesEnabled(boolean searchTemplatesEnabled) {
+        this.searchTemplatesEnabled = searchTemplatesEnabled;
+    }
+
     public Integer getDefaultMaxFeatures() {
         return defaultMaxFeatures;
     }
@@ -254,6 +352,14 @@ public class ElasticDataStore extends ContentDataStore {
         this.arrayEncoding = arrayEncoding;
     }
 
+    public AttributeDecoding getAttributeDecoding() {
+        return attributeDecoding;
+    }
+
+    public void setAttributeDecoding(AttributeDecoding attributeDecoding) {
+        this.attributeDecoding = attributeDecoding;
+    }
+
     public Long getGridSize() {
         return gridSize;
     }
@@ -270,6 +376,135 @@ public class ElasticDataStore extends ContentDataStore {
         this.gridThreshold = gridThreshold;
     }
 
+    public Integer getMaxRetries() {
+        return retryPolicy.getMaxRetries();
+    }
+
+    public void setMaxRetries(Integer maxRetries) {
+        retryPolicy.setMaxRetries(maxRetries);
+    }
+
+    public Long getRetryBackoff() {
+        return retryPolicy.getInitialBackoffMillis();
+    }
+
+    public void setRetryBackoff(Long retryBackoff) {
+        retryPolicy.setInitialBackoffMillis(retryBackoff);
+    }
+
+    public Double getRetryBudget() {
+        return retryPolicy.getBudgetRatio();
+    }
+
+    public void setRetryBudget(Double retryBudget) {
+        retryPolicy.setBudgetRatio(retryBudget);
+    }
+
+    /**
+     * @return Filter translation cache shared by the feature sources of this
+     * data store, which also holds the hit and miss counters
+     */
+    ElasticFilterTemplateCache getFilterTemplateCache() {
+        return filterTemplateCache;
+    }
+
+    /**
+     * @return Cache of circles interpolated by the readers of this data store
+     */
+    ElasticCircleCache getCircleCache() {
+        return circleCache;
+    }
+
+    /**
+     * @return Retry policy shared by the clients of this data store, which
+     * also holds the retry counters
+     */
+    ElasticRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public synchronized void setExecutorMode(ExecutorMode executorMode) {
+        if (executorMode != this.executorMode) {
+            this.executorMode = executorMode;
+            if (executor != null) {
+                // running tasks complete on the previous executor
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * @return Executor for blocking Elasticsearch calls made off the calling
+     * thread, created on first use according to the executor mode
+     */
+    synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = ElasticExecutors.newExecutor(executorMode, "esexecutor");
+        }
+        return executor;
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    public synchronized void setDecodeThreads(int decodeThreads) {
+        if (decodeThreads != this.decodeThreads) {
+            this.decodeThreads = decodeThreads;
+            // readers holding the previous pool decode on their own thread once it is shut down
+            final ForkJoinPool previousPool = decodePool;
+            decodePool = null;
+            if (previousPool != null) {
+                previousPool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return Pool for decoding hits of large result pages in parallel,
+     * created on first use, or null if parallel decoding is disabled
+     */
+    synchronized ForkJoinPool getDecodePool() {
+        if (decodePool == null && decodeThreads > 1) {
+            decodePool = ElasticExecutors.newForkJoinPool(decodeThreads, "esdecoder");
+        }
+        return decodePool;
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            // running tasks complete, but the threads are not kept once the store is released
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+            if (decodePool != null) {
+                decodePool.shutdown();
+                decodePool = null;
+            }
+        }
+        super.dispose();
+    }
+
+    /**
+     * Get the results of a query as columnar batches of primitive arrays,
+     * for bulk consumers which do not need features.
+     *
+     * @param typeName Layer name
+     * @param query Query, which filter must be fully supported by Elasticsearch
+     * @return Batch reader, which must be closed
+     * @throws IOException if the query fails or requires post filtering
+     */
+    public ElasticColumnarBatchReader getColumnarBatchReader(String typeName, Query query) throws IOException {
+        return ((ElasticFeatureSource) getFeatureSource(typeName)).getColumnarBatchReader(query);
+    }
+
     public Map<String, ElasticLayerConfiguration> getLayerConfigurations() {
         return layerConfigurations;
     }
@@ -277,6 +512,37 @@ public class ElasticDataStore extends ContentDataStore {
     public void setLayerConfiguration(ElasticLayerConfiguration layerConfig) {
         final String layerName = layerConfig.getLayerName();
         this.layerConfigurations.put(layerName, layerConfig);
+        // the configuration is set again on each feature source lookup, usually unchanged
+        layerConfigurationVersions.compute(layerName, (name, current) -> {
+            if (current != null && current.configuration.equals(layerConfig)) {
+                return current;
+            }
+            return new VersionedLayerConfiguration(layerConfigurationVersion.incrementAndGet(),
+                    new ElasticLayerConfiguration(layerConfig));
+        });
+    }
+
+    /**
+     * @param layerName Layer name
+     * @return Version of the layer configuration, which changes each time a
+     * different configuration is set for the layer, or 0 if none was set
+     */
+    long getLayerConfigurationVersion(String layerName) {
+        final VersionedLayerConfiguration current = layerConfigurationVersions.get(layerName);
+        return current != null ? current.version : 0;
+    }
+
+    private static final class VersionedLayerConfiguration {
+
+        private final long version;
+
+        private final ElasticLayerConfiguration configuration;
+
+        private VersionedLayerConfiguration(long version, ElasticLayerConfiguration configuration) {
+            this.version = version;
+            this.configuration = configuration;
+        }
+
     }
 
     public Map<Name, String> getDocTypes() {
@@ -397,6 +663,7 @@ public class ElasticDataStore extends ContentDataStore {
                 elasticAttribute.setStored(stored);
                 elasticAttribute.setType(binding);
                 elasticAttribute.setNested(nested);
+                elasticAttribute.setDocValues(hasDocValues(propertyType, map, nested));
                 elasticAttributes.add(elasticAttribute);
             }
         }
@@ -411,6 +678,23 @@ public class ElasticDataStore extends ContentDataStore {
         }
     }
 
+    static boolean hasDocValues(String propertyType, Map<String, Object> map, boolean nested) {
+        final boolean docValues;
+        if (nested || Boolean.FALSE.equals(map.get("doc_values"))) {
+            docValues = false;
+        } else if (propertyType.equals("keyword") || propertyType.equals("date")
+                || propertyType.equals("geo_point") || propertyType.equals("boolean")
+                || propertyType.equals("ip")) {
+            docValues = true;
+        } else {
+            docValues = propertyType.equals("byte") || propertyType.equals("short")
+                    || propertyType.equals("integer") || propertyType.equals("long")
+                    || propertyType.equals("half_float") || propertyType.equals("float")
+                    || propertyType.equals("scaled_float") || propertyType.equals("double");
+        }
+        return docValues;
+    }
+
     static boolean isAnalyzed(Map<String, Object> map) {
         boolean analyzed = false;
         Object value = map.get("type");
@@ -16,6 +16,8 @@ import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFactorySpi;
 
 import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AttributeDecoding;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ExecutorMode;
 import org.geotools.data.Parameter;
 import org.geotools.util.logging.Logging;
 
@@ -26,7 +28,9 @@ import java.io.UncheckedIOException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
@@ -110,12 +114,42 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
             "Array encoding strategy. Allowed values are \"JSON\" (keep arrays) "
             + " and \"CSV\" (URL encode and join array elements).", false, "JSON");
 
+    public static final Param ATTRIBUTE_DECODING = new Param("attribute_decoding", String.class,
+            "Attribute decoding strategy. Allowed values are \"EAGER\" (decode all attributes when features "
+            + "are read, except for rendering) and \"LAZY\" (decode attributes on first access).", false, "EAGER");
+
     public static final Param GRID_SIZE = new Param("grid_size", Long.class,
             "Hint for Geohash grid size (nrow*ncol)", false, 10000L);
 
     public static final Param GRID_THRESHOLD = new Param("grid_threshold",  Double.class, 
             "Geohash grid aggregation precision will be the minimum necessary to satisfy actual_grid_size/grid_size>grid_threshold", false, 0.05);
 
+    /** Additional clusters for federated queries. **/
+    public static final Param FEDERATED_HOSTS = new Param("federated_hosts", String.class,
+            "Additional clusters queried in parallel with the primary cluster, separated by ';'. "
+            + "Each entry uses the same syntax as elasticsearch_host.", false);
+
+    public static final Param MAX_RETRIES = new Param("max_retries", Integer.class,
+            "Maximum number of retries of a read request after a transient failure (429, 502, 503, 504 or connection reset)", false, 2);
+
+    public static final Param RETRY_BACKOFF = new Param("retry_backoff", Long.class,
+            "Initial retry backoff in milliseconds. The backoff is doubled on each retry and randomized.", false, 100L);
+
+    public static final Param RETRY_BUDGET = new Param("retry_budget", Double.class,
+            "Maximum ratio of retries to requests, limiting retries when the cluster is overloaded", false, 0.1);
+
+    public static final Param SEARCH_TEMPLATES_ENABLED = new Param("search_templates_enabled", Boolean.class,
+            "Register each query structure as a stored search template and send only the query literals as template parameters "
+            + "(requires Elasticsearch 6 or later)", false, false);
+
+    public static final Param EXECUTOR_MODE = new Param("executor_mode", String.class,
+            "Threads running blocking requests in the background (scroll prefetch, aggregation cache, federated searches). "
+            + "Allowed values are \"PLATFORM\" and \"VIRTUAL\" (virtual threads, requires Java 21 or later).", false, "PLATFORM");
+
+    public static final Param DECODE_THREADS = new Param("decode_threads", Integer.class,
+            "Number of threads decoding the hits of large result pages in parallel when attribute decoding is EAGER. "
+            + "Values of 0 or 1 decode hits on the reading thread.", false, 0);
+
     public static final Param[] PARAMS = {
             HOSTNAME,
             HOSTPORT,
@@ -132,8 +166,16 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
             SCROLL_TIME_SECONDS,
             DEFAULT_MAX_FEATURES,
             ARRAY_ENCODING,
+            ATTRIBUTE_DECODING,
             GRID_SIZE,
-            GRID_THRESHOLD
+            GRID_THRESHOLD,
+            FEDERATED_HOSTS,
+            MAX_RETRIES,
+            RETRY_BACKOFF,
+            RETRY_BUDGET,
+            SEARCH_TEMPLATES_ENABLED,
+            EXECUTOR_MODE,
+            DECODE_THREADS
     };
 
     @Override
@@ -187,27 +229,56 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
 
         final RestClient client = createRestClient(params, user, passwd);
         final RestClient proxyClient = proxyUser != null ? createRestClient(params, proxyUser, proxyPasswd) : null;
-        return createDataStore(client, proxyClient, params);
+
+        final String federatedHosts = getValue(FEDERATED_HOSTS, params);
+        if (federatedHosts == null || federatedHosts.trim().isEmpty()) {
+            return createDataStore(client, proxyClient, params);
+        }
+
+        final List<RestClient> clients = new ArrayList<>();
+        final List<RestClient> proxyClients = new ArrayList<>();
+        clients.add(client);
+        proxyClients.add(proxyClient);
+        for (final String hostName : federatedHosts.split(";")) {
+            if (!hostName.trim().isEmpty()) {
+                clients.add(createRestClient(params, hostName.trim(), user, passwd));
+                proxyClients.add(proxyUser != null ? createRestClient(params, hostName.trim(), proxyUser, proxyPasswd) : null);
+            }
+        }
+        return createDataStore(clients, proxyClients, params);
     }
 
     public DataStore createDataStore(RestClient client, RestClient proxyClient, Map<String, Serializable> params) throws IOException {
+        return createDataStore(Collections.singletonList(client), Collections.singletonList(proxyClient), params);
+    }
+
+    public DataStore createDataStore(List<RestClient> clients, List<RestClient> proxyClients, Map<String, Serializable> params) throws IOException {
         final String indexName = (String) INDEX_NAME.lookUp(params);
         final String arrayEncoding = getValue(ARRAY_ENCODING, params);
+        final String attributeDecoding = getValue(ATTRIBUTE_DECODING, params);
+        final String executorMode = getValue(EXECUTOR_MODE, params);
         final boolean runAsGeoServerUser = getValue(RUNAS_GEOSERVER_USER, params);
         if (isForceRunas() && !runAsGeoServerUser) {
             throw new IllegalArgumentException(RUNAS_GEOSERVER_USER.key + " is disabled but " + FORCE_RUNAS_PROPERTY + " is set. "
                     + "Enable " + RUNAS_GEOSERVER_USER.key + " or unset " + FORCE_RUNAS_PROPERTY + " in the system environment.");
         }
 
-        final ElasticDataStore dataStore = new ElasticDataStore(client, proxyClient, indexName, runAsGeoServerUser);
+        final ElasticDataStore dataStore = new ElasticDataStore(clients, proxyClients, indexName, runAsGeoServerUser);
         dataStore.setDefaultMaxFeatures(getValue(DEFAULT_MAX_FEATURES, params));
         dataStore.setSourceFilteringEnabled(getValue(SOURCE_FILTERING_ENABLED, params));
         dataStore.setScrollEnabled(getValue(SCROLL_ENABLED, params));
         dataStore.setScrollSize(((Number)getValue(SCROLL_SIZE, params)).longValue());
         dataStore.setScrollTime(getValue(SCROLL_TIME_SECONDS, params));
         dataStore.setArrayEncoding(ArrayEncoding.valueOf(arrayEncoding.toUpperCase()));
+        dataStore.setAttributeDecoding(AttributeDecoding.valueOf(attributeDecoding.toUpperCase()));
+        dataStore.setExecutorMode(ExecutorMode.valueOf(executorMode.toUpperCase()));
+        dataStore.setDecodeThreads(getValue(DECODE_THREADS, params));
         dataStore.setGridSize((Long) GRID_SIZE.lookUp(params));
         dataStore.setGridThreshold((Double) GRID_THRESHOLD.lookUp(params));
+        dataStore.setSearchTemplatesEnabled(getValue(SEARCH_TEMPLATES_ENABLED, params));
+        dataStore.setMaxRetries(getValue(MAX_RETRIES, params));
+        dataStore.setRetryBackoff(((Number) getValue(RETRY_BACKOFF, params)).longValue());
+        dataStore.setRetryBudget(((Number) getValue(RETRY_BUDGET, params)).doubleValue());
         return dataStore;
     }
 
@@ -216,7 +287,10 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
     }
 
     private RestClient createRestClient(Map<String, Serializable> params, String user, String password) throws IOException {
-        final String hostName = getValue(HOSTNAME, params);
+        return createRestClient(params, getValue(HOSTNAME, params), user, password);
+    }
+
+    private RestClient createRestClient(Map<String, Serializable> params, String hostName, String user, String password) throws IOException {
         final String[] hosts = hostName.split(",");
         final Integer defaultPort = getValue(HOSTPORT, params);
         final Boolean sslRejectUnauthorized = getValue(SSL_REJECT_UNAUTHORIZED, params);
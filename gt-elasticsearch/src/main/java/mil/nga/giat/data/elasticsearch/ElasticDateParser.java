@@ -0,0 +1,211 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static java.time.temporal.ChronoField.DAY_OF_MONTH;
+import static java.time.temporal.ChronoField.HOUR_OF_DAY;
+import static java.time.temporal.ChronoField.MINUTE_OF_HOUR;
+import static java.time.temporal.ChronoField.MONTH_OF_YEAR;
+import static java.time.temporal.ChronoField.NANO_OF_SECOND;
+import static java.time.temporal.ChronoField.OFFSET_SECONDS;
+import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
+import static java.time.temporal.ChronoField.YEAR;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalField;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mil.nga.giat.shaded.es.common.joda.Joda;
+import mil.nga.giat.shaded.joda.time.format.DateTimeFormatter;
+
+/**
+ * Parser for string date values of an Elasticsearch date format. Parsers are
+ * compiled once per format and cached.
+ * <p>
+ * The common ISO formats ({@code date_optional_time},
+ * {@code strict_date_optional_time}) and {@code epoch_millis}, alone or
+ * combined with {@code ||}, are parsed directly with {@code java.time}. Other
+ * formats, and values not matching the fast path, are parsed with the Joda
+ * translation of the format. Formats are tried from left to right as by
+ * Elasticsearch, so {@code epoch_millis} is only parsed directly if it comes
+ * first: after an ISO format, reduced dates such as a year alone ("2020")
+ * are parsed as dates rather than as milliseconds.
+ */
+final class ElasticDateParser {
+
+    static final String DEFAULT_FORMAT = "date_optional_time";
+
+    private static final int MAX_PARSERS = 1000;
+
+    private static final Map<String,ElasticDateParser> PARSERS = new ConcurrentHashMap<>();
+
+    private static final java.time.format.DateTimeFormatter ISO_DATE_OPTIONAL_TIME = new DateTimeFormatterBuilder()
+            .appendValue(YEAR, 4)
+            .appendLiteral('-')
+            .appendValue(MONTH_OF_YEAR, 2)
+            .appendLiteral('-')
+            .appendValue(DAY_OF_MONTH, 2)
+            .optionalStart()
+            .appendLiteral('T')
+            .appendValue(HOUR_OF_DAY, 2)
+            .optionalStart()
+            .appendLiteral(':')
+            .appendValue(MINUTE_OF_HOUR, 2)
+            .optionalStart()
+            .appendLiteral(':')
+            .appendValue(SECOND_OF_MINUTE, 2)
+            .optionalStart()
+            .appendFraction(NANO_OF_SECOND, 1, 9, true)
+            .optionalEnd()
+            .optionalEnd()
+            .optionalEnd()
+            .optionalStart()
+            .appendOffset("+HH:MM", "Z")
+            .optionalEnd()
+            .optionalStart()
+            .appendOffset("+HHMM", "Z")
+            .optionalEnd()
+            .optionalStart()
+            .appendOffset("+HH", "Z")
+            .optionalEnd()
+            .optionalEnd()
+            .toFormatter(Locale.ROOT);
+
+    private final String format;
+
+    private final boolean isoDate;
+
+    /** Whether {@code epoch_millis} is tried before any ISO format */
+    private final boolean epochMillisFirst;
+
+    private final DateTimeFormatter parser;
+
+    private ElasticDateParser(String format) {
+        boolean isoDate = false;
+        boolean epochMillisFirst = false;
+        for (final String name : format.split("\\|\\|")) {
+            final String trimmed = name.trim();
+            if (trimmed.equals("date_optional_time") || trimmed.equals("dateOptionalTime")
+                    || trimmed.equals("strict_date_optional_time") || trimmed.equals("strictDateOptionalTime")) {
+                isoDate = true;
+            } else if (trimmed.equals("epoch_millis") && !isoDate) {
+                epochMillisFirst = true;
+            }
+        }
+        this.format = format;
+        this.isoDate = isoDate;
+        this.epochMillisFirst = epochMillisFirst;
+        this.parser = Joda.forPattern(format).parser();
+    }
+
+    /**
+     * Get the cached parser for a date format.
+     *
+     * @param format Elasticsearch date format, or null for the default format
+     * @return Parser
+     */
+    static ElasticDateParser forFormat(String format) {
+        final String key = format != null ? format : DEFAULT_FORMAT;
+        ElasticDateParser dateParser = PARSERS.get(key);
+        if (dateParser == null) {
+            if (PARSERS.size() >= MAX_PARSERS) {
+                PARSERS.clear();
+            }
+            dateParser = PARSERS.computeIfAbsent(key, ElasticDateParser::new);
+        }
+        return dateParser;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    /**
+     * Parse a date value.
+     *
+     * @param value Date string
+     * @return Date
+     * @throws IllegalArgumentException if the value does not match the format
+     */
+    Date parse(String value) {
+        Date date = null;
+        if (epochMillisFirst) {
+            date = parseEpochMillis(value);
+        }
+        if (date == null && isoDate) {
+            date = parseIsoDate(value);
+        }
+        if (date == null) {
+            date = parser.parseDateTime(value).toDate();
+        }
+        return date;
+    }
+
+    /**
+     * Parse an ISO date with optional time. Values are in UTC unless an offset
+     * is given.
+     *
+     * @param value Date string
+     * @return Date or null if the value could not be parsed
+     */
+    static Date parseIsoDate(String value) {
+        final ParsePosition position = new ParsePosition(0);
+        final TemporalAccessor parsed = ISO_DATE_OPTIONAL_TIME.parseUnresolved(value, position);
+        if (parsed == null || position.getErrorIndex() >= 0 || position.getIndex() != value.length()) {
+            return null;
+        }
+        try {
+            final LocalDateTime dateTime = LocalDateTime.of(
+                    getInt(parsed, YEAR),
+                    getInt(parsed, MONTH_OF_YEAR),
+                    getInt(parsed, DAY_OF_MONTH),
+                    getInt(parsed, HOUR_OF_DAY),
+                    getInt(parsed, MINUTE_OF_HOUR),
+                    getInt(parsed, SECOND_OF_MINUTE),
+                    getInt(parsed, NANO_OF_SECOND));
+            final ZoneOffset offset = ZoneOffset.ofTotalSeconds(getInt(parsed, OFFSET_SECONDS));
+            return Date.from(dateTime.toInstant(offset));
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse milliseconds since the epoch.
+     *
+     * @param value Date string
+     * @return Date or null if the value is not an integer
+     */
+    static Date parseEpochMillis(String value) {
+        final int length = value.length();
+        if (length == 0 || length > 19) {
+            return null;
+        }
+        for (int i = value.charAt(0) == '-' ? 1 : 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        try {
+            return new Date(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int getInt(TemporalAccessor parsed, TemporalField field) {
+        return parsed.isSupported(field) ? (int) parsed.getLong(field) : 0;
+    }
+
+}
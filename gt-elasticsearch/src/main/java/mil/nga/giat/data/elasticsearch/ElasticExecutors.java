@@ -0,0 +1,97 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ExecutorMode;
+
+/**
+ * Creates executors for blocking Elasticsearch calls made off the calling
+ * thread (scroll prefetch, aggregation cache tiles, federated searches).
+ * Virtual threads are used when requested and available (Java 21+), which
+ * are looked up reflectively as the module targets Java 8.
+ */
+final class ElasticExecutors {
+
+    private final static Logger LOGGER = Logging.getLogger(ElasticExecutors.class);
+
+    /** Counter of executor threads we generate */
+    static final AtomicInteger executorThreads = new AtomicInteger(1);
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private ElasticExecutors() {
+    }
+
+    /**
+     * @return Whether virtual threads are available in this JVM
+     */
+    static boolean isVirtualThreadsAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Create a new executor. Falls back to platform threads if virtual
+     * threads are requested but not available.
+     *
+     * @param mode Executor mode
+     * @param name Name of platform threads
+     * @return Executor
+     */
+    static ExecutorService newExecutor(ExecutorMode mode, String name) {
+        if (mode == ExecutorMode.VIRTUAL) {
+            if (isVirtualThreadsAvailable()) {
+                try {
+                    return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    LOGGER.log(Level.WARNING, "Unable to create virtual thread executor. Using platform threads.", e);
+                }
+            } else {
+                LOGGER.warning("Virtual threads are not available (requires Java 21 or later). Using platform threads.");
+            }
+        }
+        return Executors.newCachedThreadPool((run) -> {
+            final Thread thread = new Thread(run);
+            thread.setDaemon(true);
+            thread.setName(String.format("%s-%d", name, executorThreads.getAndIncrement()));
+            return thread;
+        });
+    }
+
+    /**
+     * Create a fork-join pool for CPU bound work such as decoding hits.
+     *
+     * @param parallelism Number of threads
+     * @param name Name of pool threads
+     * @return Pool
+     */
+    static ForkJoinPool newForkJoinPool(int parallelism, String name) {
+        return new ForkJoinPool(parallelism, (pool) -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setDaemon(true);
+            thread.setName(String.format("%s-%d", name, executorThreads.getAndIncrement()));
+            return thread;
+        }, null, false);
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.BINARY_GEOMETRY_FIELD;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DOC_VALUE;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+
+import java.util.Date;
+import java.util.List;
+
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+/**
+ * Immutable plan for extracting the attributes of a feature type from search
+ * hits. Attribute source paths, meta fields and binding kinds are resolved
+ * once per feature type instead of for every hit.
+ */
+final class ElasticExtractionPlan {
+
+    /** Hit meta fields used when an attribute has no value in the hit */
+    enum MetaField {
+        ID, INDEX, TYPE, SCORE, RELATIVE_SCORE
+    }
+
+    /** How attribute values are converted */
+    enum Kind {
+        GEOMETRY, DATE, AGGREGATION, VALUE
+    }
+
+    static final class Step {
+
+        private final int index;
+
+        private final String sourceName;
+
+        private final ElasticFieldPath fieldPath;
+
+        private final MetaField metaField;
+
+        private final Kind kind;
+
+        private final String dateFormat;
+
+        private final ElasticDateParser dateParser;
+
+        private final boolean docValue;
+
+        private final String binarySourceName;
+
+        private final ElasticFieldPath binaryFieldPath;
+
+        private Step(int index, AttributeDescriptor descriptor) {
+            final String name = descriptor.getType().getName().getLocalPart();
+            final Class<?> binding = descriptor.getType().getBinding();
+            this.index = index;
+            this.sourceName = (String) descriptor.getUserData().get(FULL_NAME);
+            this.fieldPath = new ElasticFieldPath(sourceName);
+            this.metaField = toMetaField(sourceName);
+            if (Geometry.class.isAssignableFrom(binding)) {
+                this.kind = Kind.GEOMETRY;
+            } else if (Date.class.isAssignableFrom(binding)) {
+                this.kind = Kind.DATE;
+            } else if (name.equals("_aggregation")) {
+                this.kind = Kind.AGGREGATION;
+            } else {
+                this.kind = Kind.VALUE;
+            }
+            this.dateFormat = (String) descriptor.getUserData().get(DATE_FORMAT);
+            this.dateParser = kind == Kind.DATE ? ElasticDateParser.forFormat(dateFormat) : null;
+            this.docValue = Boolean.TRUE.equals(descriptor.getUserData().get(DOC_VALUE));
+            final Object binaryField = descriptor.getUserData().get(BINARY_GEOMETRY_FIELD);
+            this.binarySourceName = kind == Kind.GEOMETRY ? (String) binaryField : null;
+            this.binaryFieldPath = binarySourceName != null ? new ElasticFieldPath(binarySourceName) : null;
+        }
+
+        /** @return Attribute index in the feature type */
+        int getIndex() {
+            return index;
+        }
+
+        /** @return Full attribute name in the document */
+        String getSourceName() {
+            return sourceName;
+        }
+
+        /** @return Compiled path of the source name */
+        ElasticFieldPath getFieldPath() {
+            return fieldPath;
+        }
+
+        /** @return Meta field or null if the attribute is not a meta field */
+        MetaField getMetaField() {
+            return metaField;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        String getDateFormat() {
+            return dateFormat;
+        }
+
+        /** @return Compiled date parser or null if the attribute is not a date */
+        ElasticDateParser getDateParser() {
+            return dateParser;
+        }
+
+        /** @return Whether the attribute is retrieved through docvalue_fields */
+        boolean isDocValue() {
+            return docValue;
+        }
+
+        /**
+         * @return Full name of the binary field holding the geometry as WKB or
+         * null if the geometry is read from the attribute field
+         */
+        String getBinarySourceName() {
+            return binarySourceName;
+        }
+
+        /** @return Compiled path of the binary source name */
+        ElasticFieldPath getBinaryFieldPath() {
+            return binaryFieldPath;
+        }
+
+    }
+
+    private final SimpleFeatureType featureType;
+
+    private final Step[] steps;
+
+    ElasticExtractionPlan(SimpleFeatureType featureType) {
+        this.featureType = featureType;
+        final List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+        this.steps = new Step[descriptors.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = new Step(i, descriptors.get(i));
+        }
+    }
+
+    /** @return Feature type the plan was built for */
+    SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    Step[] getSteps() {
+        return steps;
+    }
+
+    private static MetaField toMetaField(String sourceName) {
+        final MetaField metaField;
+        if (sourceName.equals("_id")) {
+            metaField = MetaField.ID;
+        } else if (sourceName.equals("_index")) {
+            metaField = MetaField.INDEX;
+        } else if (sourceName.equals("_type")) {
+            metaField = MetaField.TYPE;
+        } else if (sourceName.equals("_score")) {
+            metaField = MetaField.SCORE;
+        } else if (sourceName.equals("_relative_score")) {
+            metaField = MetaField.RELATIVE_SCORE;
+        } else {
+            metaField = null;
+        }
+        return metaField;
+    }
+
+}
@@ -5,40 +5,42 @@
 package mil.nga.giat.data.elasticsearch;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterators;
 
-import com.github.davidmoten.geo.GeoHash;
 import com.github.davidmoten.geo.LatLong;
 import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
-import mil.nga.giat.shaded.es.common.joda.Joda;
-import mil.nga.giat.shaded.joda.time.format.DateTimeFormatter;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AttributeDecoding;
 
-import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
-import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
-
-import org.geotools.data.FeatureReader;
 import org.geotools.data.store.ContentState;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.renderer.ScreenMap;
 import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.operation.TransformException;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * FeatureReader access to the Elasticsearch index.
  */
-class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+class ElasticFeatureReader implements ElasticHitReader {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticFeatureReader.class);
 
     private final ContentState state;
 
-    private final SimpleFeatureType featureType;
+    private SimpleFeatureType featureType;
 
     private final float maxScore;
 
@@ -46,8 +48,14 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
 
     private final ArrayEncoding arrayEncoding;
 
+    private AttributeDecoding attributeDecoding;
+
+    private final ElasticHitDecoder decoder;
+
     private SimpleFeatureBuilder builder;
 
+    private ElasticExtractionPlan extractionPlan;
+
     private Iterator<ElasticHit> searchHitIterator;
 
     private Iterator aggregationIterator;
@@ -56,10 +64,40 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
 
     private boolean combineBucketsIntoSingleFeature;
 
+    private ElasticBuckets aggregationBuckets;
+
+    private int[] bucketOrder;
+
+    private int bucketIndex;
+
     private int maxDocCount;
 
     private static final float SCALED_MAX_DOC_COUNT = 1000f;
 
+    /** Number of hits decoded per task when decoding in parallel */
+    static final int DECODE_CHUNK_SIZE = 128;
+
+    private final List<ElasticHit> hits;
+
+    private final ForkJoinPool decodePool;
+
+    private final ElasticCircleCache circleCache;
+
+    private ElasticGeneralization generalization;
+
+    private List<ForkJoinTask<List<SimpleFeature>>> decodeTasks;
+
+    private Iterator<SimpleFeature> decodedIterator;
+
+    private ScreenMap screenMap;
+
+    private ElasticExtractionPlan.Step geometryStep;
+
+    /** Last hit screened and its decoded geometry, reused when the hit is read */
+    private ElasticHit screenedHit;
+
+    private Object screenedGeometry;
+
     public ElasticFeatureReader(ContentState contentState, ElasticResponse response) {
         this(contentState, response, false);
     }
@@ -75,9 +113,9 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
     public ElasticFeatureReader(ContentState contentState, List<ElasticHit> hits, Map<String,ElasticAggregation> aggregations, float maxScore, boolean combineBucketsIntoSingleFeature) {
         this.state = contentState;
         this.featureType = state.getFeatureType();
+        this.hits = hits;
         this.searchHitIterator = hits.iterator();
         this.builder = new SimpleFeatureBuilder(featureType);
-        this.parserUtil = new ElasticParserUtil();
         this.maxScore = maxScore;
         this.combineBucketsIntoSingleFeature = combineBucketsIntoSingleFeature;
 
@@ -95,20 +133,10 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
                     this.aggregationIterator = Arrays.asList(buckets).iterator();
                 }
             } else {
-                if (aggregations.get(aggregationName).getBuckets() != null) {
-                    List<Map<String, Object>> buckets = aggregations.get(aggregationName).getBuckets();
-                    Collections.sort(buckets, (Comparator<Map<String, Object>>) (o1, o2) -> {
-                        return ((Number) o1.get("doc_count")).intValue() - ((Number) o2.get("doc_count")).intValue();
-                    });
-                    this.aggregationIterator = buckets.iterator();
-                }
-
-                maxDocCount = 0;
-                for (Iterator iter = aggregations.get(aggregationName).getBuckets().iterator(); iter.hasNext();) {
-                    Map<String, Object> aggregation = (Map<String, Object>) iter.next();
-                    if (aggregation.containsKey("doc_count")) {
-                        maxDocCount = Math.max(maxDocCount, ((Number) aggregation.get("doc_count")).intValue());
-                    }
+                aggregationBuckets = ElasticBuckets.valueOf(aggregations.get(aggregationName).getBuckets());
+                if (aggregationBuckets != null) {
+                    bucketOrder = aggregationBuckets.sortByDocCount();
+                    maxDocCount = (int) Math.min(Integer.MAX_VALUE, aggregationBuckets.getMaxDocCount());
                 }
                 LOGGER.severe("MAX DOC COUNT: " + maxDocCount);
             }
@@ -118,9 +146,17 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
             final ElasticDataStore dataStore;
             dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
             this.arrayEncoding = dataStore.getArrayEncoding();
+            this.attributeDecoding = dataStore.getAttributeDecoding();
+            this.decodePool = dataStore.getDecodePool();
+            this.circleCache = dataStore.getCircleCache();
         } else {
             this.arrayEncoding = ArrayEncoding.valueOf((String) ElasticDataStoreFactory.ARRAY_ENCODING.getDefaultValue());
+            this.attributeDecoding = AttributeDecoding.valueOf((String) ElasticDataStoreFactory.ATTRIBUTE_DECODING.getDefaultValue());
+            this.decodePool = null;
+            this.circleCache = new ElasticCircleCache();
         }
+        this.parserUtil = new ElasticParserUtil(circleCache);
+        this.decoder = new ElasticHitDecoder(arrayEncoding, maxScore, circleCache);
 
         this.mapper = new ObjectMapper();
     }
@@ -132,86 +168,150 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
 
     @Override
     public SimpleFeature next() {
-        final String id;
-        if (searchHitIterator.hasNext()) {
-            id = nextHit();
+        final SimpleFeature feature;
+        if (searchHitIterator.hasNext() && attributeDecoding == AttributeDecoding.LAZY) {
+            feature = nextLazyHit();
+        } else if (searchHitIterator.hasNext() && decodePool != null && screenMap == null
+                && hits.size() > DECODE_CHUNK_SIZE) {
+            feature = nextDecodedHit();
+        } else if (searchHitIterator.hasNext()) {
+            feature = builder.buildFeature(nextHit());
         } else {
-            id = nextAggregation();
+            feature = builder.buildFeature(nextAggregation());
         }
-        return builder.buildFeature(id);
+        return feature;
     }
 
-    private String nextHit() {
+    private SimpleFeature nextLazyHit() {
         final ElasticHit hit = searchHitIterator.next();
-        final SimpleFeatureType type = getFeatureType();
-        final Map<String, Object> source = hit.getSource();
-
-        final Float score;
-        final Float relativeScore;
-        if (hit.getScore() != null && !Float.isNaN(hit.getScore()) && maxScore>0) {
-            score = hit.getScore();
-            relativeScore = score / maxScore;
-        } else {
-            score = null;
-            relativeScore = null;
+        final String id = state.getEntry().getTypeName() + "." + hit.getId();
+        final ElasticLazyFeature feature = new ElasticLazyFeature(featureType, id, hit, getExtractionPlan(featureType), decoder);
+        if (hit == screenedHit) {
+            feature.setAttribute(geometryStep.getIndex(), screenedGeometry);
         }
+        return feature;
+    }
 
-        for (final AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
-            final String name = descriptor.getType().getName().getLocalPart();
-            final String sourceName = (String) descriptor.getUserData().get(FULL_NAME);
+    private String nextHit() {
+        return decodeHit(builder, decoder, getExtractionPlan(getFeatureType()), searchHitIterator.next());
+    }
 
-            List<Object> values = hit.field(sourceName);
-            if (values == null && source != null) {
-                // read field from source
-                values = parserUtil.readField(source, sourceName);
+    private String decodeHit(SimpleFeatureBuilder builder, ElasticHitDecoder decoder, ElasticExtractionPlan plan,
+            ElasticHit hit) {
+        for (final ElasticExtractionPlan.Step step : plan.getSteps()) {
+            if (hit == screenedHit && step == geometryStep) {
+                builder.set(step.getIndex(), screenedGeometry);
+            } else {
+                builder.set(step.getIndex(), decoder.decode(step, hit));
             }
+        }
 
-            if (values == null && sourceName.equals("_id")) {
-                builder.set(name, hit.getId());
-            } else if (values == null && sourceName.equals("_index")) {
-                builder.set(name, hit.getIndex());
-            } else if (values == null && sourceName.equals("_type")) {
-                builder.set(name, hit.getType());
-            } else if (values == null && sourceName.equals("_score")) {
-                builder.set(name, score);
-            } else if (values == null && sourceName.equals("_relative_score")) {
-                builder.set(name, relativeScore);
-            } else if (values != null && Geometry.class.isAssignableFrom(descriptor.getType().getBinding())) {
-                if (values.size() == 1) {
-                    builder.set(name, parserUtil.createGeometry(values.get(0)));
-                } else {
-                    builder.set(name, parserUtil.createGeometry(values));
-                }
-            } else if (values != null && Date.class.isAssignableFrom(descriptor.getType().getBinding())) {
-                Object dataVal = values.get(0);
-                if (dataVal instanceof Double) {
-                    builder.set(name, new Date(Math.round((Double) dataVal)));
-                } else if (dataVal instanceof Integer) {
-                    builder.set(name, new Date((Integer) dataVal));
-                } else if (dataVal instanceof Long) {
-                    builder.set(name, new Date((long) dataVal));
-                } else {
-                    final String format = (String) descriptor.getUserData().get(DATE_FORMAT);
-                    final DateTimeFormatter dateFormatter = Joda.forPattern(format).parser();
-
-                    Date date = dateFormatter.parseDateTime((String) dataVal).toDate();
-                    builder.set(name, date);
-                }
-            } else if (values != null && values.size() == 1) {
-                builder.set(name, values.get(0));
-            } else if (values != null && !name.equals("_aggregation")) {
-                final Object value;
-                if (arrayEncoding == ArrayEncoding.CSV) {
-                    // only include first array element when using CSV array encoding
-                    value = values.get(0);
-                } else {
-                    value = values;
-                }
-                builder.set(name, value);
+        return state.getEntry().getTypeName() + "." + hit.getId();
+    }
+
+    private SimpleFeature nextDecodedHit() {
+        if (decodedIterator == null) {
+            decodedIterator = decodeParallel();
+        }
+        searchHitIterator.next();
+        return decodedIterator.next();
+    }
+
+    /**
+     * Decode all hits in chunks on the decode pool. Chunks are returned in
+     * hit order, waiting for each chunk in turn, so that the order of sorted
+     * queries is kept.
+     */
+    private Iterator<SimpleFeature> decodeParallel() {
+        final ElasticExtractionPlan plan = getExtractionPlan(getFeatureType());
+        decodeTasks = new ArrayList<>();
+        for (int from = 0; from < hits.size(); from += DECODE_CHUNK_SIZE) {
+            final List<ElasticHit> chunk = hits.subList(from, Math.min(from + DECODE_CHUNK_SIZE, hits.size()));
+            final ForkJoinTask<List<SimpleFeature>> task = ForkJoinTask.adapt(() -> decodeChunk(plan, chunk));
+            try {
+                decodePool.execute(task);
+            } catch (RejectedExecutionException e) {
+                // pool shut down since the reader was created (e.g. decode threads changed)
+                task.invoke();
             }
+            decodeTasks.add(task);
         }
+        return Iterators.concat(Iterators.transform(decodeTasks.iterator(), task -> task.join().iterator()));
+    }
 
-        return state.getEntry().getTypeName() + "." + hit.getId();
+    private List<SimpleFeature> decodeChunk(ElasticExtractionPlan plan, List<ElasticHit> chunk) {
+        // builder and parser are not thread safe
+        final SimpleFeatureBuilder chunkBuilder = new SimpleFeatureBuilder(featureType);
+        final ElasticHitDecoder chunkDecoder = new ElasticHitDecoder(arrayEncoding, maxScore, circleCache);
+        chunkDecoder.setGeneralization(generalization);
+        final List<SimpleFeature> features = new ArrayList<>(chunk.size());
+        for (final ElasticHit hit : chunk) {
+            features.add(chunkBuilder.buildFeature(decodeHit(chunkBuilder, chunkDecoder, plan, hit)));
+        }
+        return features;
+    }
+
+    /**
+     * Set the feature type of the returned features, to only decode the
+     * attributes of a retyped feature type (e.g. the properties requested by
+     * a query). Must be set before reading and before the screen map.
+     *
+     * @param featureType Feature type with a subset of the attributes of the
+     * state feature type
+     */
+    @Override
+    public void setFeatureType(SimpleFeatureType featureType) {
+        this.featureType = featureType;
+        this.builder = new SimpleFeatureBuilder(featureType);
+        this.extractionPlan = null;
+    }
+
+    @Override
+    public void setGeneralization(ElasticGeneralization generalization) {
+        this.generalization = generalization;
+        decoder.setGeneralization(generalization);
+    }
+
+    @Override
+    public void setAttributeDecoding(AttributeDecoding attributeDecoding) {
+        this.attributeDecoding = attributeDecoding;
+    }
+
+    @Override
+    public void setScreenMap(ScreenMap screenMap) {
+        final GeometryDescriptor descriptor = featureType.getGeometryDescriptor();
+        if (screenMap != null && descriptor != null) {
+            this.screenMap = screenMap;
+            this.geometryStep = getExtractionPlan(featureType).getSteps()[featureType.indexOf(descriptor.getName())];
+            this.searchHitIterator = Iterators.filter(searchHitIterator, this::isVisible);
+        }
+    }
+
+    private boolean isVisible(ElasticHit hit) {
+        final Object geometry = decoder.decode(geometryStep, hit);
+        screenedHit = hit;
+        screenedGeometry = geometry;
+        boolean visible = true;
+        if (geometry instanceof Geometry) {
+            final Envelope envelope = ((Geometry) geometry).getEnvelopeInternal();
+            try {
+                visible = !screenMap.canSimplify(envelope) || !screenMap.checkAndSet(envelope);
+            } catch (TransformException e) {
+                LOGGER.log(Level.FINE, "Unable to check screen map", e);
+            }
+        }
+        return visible;
+    }
+
+    private ElasticExtractionPlan getExtractionPlan(SimpleFeatureType type) {
+        if (extractionPlan == null) {
+            if (state instanceof ElasticContentState) {
+                extractionPlan = ((ElasticContentState) state).getExtractionPlan(type);
+            } else {
+                extractionPlan = new ElasticExtractionPlan(type);
+            }
+        }
+        return extractionPlan;
     }
 
     private String nextAggregation() {
@@ -219,9 +319,9 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
             builder.set("_aggregation", aggregationIterator.next());
             return null;
         } else {
-            final Map<String, Object> aggregation = (Map<String, Object>) aggregationIterator.next();
-            String id = (String) aggregation.get("key");
-            int docCount = ((Number) aggregation.get("doc_count")).intValue();
+            final int index = bucketOrder[bucketIndex++];
+            String id = (String) aggregationBuckets.getKey(index);
+            int docCount = (int) aggregationBuckets.getDocCount(index);
             int scaledDocCount = scaleDocCount(docCount);
 
             builder.set("_id", id);
@@ -231,7 +331,7 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
             builder.set("_type", "_doc");
             builder.set("range", scaledDocCount);
 
-            LatLong latLong = GeoHash.decodeHash(id);
+            LatLong latLong = ElasticParserUtil.decodeGeohash(id);
             Map<String, Object> location = new LinkedHashMap<>();
             location.put("lat", latLong.getLat());
             location.put("lon", latLong.getLon());
@@ -249,13 +349,20 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
 
     @Override
     public boolean hasNext() {
-        return searchHitIterator.hasNext() || aggregationIterator.hasNext();
+        return searchHitIterator.hasNext() || aggregationIterator.hasNext()
+                || (bucketOrder != null && bucketIndex < bucketOrder.length);
     }
 
     @Override
     public void close() {
+        if (decodeTasks != null) {
+            decodeTasks.forEach(task -> task.cancel(false));
+            decodeTasks = null;
+        }
         builder = null;
         searchHitIterator = null;
+        screenedHit = null;
+        screenedGeometry = null;
     }
 
 }
@@ -0,0 +1,122 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.store.ContentState;
+import org.geotools.renderer.ScreenMap;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AttributeDecoding;
+
+/**
+ * Reader over unsorted hits from several clusters that returns features from
+ * each cluster response as soon as it arrives, so that the slowest cluster
+ * does not delay features that are already available.
+ */
+class ElasticFeatureReaderFederated implements ElasticHitReader {
+
+    private final ContentState contentState;
+
+    private final FederatedElasticClient.CompletionIterator responses;
+
+    private final int maxFeatures;
+
+    private ElasticFeatureReader delegate;
+
+    private int numFeatures;
+
+    private SimpleFeatureType featureType;
+
+    private ElasticGeneralization generalization;
+
+    private AttributeDecoding attributeDecoding;
+
+    private ScreenMap screenMap;
+
+    public ElasticFeatureReaderFederated(ContentState contentState, FederatedElasticClient.CompletionIterator responses,
+            int maxFeatures) {
+        this.contentState = contentState;
+        this.responses = responses;
+        this.maxFeatures = maxFeatures;
+        this.numFeatures = 0;
+    }
+
+    @Override
+    public void setFeatureType(SimpleFeatureType featureType) {
+        this.featureType = featureType;
+    }
+
+    @Override
+    public void setGeneralization(ElasticGeneralization generalization) {
+        this.generalization = generalization;
+    }
+
+    @Override
+    public void setAttributeDecoding(AttributeDecoding attributeDecoding) {
+        this.attributeDecoding = attributeDecoding;
+    }
+
+    @Override
+    public void setScreenMap(ScreenMap screenMap) {
+        this.screenMap = screenMap;
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType != null ? featureType : contentState.getFeatureType();
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        numFeatures++;
+        return delegate.next();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (numFeatures >= maxFeatures) {
+            return false;
+        }
+        while ((delegate == null || !delegate.hasNext()) && responses.hasNext()) {
+            final ElasticResponse response;
+            try {
+                response = responses.next();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            final List<ElasticHit> hits = response.getHits();
+            delegate = new ElasticFeatureReader(contentState, hits, null, response.getMaxScore());
+            if (featureType != null) {
+                delegate.setFeatureType(featureType);
+            }
+            delegate.setGeneralization(generalization);
+            if (attributeDecoding != null) {
+                delegate.setAttributeDecoding(attributeDecoding);
+            }
+            delegate.setScreenMap(screenMap);
+        }
+        return delegate != null && delegate.hasNext();
+    }
+
+    @Override
+    public void close() {
+        // requests do not scroll and hold no server side resources, so
+        // requests still running are cancelled and their responses discarded
+        responses.close();
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+}
@@ -5,19 +5,25 @@
 package mil.nga.giat.data.elasticsearch;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
-import org.geotools.data.FeatureReader;
 import org.geotools.data.store.ContentState;
+import org.geotools.renderer.ScreenMap;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
 
-class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AttributeDecoding;
+
+class ElasticFeatureReaderScroll implements ElasticHitReader {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticFeatureReaderScroll.class);
 
@@ -35,21 +41,66 @@ class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, Sim
 
     private final Set<String> scrollIds;
 
+    private final String opaqueId;
+
+    private SimpleFeatureType featureType;
+
+    private ElasticGeneralization generalization;
+
+    private AttributeDecoding attributeDecoding;
+
+    private ScreenMap screenMap;
+
+    /** Next page, fetched in the background while the current page is read */
+    private Future<ElasticResponse> nextResponse;
+
     public ElasticFeatureReaderScroll(ContentState contentState, ElasticResponse searchResponse, int maxFeatures) {
         this.contentState = contentState;
         this.maxFeatures = maxFeatures;
         this.numFeatures = 0;
         this.scrollIds = new HashSet<>();
-        processResponse(searchResponse);
+        this.opaqueId = ElasticOpaqueId.create(contentState.getEntry().getTypeName(), ElasticOpaqueId.SCROLL);
+        // callers reading only the first page don't pay for a prefetched page
+        processResponse(searchResponse, false);
     }
 
     private void advanceScroll() throws IOException {
+        final ElasticResponse response;
+        if (nextResponse != null) {
+            try {
+                response = nextResponse.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for scroll response");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Error executing scroll", e.getCause());
+            } finally {
+                nextResponse = null;
+            }
+        } else {
+            final ElasticDataStore dataStore;
+            dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
+            response = dataStore.getClient().scroll(nextScrollId, dataStore.getScrollTime(), opaqueId);
+        }
+        processResponse(response, true);
+    }
+
+    private void prefetch() {
         final ElasticDataStore dataStore;
         dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
-        processResponse(dataStore.getClient().scroll(nextScrollId, dataStore.getScrollTime()));
+        final String scrollId = nextScrollId;
+        nextResponse = dataStore.getExecutor().submit(new DelegatingSecurityContextCallable<>(
+                () -> dataStore.getClient().scroll(scrollId, dataStore.getScrollTime(), opaqueId)));
     }
 
-    private void processResponse(ElasticResponse searchResponse) {
+    /**
+     * @param prefetch Whether to fetch the next page in the background, once
+     * the caller has scrolled past the first page
+     */
+    private void processResponse(ElasticResponse searchResponse, boolean prefetch) {
         final int numHits = searchResponse.getNumHits();
         final List<ElasticHit> hits;
         if (numFeatures+numHits <= maxFeatures) {
@@ -59,10 +110,45 @@ class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, Sim
             hits = searchResponse.getResults().getHits().subList(0,n);
         }
         delegate = new ElasticFeatureReader(contentState, hits, searchResponse.getAggregations(), 0);
+        if (featureType != null) {
+            delegate.setFeatureType(featureType);
+        }
+        delegate.setGeneralization(generalization);
+        if (attributeDecoding != null) {
+            delegate.setAttributeDecoding(attributeDecoding);
+        }
+        delegate.setScreenMap(screenMap);
         nextScrollId = searchResponse.getScrollId();
         lastScroll = numHits == 0 || numFeatures+hits.size()>=maxFeatures;
         LOGGER.fine("Scoll numHits=" + hits.size() + " (total=" + numFeatures+hits.size());
         scrollIds.add(nextScrollId);
+        if (!lastScroll && prefetch) {
+            prefetch();
+        }
+    }
+
+    @Override
+    public void setFeatureType(SimpleFeatureType featureType) {
+        this.featureType = featureType;
+        delegate.setFeatureType(featureType);
+    }
+
+    @Override
+    public void setGeneralization(ElasticGeneralization generalization) {
+        this.generalization = generalization;
+        delegate.setGeneralization(generalization);
+    }
+
+    @Override
+    public void setAttributeDecoding(AttributeDecoding attributeDecoding) {
+        this.attributeDecoding = attributeDecoding;
+        delegate.setAttributeDecoding(attributeDecoding);
+    }
+
+    @Override
+    public void setScreenMap(ScreenMap screenMap) {
+        this.screenMap = screenMap;
+        delegate.setScreenMap(screenMap);
     }
 
     @Override
@@ -84,14 +170,29 @@ class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, Sim
 
     @Override
     public boolean hasNext() throws IOException {
-        if (!delegate.hasNext() && !lastScroll) {
+        // pages may be empty when all hits are skipped by the screen map
+        while (!delegate.hasNext() && !lastScroll) {
             advanceScroll();
         }
-        return (delegate.hasNext() || !lastScroll) && numFeatures<maxFeatures;
+        return delegate.hasNext() && numFeatures<maxFeatures;
     }
 
     @Override
     public void close() throws IOException {
+        if (nextResponse != null) {
+            if (!nextResponse.cancel(true)) {
+                // the prefetch completed, so its scroll id is cleared as well
+                try {
+                    scrollIds.add(nextResponse.get().getScrollId());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    LOGGER.fine("Prefetched scroll failed: " + e.getCause());
+                }
+            }
+            nextResponse = null;
+        }
+        scrollIds.remove(null);
         if (!scrollIds.isEmpty()) {
             final ElasticDataStore dataStore;
             dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
@@ -7,27 +7,41 @@ package mil.nga.giat.data.elasticsearch;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.Query;
+import org.geotools.data.ReTypeFeatureReader;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.renderer.ScreenMap;
+import org.geotools.util.factory.Hints;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Envelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AttributeDecoding;
+
 /**
  * Provides access to a specific type within the Elasticsearch index described
  * by the associated data store.
@@ -37,8 +51,6 @@ class ElasticFeatureSource extends ContentFeatureSource {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticFeatureSource.class);
 
-    private Boolean filterFullySupported;
-
     private AggregationCache aggregationCache;
 
     public ElasticFeatureSource(ContentEntry entry, Query query, AggregationCache aggregationCache) throws IOException {
@@ -71,7 +83,12 @@ class ElasticFeatureSource extends ContentFeatureSource {
         final CoordinateReferenceSystem crs = getSchema().getCoordinateReferenceSystem();
         final ReferencedEnvelope bounds = new ReferencedEnvelope(crs);
 
-        try (FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getReaderInternal(query)) {
+        // only the default geometry is needed
+        final Query boundsQuery = new Query(query);
+        if (getSchema().getGeometryDescriptor() != null) {
+            boundsQuery.setPropertyNames(new String[] {getSchema().getGeometryDescriptor().getLocalName()});
+        }
+        try (FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getReaderInternal(boundsQuery)) {
             while (featureReader.hasNext()) {
                 final SimpleFeature feature = featureReader.next();
                 bounds.include(feature.getBounds());
@@ -84,10 +101,11 @@ class ElasticFeatureSource extends ContentFeatureSource {
     protected int getCountInternal(Query query) throws IOException {
         LOGGER.fine("getCountInternal");
         int hits = 0;
-        final ElasticRequest searchRequest = prepareSearchRequest(query, false);
         try {
-            if (!filterFullySupported) {
-                try (FeatureReader<SimpleFeatureType, SimpleFeature> reader = getReaderInternal(query)) {
+            final ElasticQueryPlan queryPlan = createQueryPlan(query);
+            final ElasticRequest searchRequest = prepareSearchRequest(query, queryPlan, false);
+            if (!queryPlan.isFullySupported()) {
+                try (FeatureReader<SimpleFeatureType, SimpleFeature> reader = getReaderInternal(query, queryPlan)) {
                     while (reader.hasNext()) {
                         reader.next();
                         hits++;
@@ -95,6 +113,7 @@ class ElasticFeatureSource extends ContentFeatureSource {
                 }
             } else {
                 searchRequest.setSize(0);
+                searchRequest.setOpaqueId(ElasticOpaqueId.create(entry.getTypeName(), ElasticOpaqueId.COUNT));
                 final ElasticDataStore dataStore = getDataStore();
                 final String docType = dataStore.getDocType(entry.getName());
                 final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
@@ -114,22 +133,30 @@ class ElasticFeatureSource extends ContentFeatureSource {
     @Override
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query) throws IOException {
         LOGGER.fine("getReaderInternal");
-        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+        final ElasticQueryPlan queryPlan;
         try {
-            final FilterToElastic filterToElastic = new FilterToElastic();
-            filterToElastic.setFeatureType(buildFeatureType());
-            filterToElastic.encode(query);
+            queryPlan = createQueryPlan(query);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage(), e);
+            throw new IOException("Error executing query search", e);
+        }
+        return getReaderInternal(query, queryPlan);
+    }
 
-            Integer precision = null;
-            if (filterToElastic.getAggregations() != null && filterToElastic.getAggregations().containsKey("agg")) {
-                precision = Integer.parseInt((String) filterToElastic.getAggregations().get("agg").get("geohash_grid").get("precision"));
-            }
+    private FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query, ElasticQueryPlan queryPlan)
+            throws IOException {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Query plan: " + queryPlan);
+        }
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+        try {
+            final Integer precision = queryPlan.getPrecision();
 
             boolean combineBucketsIntoSingleFeature = precision != null && precision < 8;
 
             // FIXME bug: if no results, request gets stuck in infinite loop and is killed by GS after 60s
 
-            if (this.aggregationCache.supportsQuery(filterToElastic)) {
+            if (this.aggregationCache.supportsQuery(queryPlan)) {
                 List<Map<String, Object>> cachedBuckets = this.aggregationCache.getBuckets(precision, query);
 
                 Map<String, ElasticAggregation> aggregations = new HashMap<>();
@@ -140,33 +167,49 @@ class ElasticFeatureSource extends ContentFeatureSource {
                 }
 
                 reader = new ElasticFeatureReader(getState(), new ArrayList<>(), aggregations, 0f, combineBucketsIntoSingleFeature);
+                reader = retype(reader, queryPlan);
             } else {
                 long start = System.currentTimeMillis();
                 LOGGER.severe(">>> Running search for precision " + precision);
                 final ElasticDataStore dataStore = getDataStore();
                 final String docType = dataStore.getDocType(entry.getName());
                 final boolean scroll = !useSortOrPagination(query) && dataStore.getScrollEnabled();
-                final ElasticRequest searchRequest = prepareSearchRequest(query, scroll);
-                final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.fine("Search response: " + sr);
-                }
+                final ElasticRequest searchRequest = prepareSearchRequest(query, queryPlan, scroll);
+                final ElasticHitReader hitReader;
+                if (!scroll && isStreamable(dataStore.getClient(), searchRequest)) {
+                    // federated unsorted hits are returned as each cluster responds
+                    final FederatedElasticClient client = (FederatedElasticClient) dataStore.getClient();
+                    hitReader = new ElasticFeatureReaderFederated(getState(),
+                            client.searchEach(dataStore.getIndexName(), docType, searchRequest), getSize(query));
+                    setUp(hitReader, query, queryPlan, true);
+                } else {
+                    // a federated search waits for all clusters, since sorted or
+                    // paged hits and aggregation buckets are merged across clusters
+                    final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("Search response: " + sr);
+                    }
 
-                if (sr.getAggregations() != null) {
-                    LOGGER.severe(">>> Search returned " + sr.getAggregations().values().iterator().next().getBuckets().size() + " buckets");
-                }
-                if (sr.getNumHits() > 0) {
-                    LOGGER.severe(">>> Search returned " + sr.getNumHits() + " hits");
-                }
+                    if (sr.getAggregations() != null) {
+                        LOGGER.severe(">>> Search returned " + sr.getAggregations().values().iterator().next().getBuckets().size() + " buckets");
+                    }
+                    if (sr.getNumHits() > 0) {
+                        LOGGER.severe(">>> Search returned " + sr.getNumHits() + " hits");
+                    }
 
-                if (!scroll) {
-                    reader = new ElasticFeatureReader(getState(), sr, combineBucketsIntoSingleFeature);
-                } else {
-                    reader = new ElasticFeatureReaderScroll(getState(), sr, getSize(query));
+                    if (!scroll) {
+                        hitReader = new ElasticFeatureReader(getState(), sr, combineBucketsIntoSingleFeature);
+                    } else {
+                        hitReader = new ElasticFeatureReaderScroll(getState(), sr, getSize(query));
+                    }
+                    // aggregations are read with all attributes and retyped
+                    setUp(hitReader, query, queryPlan, sr.getAggregations() == null);
                 }
-                if (!filterFullySupported) {
-                    reader = new FilteringFeatureReader<>(reader, query.getFilter());
+                reader = hitReader;
+                if (!queryPlan.isFullySupported()) {
+                    reader = new FilteringFeatureReader<>(reader, ElasticPostFilterVisitor.compile(query.getFilter()));
                 }
+                reader = retype(reader, queryPlan);
                 LOGGER.severe("Total time to run search: " + (System.currentTimeMillis() - start) + " ms");
             }
         } catch (Exception e) {
@@ -176,7 +219,201 @@ class ElasticFeatureSource extends ContentFeatureSource {
         return reader;
     }
 
-    private ElasticRequest prepareSearchRequest(Query query, boolean scroll) throws IOException {
+    /**
+     * Get the results of a query as columnar batches.
+     *
+     * @param query Query, which filter must be fully supported by Elasticsearch
+     * @return Batch reader
+     * @throws IOException if the query fails or requires post filtering
+     */
+    ElasticColumnarBatchReader getColumnarBatchReader(Query query) throws IOException {
+        final ElasticDataStore dataStore = getDataStore();
+        final String docType = dataStore.getDocType(entry.getName());
+        final boolean scroll = !useSortOrPagination(query) && dataStore.getScrollEnabled();
+        final ElasticQueryPlan queryPlan = createQueryPlan(query);
+        final ElasticRequest searchRequest = prepareSearchRequest(query, queryPlan, scroll);
+        if (!queryPlan.isFullySupported()) {
+            throw new IOException("Columnar batches require a filter fully supported by Elasticsearch");
+        }
+        final Set<String> names;
+        if (query.getProperties() != Query.ALL_PROPERTIES) {
+            names = new HashSet<>(Arrays.asList(query.getPropertyNames()));
+        } else {
+            names = null;
+        }
+        final SimpleFeatureType featureType = getSchema();
+        final ElasticExtractionPlan plan;
+        if (getState() instanceof ElasticContentState) {
+            plan = ((ElasticContentState) getState()).getExtractionPlan(featureType);
+        } else {
+            plan = new ElasticExtractionPlan(featureType);
+        }
+        final ElasticResponse response;
+        try {
+            response = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, e.getMessage(), e);
+            throw new IOException("Error executing query search", e);
+        }
+        // following pages are only requested when the search scrolls
+        final String operation = scroll ? ElasticOpaqueId.SCROLL : ElasticOpaqueId.SEARCH;
+        final String opaqueId = ElasticOpaqueId.create(entry.getTypeName(), operation);
+        return new ElasticColumnarBatchReader(dataStore, plan, names, response, getSize(query), opaqueId);
+    }
+
+    /**
+     * @return Feature type of the properties requested by a query, or the
+     * schema if all properties are requested
+     */
+    private SimpleFeatureType getTargetFeatureType(Query query) {
+        final SimpleFeatureType featureType;
+        if (query.getProperties() != Query.ALL_PROPERTIES) {
+            featureType = retype(Arrays.asList(query.getPropertyNames()));
+        } else {
+            featureType = getSchema();
+        }
+        return featureType;
+    }
+
+    /**
+     * @return Feature type read from the hits of a query, including the
+     * attributes of the filter if the query is post filtered
+     */
+    private SimpleFeatureType getReadFeatureType(Query query, SimpleFeatureType targetType, boolean fullySupported) {
+        final SimpleFeatureType featureType;
+        if (targetType != getSchema() && !fullySupported) {
+            final Set<String> names = new LinkedHashSet<>(Arrays.asList(query.getPropertyNames()));
+            names.addAll(Arrays.asList(DataUtilities.attributeNames(query.getFilter(), getSchema())));
+            if (names.size() > targetType.getAttributeCount()) {
+                featureType = retype(new ArrayList<>(names));
+            } else {
+                featureType = targetType;
+            }
+        } else {
+            featureType = targetType;
+        }
+        return featureType;
+    }
+
+    /**
+     * @return Schema retyped to the property names, memoized in the content
+     * state so repeated property lists share the same feature type
+     */
+    private SimpleFeatureType retype(List<String> names) {
+        final ContentState state = getState();
+        final SimpleFeatureType featureType;
+        if (state instanceof ElasticContentState) {
+            featureType = ((ElasticContentState) state).getRetypedFeatureType(getSchema(), names);
+        } else {
+            featureType = SimpleFeatureTypeBuilder.retype(getSchema(), names);
+        }
+        return featureType;
+    }
+
+    /**
+     * Retype features to the properties requested by a query if they were
+     * read with more attributes (e.g. for post filtering or aggregations).
+     */
+    private FeatureReader<SimpleFeatureType, SimpleFeature> retype(
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader, ElasticQueryPlan queryPlan) {
+        final SimpleFeatureType targetType = queryPlan.getTargetFeatureType();
+        final FeatureReader<SimpleFeatureType, SimpleFeature> result;
+        if (!reader.getFeatureType().equals(targetType)) {
+            result = new ReTypeFeatureReader(reader, targetType, false);
+        } else {
+            result = reader;
+        }
+        return result;
+    }
+
+    /**
+     * Set up a reader of the hits of a query.
+     *
+     * @param project Whether to only read the attributes of the query plan
+     */
+    private void setUp(ElasticHitReader reader, Query query, ElasticQueryPlan queryPlan, boolean project) {
+        if (project) {
+            reader.setFeatureType(queryPlan.getReadFeatureType());
+        }
+        // post filters are evaluated against the geometries read, which must not be simplified
+        final boolean fullySupported = queryPlan.isFullySupported();
+        reader.setGeneralization(fullySupported ? ElasticGeneralization.fromHints(query.getHints()) : null);
+        reader.setAttributeDecoding(getAttributeDecoding(query));
+        reader.setScreenMap(getScreenMap(query, fullySupported));
+    }
+
+    /**
+     * @return Screen map of a rendering request, or null if not requested or
+     * features are post filtered (skipped hits would otherwise mark pixels
+     * of features which are not rendered)
+     */
+    private static ScreenMap getScreenMap(Query query, boolean filterFullySupported) {
+        final ScreenMap screenMap;
+        if (filterFullySupported && query.getHints() != null) {
+            screenMap = (ScreenMap) query.getHints().get(Hints.SCREENMAP);
+        } else {
+            screenMap = null;
+        }
+        return screenMap;
+    }
+
+    /**
+     * @return Lazy decoding for a rendering request, which only accesses the
+     * geometry and the styled attributes, otherwise the data store attribute
+     * decoding
+     */
+    private AttributeDecoding getAttributeDecoding(Query query) {
+        final AttributeDecoding attributeDecoding;
+        if (query.getHints() != null && query.getHints().get(Hints.SCREENMAP) != null) {
+            attributeDecoding = AttributeDecoding.LAZY;
+        } else {
+            attributeDecoding = getDataStore().getAttributeDecoding();
+        }
+        return attributeDecoding;
+    }
+
+    /**
+     * Translate a query. The filter is encoded once and the resulting plan is
+     * used for the rest of the query.
+     */
+    private ElasticQueryPlan createQueryPlan(Query query) throws IOException {
+        final ElasticDataStore dataStore = getDataStore();
+        final FilterToElastic filterToElastic = new FilterToElastic();
+        filterToElastic.setFeatureType(buildFeatureType());
+        // filters sharing a structure are translated once per layer configuration version
+        final String version = entry.getTypeName() + '@' + dataStore.getLayerConfigurationVersion(entry.getTypeName());
+        dataStore.getFilterTemplateCache().encode(filterToElastic, query.getFilter(), version);
+        filterToElastic.addViewParams(query);
+        final boolean fullySupported = Boolean.TRUE.equals(filterToElastic.getFullySupported());
+        if (!fullySupported) {
+            LOGGER.fine("Filter is not fully supported by native Elasticsearch."
+                    + " Additional post-query filtering will be performed.");
+        }
+
+        if (filterToElastic.getAggregations() != null) {
+            final Envelope envelope = (Envelope) query.getFilter().accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+            final long gridSize;
+            if (dataStore.getGridSize() != null) {
+                gridSize = dataStore.getGridSize();
+            } else {
+                gridSize = (Long) ElasticDataStoreFactory.GRID_SIZE.getDefaultValue();
+            }
+            final double gridThreshold;
+            if (dataStore.getGridThreshold() != null) {
+                gridThreshold = dataStore.getGridThreshold();
+            } else {
+                gridThreshold = (Double) ElasticDataStoreFactory.GRID_THRESHOLD.getDefaultValue();
+            }
+            final int precision = GeohashUtil.computePrecision(envelope, gridSize, gridThreshold);
+            LOGGER.fine("Updating GeoHash grid aggregation precision to " + precision);
+            GeohashUtil.updateGridAggregationPrecision(filterToElastic.getAggregations(), precision);
+        }
+
+        final SimpleFeatureType targetType = getTargetFeatureType(query);
+        return new ElasticQueryPlan(filterToElastic, targetType, getReadFeatureType(query, targetType, fullySupported));
+    }
+
+    private ElasticRequest prepareSearchRequest(Query query, ElasticQueryPlan queryPlan, boolean scroll) throws IOException {
         String naturalSortOrder = SortOrder.ASCENDING.toSQL().toLowerCase();
         final ElasticRequest searchRequest = new ElasticRequest();
         final ElasticDataStore dataStore = getDataStore();
@@ -208,74 +445,71 @@ class ElasticFeatureSource extends ContentFeatureSource {
             }
         }
 
-        if (dataStore.isSourceFilteringEnabled()) {
-            if (query.getProperties() != Query.ALL_PROPERTIES) {
-                for (String property : query.getPropertyNames()) {
-                    searchRequest.addSourceInclude(property);
-                }
-            } else {
-                // add source includes
-                setSourceIncludes(searchRequest);
-            }
+        // requested properties are always projected, all properties only
+        // with source filtering
+        final SimpleFeatureType readFeatureType = queryPlan.getReadFeatureType();
+        if (readFeatureType != getSchema() || dataStore.isSourceFilteringEnabled()) {
+            setSourceIncludes(searchRequest, readFeatureType);
         }
 
         // add query and post filter
-        final FilterToElastic filterToElastic = new FilterToElastic();
-        filterToElastic.setFeatureType(buildFeatureType());
-        filterToElastic.encode(query);
-        filterFullySupported = filterToElastic.getFullySupported();
-        if (!filterFullySupported) {
-            LOGGER.fine("Filter is not fully supported by native Elasticsearch."
-                    + " Additional post-query filtering will be performed.");
-        }
-        final Map<String,Object> queryBuilder = filterToElastic.getQueryBuilder();
+        final Map<String,Object> queryBuilder = queryPlan.getQueryBuilder();
 
-        final Map<String,Object> nativeQueryBuilder = filterToElastic.getNativeQueryBuilder();
+        final Map<String,Object> nativeQueryBuilder = queryPlan.getNativeQueryBuilder();
 
         searchRequest.setQuery(queryBuilder);
+        searchRequest.setSearchTemplate(dataStore.isSearchTemplatesEnabled());
+        searchRequest.setOpaqueId(ElasticOpaqueId.create(entry.getTypeName(), ElasticOpaqueId.SEARCH));
 
         if (isSort(query) && nativeQueryBuilder.equals(ElasticConstants.MATCH_ALL)) {
             final String sortKey = dataStore.getClient().getVersion() < 7 ? "_uid" : "_id";
             searchRequest.addSort(sortKey, naturalSortOrder);
         }
 
-        if (filterToElastic.getAggregations() != null) {
-            final Map<String, Map<String, Map<String, Object>>> aggregations = filterToElastic.getAggregations();
-            final Envelope envelope = (Envelope) query.getFilter().accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
-            final long gridSize;
-            if (dataStore.getGridSize() != null) {
-                gridSize = dataStore.getGridSize();
-            } else {
-                gridSize = (Long) ElasticDataStoreFactory.GRID_SIZE.getDefaultValue();
-            }
-            final double gridThreshold;
-            if (dataStore.getGridThreshold() != null) {
-                gridThreshold = dataStore.getGridThreshold();
-            } else {
-                gridThreshold = (Double) ElasticDataStoreFactory.GRID_THRESHOLD.getDefaultValue();
-            }
-            final int precision = GeohashUtil.computePrecision(envelope, gridSize, gridThreshold);
-            LOGGER.fine("Updating GeoHash grid aggregation precision to " + precision);
-            GeohashUtil.updateGridAggregationPrecision(aggregations, precision);
-            searchRequest.setAggregations(aggregations);
+        if (queryPlan.getAggregations() != null) {
+            searchRequest.setAggregations(queryPlan.getAggregations());
             searchRequest.setSize(0);
         }
 
         return searchRequest;
     }
 
-    private void setSourceIncludes(final ElasticRequest searchRequest) throws IOException {
+    private void setSourceIncludes(final ElasticRequest searchRequest, SimpleFeatureType featureType)
+            throws IOException {
         final ElasticDataStore dataStore = getDataStore();
+        final Set<String> names = new HashSet<>();
+        for (final AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            names.add((String) descriptor.getUserData().get(ElasticConstants.FULL_NAME));
+        }
         final List<ElasticAttribute> attributes = dataStore.getElasticAttributes(entry.getName());
         for (final ElasticAttribute attribute : attributes) {
-            if (attribute.isUse() && attribute.isStored()) {
+            final boolean read = attribute.isUse() && names.contains(attribute.getName());
+            if (read && attribute.getBinaryGeometryField() != null) {
+                searchRequest.addSourceInclude(attribute.getBinaryGeometryField());
+                if (attribute.isBinaryGeometryFallback()) {
+                    // decoded for documents without a valid binary value
+                    searchRequest.addSourceInclude(attribute.getName());
+                }
+            } else if (read && attribute.isStored()) {
                 searchRequest.addField(attribute.getName());
-            } else if (attribute.isUse()) {
+            } else if (read && attribute.isDocValues() && attribute.isUseDocValues()) {
+                // request dates as epoch millis as they are otherwise formatted using the mapping format
+                final boolean isDate = Date.class.isAssignableFrom(attribute.getType());
+                final String format = isDate && dataStore.getClient().getVersion() >= 7 ? "epoch_millis" : null;
+                searchRequest.addDocValueField(attribute.getName(), format);
+            } else if (read) {
                 searchRequest.addSourceInclude(attribute.getName());
             }
         }
     }
 
+    private boolean isStreamable(ElasticClient client, ElasticRequest searchRequest) {
+        return client instanceof FederatedElasticClient
+                && searchRequest.getSorts().isEmpty()
+                && searchRequest.getAggregations() == null
+                && (searchRequest.getFrom() == null || searchRequest.getFrom() == 0);
+    }
+
     private boolean isSort(Query query) {
         return query.getSortBy() != null && query.getSortBy().length > 0;
     }
@@ -308,6 +542,20 @@ class ElasticFeatureSource extends ContentFeatureSource {
 
     @Override
     protected SimpleFeatureType buildFeatureType() {
+        final ElasticDataStore ds = getDataStore();
+        final ContentState state = getState();
+        final SimpleFeatureType featureType;
+        if (state instanceof ElasticContentState) {
+            // rebuilt only when a different configuration has been set for the layer
+            final long version = ds.getLayerConfigurationVersion(entry.getTypeName());
+            featureType = ((ElasticContentState) state).getBuiltFeatureType(version, this::createFeatureType);
+        } else {
+            featureType = createFeatureType();
+        }
+        return featureType;
+    }
+
+    private SimpleFeatureType createFeatureType() {
         final ElasticDataStore ds = getDataStore();
         final ElasticLayerConfiguration layerConfig;
         layerConfig = ds.getLayerConfigurations().get(entry.getTypeName());
@@ -343,4 +591,16 @@ class ElasticFeatureSource extends ContentFeatureSource {
         return true;
     }
 
+    @Override
+    protected boolean canRetype() {
+        return true;
+    }
+
+    @Override
+    protected void addHints(Set<Hints.Key> hints) {
+        hints.add(Hints.GEOMETRY_DISTANCE);
+        hints.add(Hints.GEOMETRY_SIMPLIFICATION);
+        hints.add(Hints.SCREENMAP);
+    }
+
 }
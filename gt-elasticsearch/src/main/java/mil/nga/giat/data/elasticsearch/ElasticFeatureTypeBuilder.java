@@ -5,11 +5,15 @@
 package mil.nga.giat.data.elasticsearch;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.ANALYZED;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.BINARY_GEOMETRY_FIELD;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DOC_VALUE;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.GEOMETRY_TYPE;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.NESTED;
@@ -22,6 +26,8 @@ import org.locationtech.jts.geom.Geometry;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.Name;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 /**
  * Builds a feature type based on the attributes defined in the 
@@ -32,6 +38,8 @@ class ElasticFeatureTypeBuilder extends SimpleFeatureTypeBuilder {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticFeatureTypeBuilder.class);
 
+    private static final Map<Integer,CoordinateReferenceSystem> CRS_CACHE = new ConcurrentHashMap<>();
+
     private final List<ElasticAttribute> attributes;
 
     public ElasticFeatureTypeBuilder(List<ElasticAttribute> attributes, Name name) {
@@ -59,7 +67,7 @@ class ElasticFeatureTypeBuilder extends SimpleFeatureTypeBuilder {
                         final Integer srid = attribute.getSrid();
                         try {
                             if (srid != null) {
-                                attributeBuilder.setCRS(CRS.decode("EPSG:" + srid));
+                                attributeBuilder.setCRS(decodeCrs(srid));
                                 attributeBuilder.setName(attributeName);
                                 attributeBuilder.setBinding(attribute.getType());
                                 att = attributeBuilder.buildDescriptor(attributeName,
@@ -67,6 +75,9 @@ class ElasticFeatureTypeBuilder extends SimpleFeatureTypeBuilder {
 
                                 final ElasticGeometryType geometryType = attribute.getGeometryType();
                                 att.getUserData().put(GEOMETRY_TYPE, geometryType);
+                                if (attribute.getBinaryGeometryField() != null) {
+                                    att.getUserData().put(BINARY_GEOMETRY_FIELD, attribute.getBinaryGeometryField());
+                                }
                                 if (attribute.isDefaultGeometry() != null
                                         && attribute.isDefaultGeometry()) {
                                     defaultGeometryName = attributeName;
@@ -89,6 +100,7 @@ class ElasticFeatureTypeBuilder extends SimpleFeatureTypeBuilder {
                         att.getUserData().put(FULL_NAME, attribute.getName());
                         att.getUserData().put(ANALYZED, attribute.getAnalyzed());
                         att.getUserData().put(NESTED, attribute.isNested());
+                        att.getUserData().put(DOC_VALUE, attribute.isDocValues() && attribute.isUseDocValues());
                         add(att);
                     }
                 }
@@ -100,4 +112,13 @@ class ElasticFeatureTypeBuilder extends SimpleFeatureTypeBuilder {
         return super.buildFeatureType();
     }
 
+    private static CoordinateReferenceSystem decodeCrs(Integer srid) throws FactoryException {
+        CoordinateReferenceSystem crs = CRS_CACHE.get(srid);
+        if (crs == null) {
+            crs = CRS.decode("EPSG:" + srid);
+            CRS_CACHE.put(srid, crs);
+        }
+        return crs;
+    }
+
 }
@@ -0,0 +1,76 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled path of a field in the source document. Values are collected into
+ * a caller provided buffer while walking objects and arrays (e.g. nested
+ * documents) along the path, so no intermediate lists are created, and the
+ * walk stops once the requested number of values has been collected.
+ */
+final class ElasticFieldPath {
+
+    private final String name;
+
+    private final String[] path;
+
+    ElasticFieldPath(String name) {
+        this(name, name.split("\\."));
+    }
+
+    ElasticFieldPath(String name, String[] path) {
+        this.name = name;
+        this.path = path;
+    }
+
+    /** @return Full field name */
+    String getName() {
+        return name;
+    }
+
+    /** @return Field name split into path elements */
+    String[] getPath() {
+        return path;
+    }
+
+    /**
+     * Collect the values of the field, flattening arrays. Source keys holding
+     * the full (dotted) field name are read when the first path element is
+     * missing.
+     *
+     * @param source Source document
+     * @param values Buffer the values are added to
+     * @param limit Maximum number of values to collect
+     * @return Number of values collected
+     */
+    int collect(Map<String, Object> source, List<Object> values, int limit) {
+        final int size = values.size();
+        final int end = (int) Math.min(Integer.MAX_VALUE, (long) size + limit);
+        final Object entry = source.get(path[0]);
+        if (entry == null) {
+            collect(source.get(name), path.length, values, end);
+        } else {
+            collect(entry, 1, values, end);
+        }
+        return values.size() - size;
+    }
+
+    private void collect(Object entry, int index, List<Object> values, int end) {
+        if (entry instanceof List) {
+            final List<?> list = (List<?>) entry;
+            for (int i = 0, n = list.size(); i < n && values.size() < end; i++) {
+                collect(list.get(i), index, values, end);
+            }
+        } else if (entry instanceof Map && index < path.length) {
+            collect(((Map<?, ?>) entry).get(path[index]), index + 1, values, end);
+        } else if (entry != null && values.size() < end) {
+            values.add(entry);
+        }
+    }
+
+}
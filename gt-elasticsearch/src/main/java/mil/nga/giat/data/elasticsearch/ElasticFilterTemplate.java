@@ -0,0 +1,422 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.GEOMETRY_TYPE;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.BinaryLogicOperator;
+import org.opengis.filter.ExcludeFilter;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.IncludeFilter;
+import org.opengis.filter.Not;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.PropertyIsNil;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.identity.Identifier;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.DistanceBufferOperator;
+import org.opengis.filter.temporal.BinaryTemporalOperator;
+import org.opengis.geometry.BoundingBox;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import mil.nga.giat.data.elasticsearch.ElasticAttribute.ElasticGeometryType;
+import mil.nga.giat.shaded.joda.time.format.DateTimeFormatter;
+
+/**
+ * Query encoded from a filter template, with {@link Slot} markers in place
+ * of the values of the template parameters.
+ * <p>
+ * The {@link Signature} of a filter identifies the template and holds the
+ * parameters. Parameters are the scalar literals compared to a property
+ * (e.g. {@code radio = ?}) and the bounds of bbox filters on geo_point
+ * properties that are within the world, since the structure of the encoded
+ * query does not depend on their values. Other literals are part of the
+ * signature.
+ */
+final class ElasticFilterTemplate {
+
+    private final Map<String,Object> queryBuilder;
+
+    private final boolean fullySupported;
+
+    private final List<Slot> slots;
+
+    private final boolean complete;
+
+    /**
+     * @param queryBuilder Query encoded with slot markers
+     * @param fullySupported Whether the filter is fully supported
+     * @param parameterCount Number of parameters of the signature
+     */
+    ElasticFilterTemplate(Map<String,Object> queryBuilder, boolean fullySupported, int parameterCount) {
+        this.queryBuilder = queryBuilder;
+        this.fullySupported = fullySupported;
+        this.slots = new ArrayList<>();
+        collectSlots(queryBuilder, slots);
+        final BitSet indices = new BitSet(parameterCount);
+        for (final Slot slot : slots) {
+            indices.set(slot.index);
+        }
+        this.complete = slots.size() == parameterCount && indices.cardinality() == parameterCount;
+    }
+
+    /**
+     * @return Whether each parameter is written into the query exactly once,
+     * otherwise parameter values were encoded into the query structure and
+     * the template can't be reused
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    boolean isFullySupported() {
+        return fullySupported;
+    }
+
+    /**
+     * Create the query for the parameters of a filter with the template
+     * signature.
+     *
+     * @param parameters Parameters of the signature
+     * @return Query or null if a parameter can't be written as a value (e.g.
+     * it is converted to a geometry)
+     */
+    Map<String,Object> instantiate(Object[] parameters) {
+        final Object[] values = new Object[parameters.length];
+        for (final Slot slot : slots) {
+            final Object value = slot.resolve(parameters);
+            if (value == null || value instanceof Geometry) {
+                return null;
+            }
+            values[slot.index] = value;
+        }
+        @SuppressWarnings("unchecked")
+        final Map<String,Object> query = (Map<String,Object>) instantiate(queryBuilder, values);
+        return query;
+    }
+
+    private static Object instantiate(Object entry, Object[] values) {
+        if (entry instanceof Slot) {
+            return values[((Slot) entry).index];
+        }
+        if (entry instanceof Map) {
+            final Map<?,?> map = (Map<?,?>) entry;
+            final ImmutableMap.Builder<Object,Object> builder = ImmutableMap.builder();
+            boolean changed = false;
+            for (final Map.Entry<?,?> child : map.entrySet()) {
+                final Object value = instantiate(child.getValue(), values);
+                changed |= value != child.getValue();
+                builder.put(child.getKey(), value);
+            }
+            // subtrees without slots are shared with the template
+            return changed ? builder.build() : entry;
+        }
+        if (entry instanceof List) {
+            final List<?> list = (List<?>) entry;
+            final ImmutableList.Builder<Object> builder = ImmutableList.builder();
+            boolean changed = false;
+            for (final Object child : list) {
+                final Object value = instantiate(child, values);
+                changed |= value != child;
+                builder.add(value);
+            }
+            return changed ? builder.build() : entry;
+        }
+        return entry;
+    }
+
+    private static void collectSlots(Object entry, List<Slot> slots) {
+        if (entry instanceof Slot) {
+            slots.add((Slot) entry);
+        } else if (entry instanceof Map) {
+            for (final Object value : ((Map<?,?>) entry).values()) {
+                collectSlots(value, slots);
+            }
+        } else if (entry instanceof List) {
+            for (final Object value : (List<?>) entry) {
+                collectSlots(value, slots);
+            }
+        }
+    }
+
+    /**
+     * Create the signature of a filter.
+     *
+     * @param filter Filter
+     * @param featureType Feature type the filter is encoded for
+     * @return Signature or null if the filter contains expressions that are
+     * not supported in templates (e.g. functions)
+     */
+    static Signature signature(Filter filter, SimpleFeatureType featureType) {
+        final Signature signature = new Signature(featureType);
+        return signature.write(filter) ? signature : null;
+    }
+
+    /**
+     * Marker of a parameter value in the template query.
+     */
+    static final class Slot {
+
+        private final int index;
+
+        private final Class<?> target;
+
+        private final DateTimeFormatter dateFormatter;
+
+        /**
+         * @param index Parameter index
+         * @param target Type literal parameters are converted to
+         * @param dateFormatter Formatter of date literal parameters
+         */
+        Slot(int index, Class<?> target, DateTimeFormatter dateFormatter) {
+            this.index = index;
+            this.target = target;
+            this.dateFormatter = dateFormatter;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        Object resolve(Object[] parameters) {
+            final Object parameter = parameters[index];
+            if (parameter instanceof Literal) {
+                return FilterToElastic.encodeLiteral((Literal) parameter, target, dateFormatter);
+            }
+            return parameter;
+        }
+
+        @Override
+        public String toString() {
+            return "?" + index;
+        }
+
+    }
+
+    /**
+     * Template key and parameters of a filter.
+     */
+    static final class Signature {
+
+        private final SimpleFeatureType featureType;
+
+        private final StringBuilder key;
+
+        private final List<Object> parameters;
+
+        private final Map<Object,Integer> slots;
+
+        private Signature(SimpleFeatureType featureType) {
+            this.featureType = featureType;
+            this.key = new StringBuilder();
+            this.parameters = new ArrayList<>();
+            this.slots = new IdentityHashMap<>();
+        }
+
+        /**
+         * @return Filter structure with the parameters replaced by their type
+         */
+        String getKey() {
+            return key.toString();
+        }
+
+        /**
+         * @return Slot literals and bbox parameter values
+         */
+        Object[] getParameters() {
+            return parameters.toArray();
+        }
+
+        /**
+         * @return Index of the first parameter of each slot literal or bbox
+         * filter, by identity
+         */
+        Map<Object,Integer> getSlots() {
+            return slots;
+        }
+
+        private boolean write(Filter filter) {
+            if (filter instanceof IncludeFilter || filter instanceof ExcludeFilter) {
+                key.append(filter instanceof IncludeFilter ? "INCLUDE" : "EXCLUDE");
+                return true;
+            }
+            key.append(filter.getClass().getName()).append('(');
+            final boolean written;
+            if (filter instanceof BinaryLogicOperator) {
+                boolean children = true;
+                for (final Filter child : ((BinaryLogicOperator) filter).getChildren()) {
+                    children = children && write(child);
+                    key.append(',');
+                }
+                written = children;
+            } else if (filter instanceof Not) {
+                written = write(((Not) filter).getFilter());
+            } else if (filter instanceof BinaryComparisonOperator) {
+                final BinaryComparisonOperator comparison = (BinaryComparisonOperator) filter;
+                key.append(comparison.isMatchingCase()).append(',');
+                written = writeComparison(comparison.getExpression1(), comparison.getExpression2());
+            } else if (filter instanceof PropertyIsBetween) {
+                final PropertyIsBetween between = (PropertyIsBetween) filter;
+                final boolean property = between.getExpression() instanceof PropertyName;
+                written = write(between.getExpression(), false)
+                        && write(between.getLowerBoundary(), property)
+                        && write(between.getUpperBoundary(), property);
+            } else if (filter instanceof PropertyIsLike) {
+                final PropertyIsLike like = (PropertyIsLike) filter;
+                writeString(like.getLiteral());
+                writeString(like.getWildCard());
+                writeString(like.getSingleChar());
+                writeString(like.getEscape());
+                key.append(like.isMatchingCase()).append(',');
+                written = write(like.getExpression(), false);
+            } else if (filter instanceof PropertyIsNull) {
+                written = write(((PropertyIsNull) filter).getExpression(), false);
+            } else if (filter instanceof PropertyIsNil) {
+                written = write(((PropertyIsNil) filter).getExpression(), false);
+            } else if (filter instanceof BBOX && isSlot((BBOX) filter)) {
+                final BoundingBox bounds = ((BBOX) filter).getBounds();
+                slots.put(filter, parameters.size());
+                parameters.add(bounds.getMinX());
+                parameters.add(bounds.getMinY());
+                parameters.add(bounds.getMaxX());
+                parameters.add(bounds.getMaxY());
+                key.append("?bbox,");
+                written = write(((BBOX) filter).getExpression1(), false);
+            } else if (filter instanceof BinarySpatialOperator) {
+                if (filter instanceof DistanceBufferOperator) {
+                    final DistanceBufferOperator distance = (DistanceBufferOperator) filter;
+                    key.append(distance.getDistance()).append(',');
+                    writeString(distance.getDistanceUnits());
+                }
+                final BinarySpatialOperator spatial = (BinarySpatialOperator) filter;
+                written = write(spatial.getExpression1(), false) && write(spatial.getExpression2(), false);
+            } else if (filter instanceof BinaryTemporalOperator) {
+                final BinaryTemporalOperator temporal = (BinaryTemporalOperator) filter;
+                written = write(temporal.getExpression1(), false) && write(temporal.getExpression2(), false);
+            } else if (filter instanceof Id) {
+                for (final Identifier identifier : ((Id) filter).getIdentifiers()) {
+                    writeString(String.valueOf(identifier.getID()));
+                }
+                written = true;
+            } else {
+                written = false;
+            }
+            key.append(')');
+            return written;
+        }
+
+        private boolean writeComparison(Expression expression1, Expression expression2) {
+            return write(expression1, expression2 instanceof PropertyName)
+                    && write(expression2, expression1 instanceof PropertyName);
+        }
+
+        /**
+         * @param slot Whether a scalar literal is a parameter
+         */
+        private boolean write(Expression expression, boolean slot) {
+            if (expression instanceof PropertyName) {
+                key.append('p');
+                writeString(((PropertyName) expression).getPropertyName());
+                return true;
+            }
+            if (!(expression instanceof Literal)) {
+                return false;
+            }
+            final Object value = ((Literal) expression).getValue();
+            if (slot && isScalar(value)) {
+                slots.put(expression, parameters.size());
+                parameters.add(expression);
+                key.append('?').append(value.getClass().getName()).append(',');
+                return true;
+            }
+            return writeValue(value);
+        }
+
+        private boolean writeValue(Object value) {
+            if (value == null) {
+                key.append("null,");
+            } else if (value instanceof String) {
+                key.append('s');
+                writeString((String) value);
+            } else if (value instanceof Number || value instanceof Boolean) {
+                key.append(value.getClass().getName()).append(':').append(value).append(',');
+            } else if (value instanceof Date) {
+                key.append(value.getClass().getName()).append(':').append(((Date) value).getTime()).append(',');
+            } else if (value instanceof Geometry) {
+                final Geometry geometry = (Geometry) value;
+                key.append('g').append(geometry.getSRID()).append(':')
+                        .append(WKBWriter.toHex(new WKBWriter(3).write(geometry))).append(',');
+            } else if (value instanceof Envelope) {
+                final Envelope envelope = (Envelope) value;
+                key.append('e').append(envelope.getMinX()).append(':').append(envelope.getMinY()).append(':')
+                        .append(envelope.getMaxX()).append(':').append(envelope.getMaxY()).append(',');
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                key.append("null,");
+            } else {
+                key.append(value.length()).append(':').append(value).append(',');
+            }
+        }
+
+        /**
+         * Whether the bounds of a bbox filter are a parameter. Bounds on a
+         * geo_point property are written to the query as they are, unless
+         * they have to be clipped to the world or cover it.
+         */
+        private boolean isSlot(BBOX filter) {
+            if (!(filter.getExpression1() instanceof PropertyName) || !(filter.getExpression2() instanceof Literal)) {
+                return false;
+            }
+            final AttributeDescriptor attType = (AttributeDescriptor) filter.getExpression1().evaluate(featureType);
+            if (attType == null || attType.getUserData().get(GEOMETRY_TYPE) != ElasticGeometryType.GEO_POINT) {
+                return false;
+            }
+            final BoundingBox bounds = filter.getBounds();
+            if (bounds == null) {
+                return false;
+            }
+            final double minX = bounds.getMinX();
+            final double minY = bounds.getMinY();
+            final double maxX = bounds.getMaxX();
+            final double maxY = bounds.getMaxY();
+            final boolean world = minX == -180 && maxX == 180 && minY == -90 && maxY == 90;
+            return -180 <= minX && minX < maxX && maxX <= 180 && -90 <= minY && minY < maxY && maxY <= 90 && !world;
+        }
+
+        private static boolean isScalar(Object value) {
+            return value instanceof String || value instanceof Number || value instanceof Boolean
+                    || value instanceof Date;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+import org.opengis.filter.Filter;
+
+/**
+ * Bounded LRU cache of filter translations by filter template. Filters
+ * repeating the same structure with different literals (e.g. a style rule
+ * and the bbox of each map request) are encoded once, and the cached query
+ * is instantiated with the literals of the following filters.
+ */
+class ElasticFilterTemplateCache {
+
+    private final static Logger LOGGER = Logging.getLogger(ElasticFilterTemplateCache.class);
+
+    /** Default maximum number of cached templates */
+    static final int DEFAULT_MAX_TEMPLATES = 1000;
+
+    private final Map<String,ElasticFilterTemplate> templates;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    ElasticFilterTemplateCache() {
+        this(DEFAULT_MAX_TEMPLATES);
+    }
+
+    ElasticFilterTemplateCache(int maxTemplates) {
+        this.templates = Collections.synchronizedMap(new LinkedHashMap<String,ElasticFilterTemplate>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,ElasticFilterTemplate> eldest) {
+                return size() > maxTemplates;
+            }
+        });
+    }
+
+    /**
+     * Encode a filter, using the cached template of the filter if available.
+     *
+     * @param encoder Encoder with the feature type set
+     * @param filter Filter
+     * @param version Identifies the feature type and its version, since the
+     * translation depends on the attribute mappings
+     */
+    void encode(FilterToElastic encoder, Filter filter, String version) {
+        final ElasticFilterTemplate.Signature signature;
+        signature = ElasticFilterTemplate.signature(filter, encoder.featureType);
+        if (signature == null) {
+            missCount.incrementAndGet();
+            encoder.encode(filter);
+            return;
+        }
+
+        final String key = version + ':' + signature.getKey();
+        final Object[] parameters = signature.getParameters();
+        final ElasticFilterTemplate cached = templates.get(key);
+        if (cached != null) {
+            final Map<String,Object> queryBuilder = cached.instantiate(parameters);
+            if (queryBuilder != null) {
+                hitCount.incrementAndGet();
+                encoder.queryBuilder = queryBuilder;
+                encoder.fullySupported = cached.isFullySupported();
+                return;
+            }
+        }
+
+        missCount.incrementAndGet();
+        encoder.slots = signature.getSlots();
+        try {
+            encoder.encode(filter);
+        } finally {
+            encoder.slots = null;
+        }
+        final ElasticFilterTemplate template;
+        template = new ElasticFilterTemplate(encoder.queryBuilder, Boolean.TRUE.equals(encoder.fullySupported),
+                parameters.length);
+        final Map<String,Object> queryBuilder = template.instantiate(parameters);
+        if (queryBuilder == null) {
+            encoder.encode(filter);
+            return;
+        }
+        encoder.queryBuilder = queryBuilder;
+        if (template.isComplete()) {
+            templates.put(key, template);
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Filter template parameters are not query values: " + signature.getKey());
+        }
+    }
+
+    /** @return Number of filters encoded from a cached template */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** @return Number of filters encoded by visiting the filter */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /** @return Number of cached templates */
+    public int size() {
+        return templates.size();
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import org.geotools.util.factory.Hints;
+
+/**
+ * Geometry generalization requested through query hints (e.g. by the
+ * renderer at small scales), applied while decoding hits.
+ * <p>
+ * With {@link Hints#GEOMETRY_SIMPLIFICATION} or {@link Hints#GEOMETRY_DISTANCE}
+ * geo_shape vertices within the distance of the previously kept vertex are
+ * skipped while parsing coordinates, so skipped vertices are never
+ * materialized. Circles are interpolated at the distance. Vertex skipping
+ * does not preserve topology (rings may self-intersect or cross their
+ * shell), so {@link Hints#GEOMETRY_GENERALIZATION} is not supported and
+ * callers requesting it generalize themselves. Geometries read from binary
+ * (WKB) fields are decoded at full resolution.
+ */
+final class ElasticGeneralization {
+
+    private final double distance;
+
+    ElasticGeneralization(double distance) {
+        this.distance = distance;
+    }
+
+    /**
+     * @param hints Query hints
+     * @return Generalization or null if none is requested
+     */
+    static ElasticGeneralization fromHints(Hints hints) {
+        final Number simplification = hints != null ? (Number) hints.get(Hints.GEOMETRY_SIMPLIFICATION) : null;
+        final Number distance = hints != null ? (Number) hints.get(Hints.GEOMETRY_DISTANCE) : null;
+        final ElasticGeneralization result;
+        if (simplification != null && simplification.doubleValue() > 0) {
+            result = new ElasticGeneralization(simplification.doubleValue());
+        } else if (distance != null && distance.doubleValue() > 0) {
+            result = new ElasticGeneralization(distance.doubleValue());
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * @return Distance below which vertices are skipped while decoding
+     */
+    double getDistance() {
+        return distance;
+    }
+
+}
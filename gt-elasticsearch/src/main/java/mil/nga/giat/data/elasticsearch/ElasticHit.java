@@ -9,6 +9,7 @@ import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 @SuppressWarnings("unused")
 @JsonIgnoreProperties(ignoreUnknown=true)
@@ -27,11 +28,16 @@ class ElasticHit {
     private Float score;
 
     @JsonProperty("_source")
+    @JsonDeserialize(using = SourceDeserializer.class)
     private Map<String,Object> source;
 
     @JsonProperty("fields")
+    @JsonDeserialize(using = SourceDeserializer.class)
     private Map<String,List<Object>> fields;
 
+    @JsonProperty("sort")
+    private List<Object> sort;
+
     public String getIndex() {
         return index;
     }
@@ -56,6 +62,10 @@ class ElasticHit {
         return fields;
     }
 
+    public List<Object> getSort() {
+        return sort;
+    }
+
     public List<Object> field(String name) {
         return this.fields != null ? this.fields.get(name) : null;
     }
@@ -0,0 +1,193 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Geometry;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+
+/**
+ * Decodes attribute values of search hits following an extraction plan.
+ * Decoding is synchronized as the parser is not thread safe and lazy
+ * features may be decoded after the reader has moved on.
+ */
+class ElasticHitDecoder {
+
+    private final ElasticParserUtil parserUtil;
+
+    private final ArrayEncoding arrayEncoding;
+
+    private final float maxScore;
+
+    /** Reusable buffer of values read from the source document */
+    private final List<Object> buffer;
+
+    ElasticHitDecoder(ArrayEncoding arrayEncoding, float maxScore, ElasticCircleCache circles) {
+        this.parserUtil = new ElasticParserUtil(circles);
+        this.arrayEncoding = arrayEncoding;
+        this.maxScore = maxScore;
+        this.buffer = new ArrayList<>();
+    }
+
+    /**
+     * Set the geometry generalization applied when decoding geometries, as
+     * described in {@link ElasticGeneralization}.
+     *
+     * @param generalization Generalization or null for full resolution
+     */
+    synchronized void setGeneralization(ElasticGeneralization generalization) {
+        final double distance = generalization != null ? generalization.getDistance() : 0;
+        parserUtil.setVertexSkipDistance(distance);
+        parserUtil.setCircleTolerance(distance);
+    }
+
+    /**
+     * Decode the value of an attribute.
+     *
+     * @param step Extraction step of the attribute
+     * @param hit Search hit
+     * @return Attribute value or null if the hit has no value
+     */
+    synchronized Object decode(ElasticExtractionPlan.Step step, ElasticHit hit) {
+        final Geometry binaryGeometry = step.getBinarySourceName() != null ? readBinaryGeometry(step, hit) : null;
+        final List<Object> values = binaryGeometry == null ? readValues(step, hit) : null;
+
+        final Object value;
+        if (binaryGeometry != null) {
+            value = binaryGeometry;
+        } else if (values == null) {
+            final ElasticExtractionPlan.MetaField metaField = step.getMetaField();
+            if (metaField == ElasticExtractionPlan.MetaField.ID) {
+                value = hit.getId();
+            } else if (metaField == ElasticExtractionPlan.MetaField.INDEX) {
+                value = hit.getIndex();
+            } else if (metaField == ElasticExtractionPlan.MetaField.TYPE) {
+                value = hit.getType();
+            } else if (metaField == ElasticExtractionPlan.MetaField.SCORE) {
+                value = getScore(hit);
+            } else if (metaField == ElasticExtractionPlan.MetaField.RELATIVE_SCORE) {
+                final Float score = getScore(hit);
+                value = score != null ? score / maxScore : null;
+            } else {
+                value = null;
+            }
+        } else if (step.getKind() == ElasticExtractionPlan.Kind.GEOMETRY) {
+            final Geometry geometry;
+            if (values.size() == 1) {
+                geometry = parserUtil.createGeometry(values.get(0));
+            } else {
+                geometry = parserUtil.createGeometry(values);
+            }
+            value = geometry;
+        } else if (step.getKind() == ElasticExtractionPlan.Kind.DATE) {
+            final Object dataVal = values.get(0);
+            if (dataVal instanceof Double) {
+                value = new Date(Math.round((Double) dataVal));
+            } else if (dataVal instanceof Integer) {
+                value = new Date((Integer) dataVal);
+            } else if (dataVal instanceof Long) {
+                value = new Date((long) dataVal);
+            } else {
+                // doc values are requested as epoch millis
+                final Date date = isDocValue(step, hit) ? ElasticDateParser.parseEpochMillis((String) dataVal) : null;
+                value = date != null ? date : step.getDateParser().parse((String) dataVal);
+            }
+        } else if (values.size() == 1) {
+            value = values.get(0);
+        } else if (step.getKind() != ElasticExtractionPlan.Kind.AGGREGATION) {
+            if (arrayEncoding == ArrayEncoding.CSV) {
+                // only include first array element when using CSV array encoding
+                value = values.get(0);
+            } else {
+                value = values == buffer ? new ArrayList<>(values) : values;
+            }
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    /**
+     * Read the raw values of an attribute without conversion. Values read
+     * from the source document are collected into a buffer that is reused by
+     * the next call, and only as many values as needed to decode the attribute
+     * are collected (e.g. the first array element with CSV array encoding).
+     *
+     * @param step Extraction step of the attribute
+     * @param hit Search hit
+     * @return Field values or null if the hit has no value for the field
+     */
+    synchronized List<Object> readValues(ElasticExtractionPlan.Step step, ElasticHit hit) {
+        final Map<String, Object> source = hit.getSource();
+
+        List<Object> values = hit.field(step.getSourceName());
+        if (values == null && source != null) {
+            // read field from source
+            buffer.clear();
+            values = step.getFieldPath().collect(source, buffer, getValueLimit(step)) > 0 ? buffer : null;
+        }
+        return values;
+    }
+
+    /**
+     * @return Whether {@link #readValues} reads the values of the step from
+     *         the doc values of the hit rather than from its source document
+     */
+    boolean isDocValue(ElasticExtractionPlan.Step step, ElasticHit hit) {
+        return step.isDocValue() && hit.field(step.getSourceName()) != null;
+    }
+
+    /**
+     * @return Maximum number of values used to decode an attribute
+     */
+    private int getValueLimit(ElasticExtractionPlan.Step step) {
+        final int limit;
+        if (step.getKind() == ElasticExtractionPlan.Kind.DATE) {
+            limit = 1;
+        } else if (step.getKind() == ElasticExtractionPlan.Kind.AGGREGATION) {
+            // only single values are decoded
+            limit = 2;
+        } else if (step.getKind() == ElasticExtractionPlan.Kind.VALUE && arrayEncoding == ArrayEncoding.CSV) {
+            limit = 1;
+        } else {
+            limit = Integer.MAX_VALUE;
+        }
+        return limit;
+    }
+
+    /**
+     * Read the geometry of an attribute from the WKB of its binary field.
+     *
+     * @param step Extraction step of a geometry attribute with a binary field
+     * @param hit Search hit
+     * @return Geometry of the first binary value or null if the hit has no
+     * valid binary value
+     */
+    private Geometry readBinaryGeometry(ElasticExtractionPlan.Step step, ElasticHit hit) {
+        final Map<String, Object> source = hit.getSource();
+        List<Object> values = hit.field(step.getBinarySourceName());
+        if (values == null && source != null) {
+            buffer.clear();
+            values = step.getBinaryFieldPath().collect(source, buffer, 1) > 0 ? buffer : null;
+        }
+        return values != null && !values.isEmpty() ? parserUtil.createGeometryFromWkb(values.get(0)) : null;
+    }
+
+    private Float getScore(ElasticHit hit) {
+        final Float score;
+        if (hit.getScore() != null && !Float.isNaN(hit.getScore()) && maxScore > 0) {
+            score = hit.getScore();
+        } else {
+            score = null;
+        }
+        return score;
+    }
+
+}
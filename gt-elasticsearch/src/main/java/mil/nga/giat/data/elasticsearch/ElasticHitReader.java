@@ -0,0 +1,48 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.renderer.ScreenMap;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AttributeDecoding;
+
+/**
+ * Reader of features from search hits, set up from the query before the
+ * first feature is read.
+ */
+interface ElasticHitReader extends FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    /**
+     * Set the feature type of the returned features.
+     *
+     * @param featureType Feature type with a subset of the attributes of the
+     * state feature type
+     */
+    void setFeatureType(SimpleFeatureType featureType);
+
+    /** @see ElasticHitDecoder#setGeneralization(ElasticGeneralization) */
+    void setGeneralization(ElasticGeneralization generalization);
+
+    /**
+     * Set the attribute decoding of the hits, overriding the data store
+     * attribute decoding.
+     *
+     * @param attributeDecoding Attribute decoding
+     */
+    void setAttributeDecoding(AttributeDecoding attributeDecoding);
+
+    /**
+     * Set the screen map of a rendering request. Hits whose default geometry
+     * falls on an already occupied pixel are skipped, decoding only the
+     * geometry of the hit.
+     *
+     * @param screenMap Screen map or null to return all hits
+     */
+    void setScreenMap(ScreenMap screenMap);
+
+}
@@ -7,6 +7,7 @@ package mil.nga.giat.data.elasticsearch;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Describes an Elasticsearch layer configuration as set of {@link ElasticAttribute}
@@ -56,4 +57,23 @@ public class ElasticLayerConfiguration implements Serializable {
         return attributes;
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(docType, layerName, attributes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        boolean equal;
+        if (obj == null || getClass() != obj.getClass()) {
+            equal = false;
+        } else {
+            ElasticLayerConfiguration other = (ElasticLayerConfiguration) obj;
+            equal = Objects.equals(docType, other.docType);
+            equal &= Objects.equals(layerName, other.layerName);
+            equal &= Objects.equals(attributes, other.attributes);
+        }
+        return equal;
+    }
+
 }
@@ -0,0 +1,258 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureImpl;
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.feature.type.Name;
+import org.opengis.geometry.BoundingBox;
+
+/**
+ * Feature backed by a search hit. Attributes are decoded from the hit on
+ * first access and memoized, so that decoding cost scales with the
+ * attributes actually used (e.g. geometry and style attributes when
+ * rendering). Access which exposes all values (properties, equality,
+ * validation) decodes all attributes first.
+ */
+class ElasticLazyFeature extends SimpleFeatureImpl {
+
+    private final ElasticExtractionPlan.Step[] steps;
+
+    private final ElasticHitDecoder decoder;
+
+    private final boolean[] decoded;
+
+    private ElasticHit hit;
+
+    private int remaining;
+
+    ElasticLazyFeature(SimpleFeatureType featureType, String id, ElasticHit hit, ElasticExtractionPlan plan,
+            ElasticHitDecoder decoder) {
+        super(new Object[featureType.getAttributeCount()], featureType, new FeatureIdImpl(id), false);
+        this.steps = plan.getSteps();
+        this.decoder = decoder;
+        this.decoded = new boolean[steps.length];
+        this.hit = hit;
+        this.remaining = steps.length;
+    }
+
+    private synchronized void decode(int index) {
+        if (index >= 0 && !decoded[index]) {
+            super.setAttribute(index, decoder.decode(steps[index], hit));
+            markDecoded(index);
+        }
+    }
+
+    private synchronized void decodeAll() {
+        for (int i = 0; hit != null && i < decoded.length; i++) {
+            decode(i);
+        }
+    }
+
+    private synchronized void decodeGeometries() {
+        for (int i = 0; hit != null && i < decoded.length; i++) {
+            if (steps[i].getKind() == ElasticExtractionPlan.Kind.GEOMETRY) {
+                decode(i);
+            }
+        }
+    }
+
+    private void decodeDefaultGeometry() {
+        final GeometryDescriptor descriptor = getFeatureType().getGeometryDescriptor();
+        if (descriptor != null) {
+            decode(getFeatureType().indexOf(descriptor.getName()));
+        }
+    }
+
+    private synchronized void markDecoded(int index) {
+        if (index >= 0 && !decoded[index]) {
+            decoded[index] = true;
+            remaining--;
+            if (remaining == 0) {
+                // release the hit once all attributes are decoded
+                hit = null;
+            }
+        }
+    }
+
+    private synchronized void markAllDecoded() {
+        for (int i = 0; i < decoded.length; i++) {
+            markDecoded(i);
+        }
+    }
+
+    /**
+     * @return Whether the attribute has been decoded
+     */
+    synchronized boolean isDecoded(int index) {
+        return decoded[index];
+    }
+
+    @Override
+    public Object getAttribute(int index) throws IndexOutOfBoundsException {
+        decode(index);
+        return super.getAttribute(index);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        decode(getFeatureType().indexOf(name));
+        return super.getAttribute(name);
+    }
+
+    @Override
+    public Object getAttribute(Name name) {
+        decode(getFeatureType().indexOf(name));
+        return super.getAttribute(name);
+    }
+
+    @Override
+    public List<Object> getAttributes() {
+        decodeAll();
+        return super.getAttributes();
+    }
+
+    @Override
+    public Object getDefaultGeometry() {
+        decodeDefaultGeometry();
+        return super.getDefaultGeometry();
+    }
+
+    @Override
+    public GeometryAttribute getDefaultGeometryProperty() {
+        decodeDefaultGeometry();
+        return super.getDefaultGeometryProperty();
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        decodeGeometries();
+        return super.getBounds();
+    }
+
+    @Override
+    public Collection<Property> getProperties() {
+        decodeAll();
+        return super.getProperties();
+    }
+
+    @Override
+    public Collection<Property> getProperties(Name name) {
+        decodeAll();
+        return super.getProperties(name);
+    }
+
+    @Override
+    public Collection<Property> getProperties(String name) {
+        decodeAll();
+        return super.getProperties(name);
+    }
+
+    @Override
+    public Property getProperty(Name name) {
+        decode(getFeatureType().indexOf(name));
+        return super.getProperty(name);
+    }
+
+    @Override
+    public Property getProperty(String name) {
+        decode(getFeatureType().indexOf(name));
+        return super.getProperty(name);
+    }
+
+    @Override
+    public Collection<? extends Property> getValue() {
+        decodeAll();
+        return super.getValue();
+    }
+
+    @Override
+    public void validate() {
+        decodeAll();
+        super.validate();
+    }
+
+    @Override
+    public void setAttribute(int index, Object value) throws IndexOutOfBoundsException {
+        markDecoded(index);
+        super.setAttribute(index, value);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        markDecoded(getFeatureType().indexOf(name));
+        super.setAttribute(name, value);
+    }
+
+    @Override
+    public void setAttribute(Name name, Object value) {
+        markDecoded(getFeatureType().indexOf(name));
+        super.setAttribute(name, value);
+    }
+
+    @Override
+    public void setAttributes(List<Object> values) {
+        markAllDecoded();
+        super.setAttributes(values);
+    }
+
+    @Override
+    public void setAttributes(Object[] values) {
+        markAllDecoded();
+        super.setAttributes(values);
+    }
+
+    @Override
+    public void setValue(Collection<Property> values) {
+        markAllDecoded();
+        super.setValue(values);
+    }
+
+    @Override
+    public void setValue(Object newValue) {
+        markAllDecoded();
+        super.setValue(newValue);
+    }
+
+    @Override
+    public void setDefaultGeometry(Object geometry) {
+        decodeAll();
+        super.setDefaultGeometry(geometry);
+    }
+
+    @Override
+    public void setDefaultGeometryProperty(GeometryAttribute geometryAttribute) {
+        decodeAll();
+        super.setDefaultGeometryProperty(geometryAttribute);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        decodeAll();
+        if (obj instanceof ElasticLazyFeature) {
+            ((ElasticLazyFeature) obj).decodeAll();
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        decodeAll();
+        return super.toString();
+    }
+
+}
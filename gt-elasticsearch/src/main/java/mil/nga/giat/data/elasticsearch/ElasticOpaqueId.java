@@ -0,0 +1,98 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+/**
+ * Builds the value of the {@code X-Opaque-Id} header sent with Elasticsearch
+ * requests, so that slow logs and tasks can be traced back to the request
+ * (e.g. GeoServer OWS request), layer and reader phase causing them.
+ * <p>
+ * The id of the request being processed is held per thread and is set by
+ * the application (see gs-web-elasticsearch). Since it may be supplied by
+ * the client, it is trimmed, sanitized and truncated to
+ * {@link #MAX_REQUEST_ID_LENGTH} characters.
+ */
+public final class ElasticOpaqueId {
+
+    public static final String HEADER = "X-Opaque-Id";
+
+    public static final String SEARCH = "search";
+
+    public static final String SCROLL = "scroll";
+
+    public static final String COUNT = "count";
+
+    public static final String AGGREGATION_CACHE_WARMUP = "agg-cache-warmup";
+
+    /** Maximum length of the request id included in opaque ids */
+    public static final int MAX_REQUEST_ID_LENGTH = 128;
+
+    private static final ThreadLocal<String> REQUEST_ID = new ThreadLocal<>();
+
+    private ElasticOpaqueId() {
+    }
+
+    /**
+     * Set the id of the request processed by the current thread.
+     *
+     * @param requestId Request id, trimmed, sanitized and truncated to
+     * {@link #MAX_REQUEST_ID_LENGTH} characters, or null
+     */
+    public static void setRequestId(String requestId) {
+        final String trimmed = requestId != null ? requestId.trim() : "";
+        if (trimmed.isEmpty()) {
+            REQUEST_ID.remove();
+        } else {
+            final StringBuilder builder = new StringBuilder(trimmed);
+            sanitize(builder);
+            builder.setLength(Math.min(builder.length(), MAX_REQUEST_ID_LENGTH));
+            REQUEST_ID.set(builder.toString());
+        }
+    }
+
+    public static String getRequestId() {
+        return REQUEST_ID.get();
+    }
+
+    public static void clearRequestId() {
+        REQUEST_ID.remove();
+    }
+
+    /**
+     * Create an opaque id for the current request.
+     *
+     * @param layerName Layer (type) name, or null
+     * @param phase Reader phase, or null
+     * @return Opaque id of the form {@code requestId/layerName/phase}, omitting
+     * missing parts, or null if all parts are missing
+     */
+    static String create(String layerName, String phase) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String part : new String[] { getRequestId(), layerName, phase }) {
+            if (part != null) {
+                if (builder.length() > 0) {
+                    builder.append('/');
+                }
+                builder.append(part);
+            }
+        }
+        sanitize(builder);
+        return builder.length() > 0 ? builder.toString() : null;
+    }
+
+    /**
+     * Replace characters that are not printable ASCII, to which header values
+     * are restricted.
+     */
+    private static void sanitize(StringBuilder builder) {
+        for (int i = 0; i < builder.length(); i++) {
+            final char c = builder.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+                builder.setCharAt(i, '_');
+            }
+        }
+    }
+
+}
@@ -8,19 +8,23 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
 import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
 import org.locationtech.jts.io.WKTReader;
 
 import com.github.davidmoten.geo.GeoHash;
@@ -38,17 +42,17 @@ class ElasticParserUtil {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticParserUtil.class);
 
-    private static final Pattern GEO_POINT_PATTERN;
+    /** Maximum number of decoded geohashes cached */
+    private static final int MAX_GEOHASHES = 10000;
 
-    static {
-        GEO_POINT_PATTERN = Pattern.compile("\\s*([-+]?\\d*\\.?\\d*)[^-+\\d.]+([-+]?\\d*\\.?\\d*)\\s*");
-    }
+    private static final Map<String,LatLong> GEOHASHES = new ConcurrentHashMap<>();
 
-    private static final Pattern GEO_HASH_PATTERN;
+    private static final String[] WKT_TYPES = {"POINT", "LINESTRING", "POLYGON", "MULTIPOINT", "MULTILINESTRING",
+            "MULTIPOLYGON", "GEOMETRYCOLLECTION"};
 
-    static {
-        GEO_HASH_PATTERN = Pattern.compile("[0123456789bcdefghjkmnpqrstuvwxyz]+");
-    }
+    /** Powers of ten exactly representable as doubles */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
 
     private static final Pattern ELASTIC_DISTANCE_PATTERN;
 
@@ -61,21 +65,60 @@ class ElasticParserUtil {
     private static final int MIN_CIRCLE_POINTS = 40;
     private static final double MIN_CIRCLE_RADIUS_M = 0.001;
 
+    /** Minimum number of points of circles interpolated with a tolerance */
+    private static final int MIN_TOLERANCE_CIRCLE_POINTS = 12;
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+
     private final GeodeticCalculator geodeticCalculator;
 
-    private static final Pattern WKT_PATTERN;
-    static {
-        WKT_PATTERN = Pattern.compile("POINT.*|LINESTRING.*|POLYGON.*|MULTIPOINT.*|MULTILINESTRING.*|MULTIPOLYGON.*|GEOMETRYCOLLECTION.*");
-    }
+    private final ElasticCircleCache circles;
 
     private final GeometryFactory geometryFactory;
 
     private final WKTReader wktReader;
 
+    private final WKBReader wkbReader;
+
+    private double vertexSkipDistance;
+
+    private double circleTolerance;
+
     public ElasticParserUtil() {
+        this(new ElasticCircleCache());
+    }
+
+    /**
+     * @param circles Cache of interpolated circles, usually shared by the
+     * parsers of a data store
+     */
+    ElasticParserUtil(ElasticCircleCache circles) {
         this.geometryFactory = new GeometryFactory();
         this.geodeticCalculator = new GeodeticCalculator(DefaultEllipsoid.WGS84);
         this.wktReader = new WKTReader();
+        this.wkbReader = new WKBReader(geometryFactory);
+        this.circles = circles;
+    }
+
+    /**
+     * Set the distance below which vertices of line strings and polygon rings
+     * are skipped while decoding geo_shape coordinates.
+     *
+     * @param vertexSkipDistance Distance or 0 to keep all vertices
+     */
+    void setVertexSkipDistance(double vertexSkipDistance) {
+        this.vertexSkipDistance = vertexSkipDistance;
+    }
+
+    /**
+     * Set the maximum distance (in degrees) between circle geo_shapes and the
+     * polygons interpolated from them. Fewer points are interpolated for
+     * circles that are large compared to the tolerance.
+     *
+     * @param circleTolerance Tolerance or 0 for full resolution
+     */
+    void setCircleTolerance(double circleTolerance) {
+        this.circleTolerance = circleTolerance;
     }
 
     /**
@@ -91,20 +134,15 @@ class ElasticParserUtil {
         final Geometry geometry;
         if (obj instanceof String) {
             // geo_point by string
-            final Matcher listMatcher = GEO_POINT_PATTERN.matcher((String) obj);
-            if (listMatcher.matches()) {
+            final Coordinate coordinate = parseLatLon((String) obj);
+            if (coordinate != null) {
                 // coordinate
-                final double y = Double.valueOf(listMatcher.group(1));
-                final double x = Double.valueOf(listMatcher.group(2));
-                geometry = geometryFactory.createPoint(new Coordinate(x, y));
-            } else if (GEO_HASH_PATTERN.matcher((String) obj).matches()) {
+                geometry = geometryFactory.createPoint(coordinate);
+            } else if (isGeohash((String) obj)) {
                 // geohash
-                final LatLong latLon = GeoHash.decodeHash((String) obj);
-                final Coordinate geoPoint = new Coordinate(latLon.getLon(), latLon.getLat());
-                final double lat = geoPoint.y;
-                final double lon = geoPoint.x;
-                geometry = geometryFactory.createPoint(new Coordinate(lon, lat));
-            } else if (WKT_PATTERN.matcher((String) obj).matches()) {
+                final LatLong latLon = decodeGeohash((String) obj);
+                geometry = geometryFactory.createPoint(new Coordinate(latLon.getLon(), latLon.getLat()));
+            } else if (isWkt((String) obj)) {
                 // geoshape wkt
                 Geometry geom;
                 try {
@@ -139,6 +177,176 @@ class ElasticParserUtil {
         return geometry;
     }
 
+    /**
+     * Create geometry from the WKB value of a binary field.
+     *
+     * @param obj Base64 encoded WKB (as returned for binary fields) or bytes
+     * @return Geometry or null if the value is not valid WKB
+     */
+    Geometry createGeometryFromWkb(Object obj) {
+        Geometry geometry;
+        try {
+            final byte[] bytes;
+            if (obj instanceof byte[]) {
+                bytes = (byte[]) obj;
+            } else {
+                bytes = Base64.getDecoder().decode(obj.toString());
+            }
+            geometry = wkbReader.read(bytes);
+        } catch (ParseException | RuntimeException e) {
+            // corrupt values may also fail with e.g. ArrayIndexOutOfBoundsException
+            LOGGER.fine("Unable to parse WKB geometry: " + e);
+            geometry = null;
+        }
+        return geometry;
+    }
+
+    /**
+     * Parse a geo_point string of latitude and longitude separated by non
+     * numeric characters (e.g. "lat,lon") in a single pass.
+     *
+     * @param value String value
+     * @return Coordinate or null if the value is not a coordinate pair
+     */
+    static Coordinate parseLatLon(String value) {
+        final int length = value.length();
+        final int latStart = skipWhitespace(value, 0);
+        final int latEnd = scanNumber(value, latStart);
+        if (latEnd < 0) {
+            return null;
+        }
+        int index = latEnd;
+        while (index < length && !isNumberChar(value.charAt(index))) {
+            index++;
+        }
+        if (index == latEnd) {
+            return null;
+        }
+        final int lonStart = index;
+        final int lonEnd = scanNumber(value, lonStart);
+        if (lonEnd < 0 || skipWhitespace(value, lonEnd) != length) {
+            return null;
+        }
+        return new Coordinate(parseDouble(value, lonStart, lonEnd), parseDouble(value, latStart, latEnd));
+    }
+
+    /**
+     * Scan a decimal number with optional sign and fraction.
+     *
+     * @return End of the number or -1 if there is no number at the index
+     */
+    private static int scanNumber(String value, int start) {
+        final int length = value.length();
+        int index = start;
+        if (index < length && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+            index++;
+        }
+        int digits = 0;
+        boolean point = false;
+        for (; index < length; index++) {
+            final char c = value.charAt(index);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        return digits > 0 ? index : -1;
+    }
+
+    /**
+     * Parse a number previously scanned with {@link #scanNumber(String, int)}.
+     * Numbers of up to 15 digits are computed directly, which is exact as
+     * both the digits and the power of ten are exactly representable.
+     */
+    static double parseDouble(String value, int start, int end) {
+        int index = start;
+        final boolean negative = value.charAt(index) == '-';
+        if (negative || value.charAt(index) == '+') {
+            index++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; index < end; index++) {
+            final char c = value.charAt(index);
+            if (c == '.') {
+                fraction = true;
+            } else {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    scale++;
+                }
+            }
+        }
+        if (digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(value.substring(start, end));
+        }
+        final double result = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -result : result;
+    }
+
+    private static int skipWhitespace(String value, int start) {
+        int index = start;
+        while (index < value.length() && isWhitespace(value.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+    }
+
+    private static boolean isGeohash(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'b' && c <= 'z' && c != 'i' && c != 'l' && c != 'o'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWkt(String value) {
+        for (final String type : WKT_TYPES) {
+            if (value.startsWith(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode a geohash (geo_point or geohash grid aggregation key). Decoded
+     * geohashes are cached.
+     *
+     * @param geohash Geohash
+     * @return Center of the geohash cell
+     */
+    static LatLong decodeGeohash(String geohash) {
+        LatLong latLong = GEOHASHES.get(geohash);
+        if (latLong == null) {
+            latLong = GeoHash.decodeHash(geohash);
+            if (GEOHASHES.size() >= MAX_GEOHASHES) {
+                GEOHASHES.clear();
+            }
+            GEOHASHES.put(geohash, latLong);
+        }
+        return latLong;
+    }
+
     /**
      * Create geometry given property map defining geo_shape type and
      * coordinates or geo_point lat and lon.
@@ -160,8 +368,7 @@ class ElasticParserUtil {
         case "LINESTRING": {
             final List<List<Object>> posList;
             posList = (List) properties.get("coordinates");
-            final Coordinate[] coordinates = createCoordinates(posList);
-            geometry = geometryFactory.createLineString(coordinates);
+            geometry = geometryFactory.createLineString(createCoordinateSequence(posList, vertexSkipDistance, 2));
             break;
         }
         case "POLYGON": {
@@ -173,8 +380,7 @@ class ElasticParserUtil {
         case "MULTIPOINT": {
             final List<List<Object>> posList;
             posList = (List) properties.get("coordinates");
-            final Coordinate[] coordinates = createCoordinates(posList);
-            geometry = geometryFactory.createMultiPointFromCoords(coordinates);
+            geometry = geometryFactory.createMultiPoint(createCoordinateSequence(posList, 0, 0));
             break;
         }
         case "MULTILINESTRING": {
@@ -182,8 +388,7 @@ class ElasticParserUtil {
             posList = (List) properties.get("coordinates");
             final LineString[] lineStrings = new LineString[posList.size()];
             for (int i = 0; i < posList.size(); i++) {
-                final Coordinate[] coordinates = createCoordinates(posList.get(i));
-                lineStrings[i] = geometryFactory.createLineString(coordinates);
+                lineStrings[i] = geometryFactory.createLineString(createCoordinateSequence(posList.get(i), vertexSkipDistance, 2));
             }
             geometry = geometryFactory.createMultiLineString(lineStrings);
             break;
@@ -211,8 +416,9 @@ class ElasticParserUtil {
         case "ENVELOPE": {
             final List<List<Object>> posList;
             posList = (List) properties.get("coordinates");
-            final Coordinate[] coords = createCoordinates(posList);
-            final Envelope envelope = new Envelope(coords[0], coords[1]);
+            final Envelope envelope = new Envelope(
+                    toDouble(posList.get(0).get(0)), toDouble(posList.get(1).get(0)),
+                    toDouble(posList.get(0).get(1)), toDouble(posList.get(1).get(1)));
             geometry = geometryFactory.toGeometry(envelope);
             break;
         }
@@ -261,39 +467,74 @@ class ElasticParserUtil {
     }
 
     private Polygon createPolygon(final List<List<List<Object>>> posList) {
-        final Coordinate[] shellCoordinates = createCoordinates(posList.get(0));
-        final LinearRing shell = geometryFactory.createLinearRing(shellCoordinates);
+        final LinearRing shell = geometryFactory.createLinearRing(createCoordinateSequence(posList.get(0), vertexSkipDistance, 4));
         final LinearRing[] holes = new LinearRing[posList.size() - 1];
         for (int i = 1; i < posList.size(); i++) {
-            final Coordinate[] coordinates = createCoordinates(posList.get(i));
-            holes[i - 1] = geometryFactory.createLinearRing(coordinates);
+            holes[i - 1] = geometryFactory.createLinearRing(createCoordinateSequence(posList.get(i), vertexSkipDistance, 4));
         }
         return geometryFactory.createPolygon(shell, holes);
     }
 
-    private Coordinate[] createCoordinates(final List<List<Object>> posList) {
-        final Coordinate[] coordinates = new Coordinate[posList.size()];
-        for (int i = 0; i < posList.size(); i++) {
-            coordinates[i] = createCoordinate(posList.get(i));
+    /**
+     * Create a packed coordinate sequence from a GeoJSON position list,
+     * avoiding a Coordinate instance per vertex. Vertices within the skip
+     * distance (Euclidean) of the previously kept vertex are skipped, always keeping
+     * the first and last vertex. All vertices are kept if fewer than the
+     * minimum number of vertices would remain.
+     *
+     * @param posList Positions
+     * @param skipDistance Vertex skip distance or 0 to keep all vertices
+     * @param minPoints Minimum number of vertices
+     * @return Coordinate sequence
+     */
+    private static CoordinateSequence createCoordinateSequence(final List<List<Object>> posList,
+            double skipDistance, int minPoints) {
+        final int size = posList.size();
+        final double[] ordinates = new double[size * 2];
+        final double skipDistanceSquared = skipDistance * skipDistance;
+        int n = 0;
+        double lastX = 0;
+        double lastY = 0;
+        for (int i = 0; i < size; i++) {
+            final List<Object> position = posList.get(i);
+            final double x = toDouble(position.get(0));
+            final double y = toDouble(position.get(1));
+            final double dx = x - lastX;
+            final double dy = y - lastY;
+            if (skipDistance <= 0 || i == 0 || i == size - 1 || dx * dx + dy * dy > skipDistanceSquared) {
+                ordinates[2 * n] = x;
+                ordinates[2 * n + 1] = y;
+                lastX = x;
+                lastY = y;
+                n++;
+            }
         }
-        return coordinates;
+        final CoordinateSequence sequence;
+        if (n == size) {
+            sequence = new PackedCoordinateSequence.Double(ordinates, 2, 0);
+        } else if (n < minPoints) {
+            sequence = createCoordinateSequence(posList, 0, minPoints);
+        } else {
+            sequence = new PackedCoordinateSequence.Double(Arrays.copyOf(ordinates, n * 2), 2, 0);
+        }
+        return sequence;
     }
 
     private Coordinate createCoordinate(final List<Object> posList) {
         if (posList == null) {
             return null;
         }
+        return new Coordinate(toDouble(posList.get(0)), toDouble(posList.get(1)));
+    }
 
-        final double x;
-        final double y;
-        if (Number.class.isAssignableFrom(posList.get(0).getClass())) {
-            x = ((Number) posList.get(0)).doubleValue();
-            y = ((Number) posList.get(1)).doubleValue();
+    private static double toDouble(Object value) {
+        final double result;
+        if (value instanceof Number) {
+            result = ((Number) value).doubleValue();
         } else {
-            x = Double.valueOf(posList.get(0).toString());
-            y = Double.valueOf(posList.get(1).toString());
+            result = Double.parseDouble(value.toString());
         }
-        return new Coordinate(x, y);
+        return result;
     }
 
     /**
@@ -304,40 +545,20 @@ class ElasticParserUtil {
      * @return List of values or empty list if not found
      */
     public List<Object> readField(Map<String, Object> source, String name) {
-        final List<String> keys = Arrays.asList(name.split("\\."));
-        List<Object> values = new ArrayList<>();
-        if (!keys.isEmpty()) {
-
-            final Object entry = source.get(keys.get(0));
-
-            if (entry == null) {
-                readField(source.get(name), new ArrayList<>(), values);
-            } else {
-                readField(entry, keys.subList(1, keys.size()), values);
-            }
-
-        }
-        final List<Object> result;
-        if (!values.isEmpty()) {
-            result = values;
-        } else {
-            result = null;
-        }
-        return result;
+        return readField(source, name, name.split("\\."));
     }
 
-    private void readField(Object entry, List<String> keys, List<Object> values) {
-        if (entry != null && List.class.isAssignableFrom(entry.getClass())) {
-            for (Object object : (List<?>) entry) {
-                readField(object, keys, values);
-            }
-        } else if (entry != null && !keys.isEmpty() && Map.class.isAssignableFrom(entry.getClass())) {
-            final Object nextEntry = ((Map<?, ?>) entry).get(keys.get(0));
-            final List<String> newKeys = keys.subList(1, keys.size());
-            readField(nextEntry, newKeys, values);
-        } else if (entry != null) {
-            values.add(entry);
-        }
+    /**
+     * Read field values from the source document using a pre-split path.
+     *
+     * @param source Source document
+     * @param name Full field name, used for flattened (dotted) source keys
+     * @param path Field name split into path elements
+     * @return Field values or null if the field has no value
+     */
+    public List<Object> readField(Map<String, Object> source, String name, String[] path) {
+        final List<Object> values = new ArrayList<>();
+        return new ElasticFieldPath(name, path).collect(source, values, Integer.MAX_VALUE) > 0 ? values : null;
     }
 
     @SuppressWarnings("rawtypes")
@@ -395,19 +616,58 @@ class ElasticParserUtil {
         int numPoints = (int) (circumferance / CIRCLE_INTERPOLATION_INTERVAL);
         numPoints = Math.max(MIN_CIRCLE_POINTS, numPoints);
         numPoints = Math.min(MAX_CIRCLE_POINTS, numPoints);
+        numPoints = Math.min(numPoints, getCirclePoints(centreCoord.y, radM));
+
+        double[] ordinates = circles.get(centreCoord.x, centreCoord.y, radM, numPoints);
+        if (ordinates == null) {
+            ordinates = interpolateCircle(centreCoord, radM, numPoints);
+            circles.put(centreCoord.x, centreCoord.y, radM, numPoints, ordinates);
+        }
+        // geometries are mutable, so each one gets its own ordinates
+        final LinearRing linearRing = geometryFactory.createLinearRing(
+                new PackedCoordinateSequence.Double(ordinates.clone(), 2, 0));
+        return geometryFactory.createPolygon(linearRing);
+    }
+
+    /**
+     * Number of points needed for the interpolated polygon to stay within the
+     * circle tolerance, from the sagitta {@code r * (1 - cos(PI / n))} of its
+     * edges. The tolerance is converted to metres along the parallel of the
+     * centre, which is the shorter distance.
+     *
+     * @param lat Latitude of the centre
+     * @param radM Radius in metres
+     * @return Number of points or {@link Integer#MAX_VALUE} without tolerance
+     */
+    private int getCirclePoints(double lat, double radM) {
+        final double toleranceM = circleTolerance * METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+        final int numPoints;
+        if (!(toleranceM > 0)) {
+            numPoints = Integer.MAX_VALUE;
+        } else if (toleranceM >= radM) {
+            numPoints = MIN_TOLERANCE_CIRCLE_POINTS;
+        } else {
+            final double points = Math.ceil(Math.PI / Math.acos(1 - toleranceM / radM));
+            numPoints = (int) Math.max(MIN_TOLERANCE_CIRCLE_POINTS, Math.min(MAX_CIRCLE_POINTS, points));
+        }
+        return numPoints;
+    }
+
+    private double[] interpolateCircle(Coordinate centreCoord, double radM, int numPoints) {
         final double angularIncrement = 360.0 / numPoints;
         geodeticCalculator.setStartingGeographicPoint(centreCoord.x, centreCoord.y);
-        final Coordinate[] linearRingCoords = new Coordinate[numPoints + 1];
+        final double[] ordinates = new double[(numPoints + 1) * 2];
         double angle = 0.0;
         for (int i = 0; i < numPoints; i++) {
             geodeticCalculator.setDirection(angle, radM);
             Point2D point2D = geodeticCalculator.getDestinationGeographicPoint();
-            linearRingCoords[i] = new Coordinate(point2D.getX(), point2D.getY());
+            ordinates[2 * i] = point2D.getX();
+            ordinates[2 * i + 1] = point2D.getY();
             angle += angularIncrement;
         }
-        linearRingCoords[numPoints] = linearRingCoords[0];
-        final LinearRing linearRing = geometryFactory.createLinearRing(linearRingCoords);
-        return geometryFactory.createPolygon(linearRing);
+        ordinates[2 * numPoints] = ordinates[0];
+        ordinates[2 * numPoints + 1] = ordinates[1];
+        return ordinates;
     }
 
     /**
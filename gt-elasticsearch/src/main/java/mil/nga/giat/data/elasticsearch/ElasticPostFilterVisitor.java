@@ -0,0 +1,254 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.geotools.filter.visitor.DuplicatingFilterVisitor;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryLogicOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterVisitor;
+import org.opengis.filter.Not;
+import org.opengis.filter.Or;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.Contains;
+import org.opengis.filter.spatial.Crosses;
+import org.opengis.filter.spatial.Disjoint;
+import org.opengis.filter.spatial.Intersects;
+import org.opengis.filter.spatial.Overlaps;
+import org.opengis.filter.spatial.Touches;
+import org.opengis.filter.spatial.Within;
+
+/**
+ * Compiles a filter evaluated on features read from Elasticsearch (i.e. the
+ * residual filter when the query filter is not fully supported). Spatial
+ * operators between a property and a geometry literal are evaluated against a
+ * {@link PreparedGeometry} of the literal after an envelope check, and the
+ * children of logical operators are reordered so that attribute predicates
+ * are evaluated before spatial predicates.
+ */
+class ElasticPostFilterVisitor extends DuplicatingFilterVisitor {
+
+    private static final PreparedGeometryFactory PREPARED_GEOMETRY_FACTORY = new PreparedGeometryFactory();
+
+    private static final Comparator<Filter> COST_ORDER = Comparator.comparingInt(ElasticPostFilterVisitor::cost);
+
+    /**
+     * Relation of the geometry literal to the property geometry
+     */
+    enum Relation {
+        INTERSECTS, TOUCHES, CROSSES, OVERLAPS, DISJOINT, CONTAINS, WITHIN
+    }
+
+    static Filter compile(Filter filter) {
+        return (Filter) filter.accept(new ElasticPostFilterVisitor(), null);
+    }
+
+    @Override
+    public Object visit(And filter, Object extraData) {
+        return getFactory(extraData).and(visitChildren(filter, extraData));
+    }
+
+    @Override
+    public Object visit(Or filter, Object extraData) {
+        return getFactory(extraData).or(visitChildren(filter, extraData));
+    }
+
+    @Override
+    public Object visit(Intersects filter, Object extraData) {
+        final Filter prepared = prepare(filter, Relation.INTERSECTS, Relation.INTERSECTS);
+        return prepared != null ? prepared : super.visit(filter, extraData);
+    }
+
+    @Override
+    public Object visit(Touches filter, Object extraData) {
+        final Filter prepared = prepare(filter, Relation.TOUCHES, Relation.TOUCHES);
+        return prepared != null ? prepared : super.visit(filter, extraData);
+    }
+
+    @Override
+    public Object visit(Crosses filter, Object extraData) {
+        final Filter prepared = prepare(filter, Relation.CROSSES, Relation.CROSSES);
+        return prepared != null ? prepared : super.visit(filter, extraData);
+    }
+
+    @Override
+    public Object visit(Overlaps filter, Object extraData) {
+        final Filter prepared = prepare(filter, Relation.OVERLAPS, Relation.OVERLAPS);
+        return prepared != null ? prepared : super.visit(filter, extraData);
+    }
+
+    @Override
+    public Object visit(Disjoint filter, Object extraData) {
+        final Filter prepared = prepare(filter, Relation.DISJOINT, Relation.DISJOINT);
+        return prepared != null ? prepared : super.visit(filter, extraData);
+    }
+
+    @Override
+    public Object visit(Contains filter, Object extraData) {
+        final Filter prepared = prepare(filter, Relation.WITHIN, Relation.CONTAINS);
+        return prepared != null ? prepared : super.visit(filter, extraData);
+    }
+
+    @Override
+    public Object visit(Within filter, Object extraData) {
+        final Filter prepared = prepare(filter, Relation.CONTAINS, Relation.WITHIN);
+        return prepared != null ? prepared : super.visit(filter, extraData);
+    }
+
+    private List<Filter> visitChildren(BinaryLogicOperator filter, Object extraData) {
+        final List<Filter> children = new ArrayList<>();
+        for (final Filter child : filter.getChildren()) {
+            if (child != null) {
+                children.add((Filter) child.accept(this, extraData));
+            }
+        }
+        // stable sort keeps the original order of predicates of equal cost
+        children.sort(COST_ORDER);
+        return children;
+    }
+
+    /**
+     * @param relation Relation of the literal to the property when the
+     * property is the first expression
+     * @param swappedRelation Relation of the literal to the property when the
+     * literal is the first expression
+     * @return Prepared filter or null if the operator is not between a property
+     * and a geometry literal
+     */
+    private Filter prepare(BinarySpatialOperator filter, Relation relation, Relation swappedRelation) {
+        final Expression expression1 = filter.getExpression1();
+        final Expression expression2 = filter.getExpression2();
+        final PreparedSpatialFilter prepared;
+        if (expression1 instanceof PropertyName && expression2 instanceof Literal) {
+            prepared = prepare(filter, (PropertyName) expression1, (Literal) expression2, relation);
+        } else if (expression1 instanceof Literal && expression2 instanceof PropertyName) {
+            prepared = prepare(filter, (PropertyName) expression2, (Literal) expression1, swappedRelation);
+        } else {
+            prepared = null;
+        }
+        return prepared;
+    }
+
+    private PreparedSpatialFilter prepare(Filter filter, PropertyName property, Literal literal, Relation relation) {
+        final Geometry geometry = literal.evaluate(null, Geometry.class);
+        if (geometry == null || geometry.isEmpty()) {
+            return null;
+        }
+        return new PreparedSpatialFilter(filter, property, PREPARED_GEOMETRY_FACTORY.create(geometry), relation);
+    }
+
+    /**
+     * @return Relative cost of evaluating a filter
+     */
+    private static int cost(Filter filter) {
+        final int cost;
+        if (filter instanceof PreparedSpatialFilter) {
+            cost = 2;
+        } else if (filter instanceof BBOX) {
+            cost = 1;
+        } else if (filter instanceof BinarySpatialOperator) {
+            cost = 3;
+        } else if (filter instanceof BinaryLogicOperator) {
+            cost = ((BinaryLogicOperator) filter).getChildren().stream().mapToInt(ElasticPostFilterVisitor::cost).max().orElse(0);
+        } else if (filter instanceof Not) {
+            cost = cost(((Not) filter).getFilter());
+        } else {
+            cost = 0;
+        }
+        return cost;
+    }
+
+    /**
+     * Spatial operator between a property and a prepared geometry literal.
+     * Visitors are passed the original filter.
+     */
+    static class PreparedSpatialFilter implements Filter {
+
+        private final Filter filter;
+
+        private final PropertyName property;
+
+        private final PreparedGeometry prepared;
+
+        private final Envelope envelope;
+
+        private final Relation relation;
+
+        PreparedSpatialFilter(Filter filter, PropertyName property, PreparedGeometry prepared, Relation relation) {
+            this.filter = filter;
+            this.property = property;
+            this.prepared = prepared;
+            this.envelope = prepared.getGeometry().getEnvelopeInternal();
+            this.relation = relation;
+        }
+
+        @Override
+        public boolean evaluate(Object object) {
+            final Geometry geometry = property.evaluate(object, Geometry.class);
+            if (geometry == null) {
+                return false;
+            }
+            final Envelope geometryEnvelope = geometry.getEnvelopeInternal();
+            switch (relation) {
+            case DISJOINT:
+                return !envelope.intersects(geometryEnvelope) || prepared.disjoint(geometry);
+            case CONTAINS:
+                return envelope.covers(geometryEnvelope) && prepared.contains(geometry);
+            case WITHIN:
+                return geometryEnvelope.covers(envelope) && prepared.within(geometry);
+            default:
+                if (!envelope.intersects(geometryEnvelope)) {
+                    return false;
+                }
+            }
+            switch (relation) {
+            case INTERSECTS:
+                return prepared.intersects(geometry);
+            case TOUCHES:
+                // a point touches the literal when it is on its boundary
+                if (geometry instanceof Point) {
+                    return prepared.intersects(geometry) && !prepared.containsProperly(geometry);
+                }
+                return prepared.touches(geometry);
+            case CROSSES:
+                // the interior of a point cannot be both inside and outside the literal
+                return !(geometry instanceof Point) && prepared.crosses(geometry);
+            case OVERLAPS:
+                return prepared.overlaps(geometry);
+            default:
+                throw new IllegalStateException("Unexpected relation " + relation);
+            }
+        }
+
+        @Override
+        public Object accept(FilterVisitor visitor, Object extraData) {
+            return filter.accept(visitor, extraData);
+        }
+
+        Relation getRelation() {
+            return relation;
+        }
+
+        @Override
+        public String toString() {
+            return filter.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.Map;
+
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Translation of a query to Elasticsearch, created once per query and used
+ * to check the aggregation cache, build the search request and create the
+ * feature readers.
+ */
+final class ElasticQueryPlan {
+
+    /** Name of the geohash grid aggregation */
+    static final String GRID_AGGREGATION = "agg";
+
+    private final Map<String,Object> queryBuilder;
+
+    private final Map<String,Object> nativeQueryBuilder;
+
+    private final Map<String,Map<String,Map<String,Object>>> aggregations;
+
+    private final Integer precision;
+
+    private final boolean fullySupported;
+
+    private final SimpleFeatureType targetFeatureType;
+
+    private final SimpleFeatureType readFeatureType;
+
+    ElasticQueryPlan(FilterToElastic filterToElastic, SimpleFeatureType targetFeatureType,
+            SimpleFeatureType readFeatureType) {
+        this.queryBuilder = filterToElastic.getQueryBuilder();
+        this.nativeQueryBuilder = filterToElastic.getNativeQueryBuilder();
+        this.aggregations = filterToElastic.getAggregations();
+        this.precision = readPrecision(aggregations);
+        this.fullySupported = Boolean.TRUE.equals(filterToElastic.getFullySupported());
+        this.targetFeatureType = targetFeatureType;
+        this.readFeatureType = readFeatureType;
+    }
+
+    /**
+     * @return Query including the post filter
+     */
+    Map<String,Object> getQueryBuilder() {
+        return queryBuilder;
+    }
+
+    /**
+     * @return Query encoded from the filter, excluding view parameters
+     */
+    Map<String,Object> getNativeQueryBuilder() {
+        return nativeQueryBuilder;
+    }
+
+    /**
+     * @return Aggregations with the geohash grid precision set, or null if
+     * no aggregation was requested
+     */
+    Map<String,Map<String,Map<String,Object>>> getAggregations() {
+        return aggregations;
+    }
+
+    /**
+     * @return Precision of the geohash grid aggregation or null if not
+     * requested
+     */
+    Integer getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return Whether the grid aggregation has sub-aggregations
+     */
+    boolean isNestedAggregation() {
+        return precision != null && aggregations.get(GRID_AGGREGATION).size() > 1;
+    }
+
+    /**
+     * @return Whether the filter is fully supported by Elasticsearch, otherwise
+     * hits are post filtered
+     */
+    boolean isFullySupported() {
+        return fullySupported;
+    }
+
+    /**
+     * @return Feature type of the properties requested by the query
+     */
+    SimpleFeatureType getTargetFeatureType() {
+        return targetFeatureType;
+    }
+
+    /**
+     * @return Feature type read from the hits, including the attributes of
+     * the filter if the query is post filtered
+     */
+    SimpleFeatureType getReadFeatureType() {
+        return readFeatureType;
+    }
+
+    private static Integer readPrecision(Map<String,Map<String,Map<String,Object>>> aggregations) {
+        final Map<String,Object> grid;
+        if (aggregations != null && aggregations.containsKey(GRID_AGGREGATION)) {
+            grid = aggregations.get(GRID_AGGREGATION).get("geohash_grid");
+        } else {
+            grid = null;
+        }
+        final Object value = grid != null ? grid.get("precision") : null;
+        final Integer precision;
+        if (value instanceof Number) {
+            precision = ((Number) value).intValue();
+        } else if (value != null) {
+            precision = Integer.parseInt(value.toString());
+        } else {
+            precision = null;
+        }
+        return precision;
+    }
+
+    @Override
+    public String toString() {
+        return "ElasticQueryPlan[query=" + queryBuilder +
+                ", aggregations=" + aggregations +
+                ", precision=" + precision +
+                ", fullySupported=" + fullySupported +
+                ", attributes=" + readFeatureType.getAttributeCount() +
+                "]";
+    }
+
+}
@@ -6,6 +6,7 @@ package mil.nga.giat.data.elasticsearch;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,18 +22,40 @@ class ElasticRequest {
 
     private Integer scroll;
 
+    private boolean searchTemplate;
+
+    private String opaqueId;
+
     private final List<Map<String,Object>> sorts;
 
     private final List<String> sourceIncludes;
 
     private final List<String> fields;
 
+    private final List<Object> docValueFields;
+
     public ElasticRequest() {
         this.sorts = new ArrayList<>();
         this.fields = new ArrayList<>();
+        this.docValueFields = new ArrayList<>();
         this.sourceIncludes = new ArrayList<>();
     }
 
+    public ElasticRequest(ElasticRequest other) {
+        this();
+        this.query = other.query;
+        this.aggregations = other.aggregations;
+        this.size = other.size;
+        this.from = other.from;
+        this.scroll = other.scroll;
+        this.searchTemplate = other.searchTemplate;
+        this.opaqueId = other.opaqueId;
+        this.sorts.addAll(other.sorts);
+        this.sourceIncludes.addAll(other.sourceIncludes);
+        this.fields.addAll(other.fields);
+        this.docValueFields.addAll(other.docValueFields);
+    }
+
     public Map<String,Object> getQuery() {
         return query;
     }
@@ -73,6 +96,30 @@ class ElasticRequest {
         this.scroll = scroll;
     }
 
+    /**
+     * @return Whether to send the request as a stored search template with
+     * the request literals as template parameters
+     */
+    public boolean isSearchTemplate() {
+        return searchTemplate;
+    }
+
+    public void setSearchTemplate(boolean searchTemplate) {
+        this.searchTemplate = searchTemplate;
+    }
+
+    /**
+     * @return Value of the {@code X-Opaque-Id} header identifying the origin
+     * of the request, or null
+     */
+    public String getOpaqueId() {
+        return opaqueId;
+    }
+
+    public void setOpaqueId(String opaqueId) {
+        this.opaqueId = opaqueId;
+    }
+
     public List<Map<String, Object>> getSorts() {
         return sorts;
     }
@@ -97,4 +144,23 @@ class ElasticRequest {
         this.fields.add(field);
     }
 
+    /**
+     * @return Doc value fields, either field names or maps with the field
+     * name and format
+     */
+    public List<Object> getDocValueFields() {
+        return docValueFields;
+    }
+
+    public void addDocValueField(String field, String format) {
+        if (format == null) {
+            this.docValueFields.add(field);
+        } else {
+            final Map<String,Object> docValueField = new LinkedHashMap<>();
+            docValueField.put("field", field);
+            docValueField.put("format", format);
+            this.docValueFields.add(docValueField);
+        }
+    }
+
 }
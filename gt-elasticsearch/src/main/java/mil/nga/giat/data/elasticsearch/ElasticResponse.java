@@ -29,14 +29,26 @@ public class ElasticResponse {
         return results;
     }
 
+    public void setResults(ElasticResults results) {
+        this.results = results;
+    }
+
     public Map<String,ElasticAggregation> getAggregations() {
         return aggregations;
     }
 
+    public void setAggregations(Map<String,ElasticAggregation> aggregations) {
+        this.aggregations = aggregations;
+    }
+
     public String getScrollId() {
         return scrollId;
     }
 
+    public void setScrollId(String scrollId) {
+        this.scrollId = scrollId;
+    }
+
     @JsonIgnore
     public List<ElasticHit> getHits() {
         final List<ElasticHit> hits;
@@ -26,12 +26,24 @@ public class ElasticResults {
         return total;
     }
 
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+
     public Float getMaxScore() {
         return maxScore;
     }
 
+    public void setMaxScore(Float maxScore) {
+        this.maxScore = maxScore;
+    }
+
     public List<ElasticHit> getHits() {
         return hits;
     }
 
+    public void setHits(List<ElasticHit> hits) {
+        this.hits = hits;
+    }
+
 }
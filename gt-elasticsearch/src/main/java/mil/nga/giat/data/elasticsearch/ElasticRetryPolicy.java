@@ -0,0 +1,198 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.NoHttpResponseException;
+import org.elasticsearch.client.ResponseException;
+
+/**
+ * Retry policy for transient failures of idempotent read requests.
+ * <p>
+ * Retries use exponential backoff with full jitter. A shared retry budget
+ * (token bucket) limits retries to a fraction of the requests made, so that
+ * an overloaded cluster is not overwhelmed further by a retry storm.
+ * Counters are kept for monitoring.
+ */
+class ElasticRetryPolicy {
+
+    static final int DEFAULT_MAX_RETRIES = 2;
+
+    static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+
+    static final long DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+
+    static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+    /** Tokens available when the budget is created, to allow retries after startup. */
+    private static final double MIN_TOKENS = 10;
+
+    /** Maximum tokens accumulated, bounding the size of a retry burst. */
+    private static final double MAX_TOKENS = 100;
+
+    private volatile int maxRetries;
+
+    private volatile long initialBackoffMillis;
+
+    private volatile long maxBackoffMillis;
+
+    private volatile double budgetRatio;
+
+    private double tokens;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    ElasticRetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, DEFAULT_BUDGET_RATIO);
+    }
+
+    ElasticRetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis, double budgetRatio) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.budgetRatio = budgetRatio;
+        this.tokens = MIN_TOKENS;
+    }
+
+    /**
+     * Whether the failure is transient and the request may be retried.
+     * Overload (429) and gateway/unavailable (502, 503, 504) responses and
+     * connection level failures (reset, refused, closed) are retried.
+     *
+     * @param e Failure
+     * @return Whether the failure is retryable
+     */
+    static boolean isRetryable(IOException e) {
+        final boolean retryable;
+        if (e instanceof ResponseException) {
+            retryable = isRetryable(((ResponseException) e).getResponse().getStatusLine().getStatusCode());
+        } else {
+            retryable = e instanceof ConnectionClosedException
+                    || e instanceof NoHttpResponseException
+                    || e instanceof ConnectException
+                    || e instanceof NoRouteToHostException
+                    || e instanceof SocketException;
+        }
+        return retryable;
+    }
+
+    static boolean isRetryable(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Record a request, depositing a fraction of a token into the retry
+     * budget. Called once per request, not for its retries.
+     */
+    void onRequest() {
+        requestCount.incrementAndGet();
+        synchronized (this) {
+            tokens = Math.min(tokens + budgetRatio, MAX_TOKENS);
+        }
+    }
+
+    /**
+     * Whether another attempt is allowed after the given number of retries.
+     * Withdraws a token from the retry budget when allowed.
+     *
+     * @param retries Number of retries already made
+     * @return Whether to retry
+     */
+    boolean shouldRetry(int retries) {
+        if (retries >= maxRetries) {
+            failureCount.incrementAndGet();
+            return false;
+        }
+        synchronized (this) {
+            if (tokens < 1) {
+                budgetExhaustedCount.incrementAndGet();
+                failureCount.incrementAndGet();
+                return false;
+            }
+            tokens -= 1;
+        }
+        retryCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Backoff before the given retry, chosen uniformly between zero and the
+     * exponentially increasing (capped) backoff.
+     *
+     * @param retry Retry number, starting at zero
+     * @return Backoff in milliseconds
+     */
+    long getBackoffMillis(int retry) {
+        final long backoff = initialBackoffMillis << Math.min(retry, 20);
+        final long cap = Math.max(0, Math.min(backoff, maxBackoffMillis));
+        return cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public void setBudgetRatio(double budgetRatio) {
+        this.budgetRatio = budgetRatio;
+    }
+
+    /** @return Number of requests, excluding retries */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** @return Number of retries made */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /** @return Number of retries rejected because the retry budget was exhausted */
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.get();
+    }
+
+    /** @return Number of retryable failures that were not retried */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+
+/**
+ * Mustache search template derived from a search request body.
+ * <p>
+ * Every literal in the body (scalars and arrays not containing objects, such
+ * as coordinate arrays) is replaced with a template parameter, so that
+ * requests with the same structure but different literals (e.g. bbox or
+ * time values) share a template. The template id is derived from the
+ * template source.
+ */
+class ElasticSearchTemplate {
+
+    static final String ID_PREFIX = "elasticgeo-";
+
+    private final String id;
+
+    private final String source;
+
+    private final Map<String,Object> params;
+
+    private ElasticSearchTemplate(String id, String source, Map<String,Object> params) {
+        this.id = id;
+        this.source = source;
+        this.params = params;
+    }
+
+    static ElasticSearchTemplate create(ObjectMapper mapper, Map<String,Object> body) throws IOException {
+        final Map<String,Object> params = new LinkedHashMap<>();
+        final StringWriter writer = new StringWriter();
+        try (final JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            write(generator, body, params);
+        }
+        final String source = writer.toString();
+        final String id = ID_PREFIX + Hashing.murmur3_128().hashString(source, StandardCharsets.UTF_8).toString();
+        return new ElasticSearchTemplate(id, source, params);
+    }
+
+    private static void write(JsonGenerator generator, Object value, Map<String,Object> params) throws IOException {
+        if (value instanceof Map) {
+            generator.writeStartObject();
+            for (final Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                write(generator, entry.getValue(), params);
+            }
+            generator.writeEndObject();
+        } else if (value instanceof List && containsObject(value)) {
+            generator.writeStartArray();
+            for (final Object item : (List<?>) value) {
+                write(generator, item, params);
+            }
+            generator.writeEndArray();
+        } else if (value == null) {
+            generator.writeNull();
+        } else {
+            final String name = "p" + params.size();
+            params.put(name, value);
+            generator.writeRawValue("{{#toJson}}" + name + "{{/toJson}}");
+        }
+    }
+
+    private static boolean containsObject(Object value) {
+        if (value instanceof Map) {
+            return true;
+        }
+        if (value instanceof List) {
+            for (final Object item : (List<?>) value) {
+                if (containsObject(item)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Map<String,Object> getParams() {
+        return Collections.unmodifiableMap(params);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+/**
+ * Bounded dictionary of short string values, used to share a single instance
+ * of repeated values (e.g. keyword categories) across the hits of a response.
+ * Values are looked up directly from the parser buffer so that repeated
+ * values are not allocated. Not thread safe.
+ */
+final class ElasticStringDictionary {
+
+    /** Maximum length of values kept in the dictionary */
+    static final int MAX_VALUE_LENGTH = 32;
+
+    private static final int CAPACITY = 4096;
+
+    /** Values are no longer added once the table is half full */
+    private static final int MAX_SIZE = CAPACITY / 2;
+
+    private static final int MAX_PROBES = 8;
+
+    /** Estimated size of a string instance excluding its characters */
+    private static final int STRING_OVERHEAD = 40;
+
+    private final String[] table = new String[CAPACITY];
+
+    private int size;
+
+    private long hits;
+
+    private long misses;
+
+    private long bytesSaved;
+
+    /**
+     * Get the shared instance of a string value.
+     *
+     * @param chars Character buffer
+     * @param offset Offset of the value in the buffer
+     * @param length Length of the value
+     * @return String value
+     */
+    String canonicalize(char[] chars, int offset, int length) {
+        if (length > MAX_VALUE_LENGTH) {
+            return new String(chars, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final String entry = table[index];
+            if (entry == null) {
+                final String value = new String(chars, offset, length);
+                if (size < MAX_SIZE) {
+                    table[index] = value;
+                    size++;
+                }
+                misses++;
+                return value;
+            } else if (entry.hashCode() == hash && matches(entry, chars, offset, length)) {
+                hits++;
+                bytesSaved += STRING_OVERHEAD + 2L * length;
+                return entry;
+            }
+            index = (index + 1) & (CAPACITY - 1);
+        }
+        misses++;
+        return new String(chars, offset, length);
+    }
+
+    private static boolean matches(String entry, char[] chars, int offset, int length) {
+        if (entry.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (entry.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Number of values in the dictionary */
+    int size() {
+        return size;
+    }
+
+    /** @return Number of values returned from the dictionary */
+    long getHits() {
+        return hits;
+    }
+
+    /** @return Number of short values allocated */
+    long getMisses() {
+        return misses;
+    }
+
+    /** @return Estimated number of bytes not allocated for repeated values */
+    long getBytesSaved() {
+        return bytesSaved;
+    }
+
+}
@@ -0,0 +1,605 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.geotools.util.logging.Logging;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ExecutorMode;
+
+/**
+ * Client that fans requests out to several Elasticsearch clusters holding
+ * the same index and merges the responses. Hits are concatenated or, when
+ * sorting was requested, merged by the hit sort values. Geohash grid
+ * aggregation buckets are merged by key with {@code doc_count} values summed.
+ * <p>
+ * Responses are merged incrementally as each cluster responds. Merged
+ * buckets are only returned once every cluster has responded though, since
+ * a cell returned earlier would be rendered with a partial count (grid
+ * cells are set, not summed, by the consumers of the buckets).
+ */
+class FederatedElasticClient implements ElasticClient {
+
+    private final static Logger LOGGER = Logging.getLogger(FederatedElasticClient.class);
+
+    /** Separator between per-cluster scroll ids in a federated scroll id */
+    private static final String SCROLL_ID_SEPARATOR = ";";
+
+    private static final Pattern SCROLL_ID_SPLITTER = Pattern.compile(SCROLL_ID_SEPARATOR);
+
+    private static final String BUCKETS = "buckets";
+
+    private static final String DOC_COUNT = "doc_count";
+
+    private static final String KEY = "key";
+
+    private final List<ElasticClient> clients;
+
+    private final Supplier<ExecutorService> executor;
+
+    /** Executor created by this client, shut down on close */
+    private final ExecutorService ownExecutor;
+
+    FederatedElasticClient(List<? extends ElasticClient> clients) {
+        this(clients, ElasticExecutors.newExecutor(ExecutorMode.PLATFORM, "esfederated"));
+    }
+
+    private FederatedElasticClient(List<? extends ElasticClient> clients, ExecutorService executor) {
+        this(clients, () -> executor, executor);
+    }
+
+    /**
+     * @param clients One client per cluster
+     * @param executor Supplier of the executor used to run the cluster requests
+     */
+    FederatedElasticClient(List<? extends ElasticClient> clients, Supplier<ExecutorService> executor) {
+        this(clients, executor, null);
+    }
+
+    private FederatedElasticClient(List<? extends ElasticClient> clients, Supplier<ExecutorService> executor, ExecutorService ownExecutor) {
+        if (clients == null || clients.isEmpty()) {
+            throw new IllegalArgumentException("At least one client is required");
+        }
+        this.clients = new ArrayList<>(clients);
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    List<ElasticClient> getClients() {
+        return Collections.unmodifiableList(clients);
+    }
+
+    /**
+     * Returns the lowest version across all clusters so that requests are
+     * built in a form every cluster accepts.
+     */
+    @Override
+    public double getVersion() {
+        double version = Double.MAX_VALUE;
+        for (final ElasticClient client : clients) {
+            version = Math.min(version, client.getVersion());
+        }
+        return version;
+    }
+
+    @Override
+    public List<String> getTypes(String indexName) throws IOException {
+        final Set<String> types = new LinkedHashSet<>();
+        for (final ElasticClient client : clients) {
+            types.addAll(client.getTypes(indexName));
+        }
+        return new ArrayList<>(types);
+    }
+
+    @Override
+    public Map<String, Object> getMapping(String indexName, String type) throws IOException {
+        for (final ElasticClient client : clients) {
+            final Map<String,Object> mapping = client.getMapping(indexName, type);
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public ElasticResponse search(String searchIndices, String type, ElasticRequest request) throws IOException {
+        final ElasticRequest clusterRequest = toClusterRequest(request);
+        return merge(searchEach(searchIndices, type, clusterRequest), request);
+    }
+
+    /**
+     * Submits the search to all clusters in parallel and returns the
+     * responses in the order they arrive, so that results from fast clusters
+     * can be consumed while slower clusters are still running. Scroll ids
+     * on the returned responses are local to the originating cluster and
+     * wrapped as federated scroll ids.
+     *
+     * @param searchIndices Indices to search
+     * @param type Document type
+     * @param request Request submitted unchanged to every cluster
+     * @return Iterator over the cluster responses in completion order, which
+     * cancels the requests still running when closed
+     */
+    CompletionIterator searchEach(String searchIndices, String type, ElasticRequest request) {
+        final CompletionService<ElasticResponse> completionService = new ExecutorCompletionService<>(executor.get());
+        final List<Future<ElasticResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            final int index = i;
+            final ElasticClient client = clients.get(i);
+            // run as the calling user (see RestElasticClient run as support)
+            futures.add(completionService.submit(new DelegatingSecurityContextCallable<>(() -> {
+                final ElasticResponse response = client.search(searchIndices, type, request);
+                response.setScrollId(toFederatedScrollId(index, response.getScrollId()));
+                return response;
+            })));
+        }
+        return new CompletionIterator(completionService, futures);
+    }
+
+    @Override
+    public ElasticResponse scroll(String scrollId, Integer scrollTime, String opaqueId) throws IOException {
+        final String[] scrollIds = fromFederatedScrollId(scrollId);
+        final CompletionService<ElasticResponse> completionService = new ExecutorCompletionService<>(executor.get());
+        final List<Future<ElasticResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            final int index = i;
+            final String clusterScrollId = scrollIds[i];
+            if (clusterScrollId.isEmpty()) {
+                continue;
+            }
+            final ElasticClient client = clients.get(i);
+            futures.add(completionService.submit(new DelegatingSecurityContextCallable<>(() -> {
+                final ElasticResponse response = client.scroll(clusterScrollId, scrollTime, opaqueId);
+                // stop scrolling clusters that are exhausted
+                final String nextScrollId = response.getNumHits() > 0 ? response.getScrollId() : null;
+                response.setScrollId(toFederatedScrollId(index, nextScrollId));
+                return response;
+            })));
+        }
+        return merge(new CompletionIterator(completionService, futures), null);
+    }
+
+    @Override
+    public void clearScroll(Set<String> scrollIds) throws IOException {
+        final List<Set<String>> clusterScrollIds = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            clusterScrollIds.add(new HashSet<>());
+        }
+        for (final String scrollId : scrollIds) {
+            if (scrollId == null) {
+                continue;
+            }
+            final String[] ids = fromFederatedScrollId(scrollId);
+            for (int i = 0; i < ids.length; i++) {
+                if (!ids[i].isEmpty()) {
+                    clusterScrollIds.get(i).add(ids[i]);
+                }
+            }
+        }
+        IOException error = null;
+        for (int i = 0; i < clients.size(); i++) {
+            if (!clusterScrollIds.get(i).isEmpty()) {
+                try {
+                    clients.get(i).clearScroll(clusterScrollIds.get(i));
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownExecutor != null) {
+            ownExecutor.shutdownNow();
+        }
+        IOException error = null;
+        for (final ElasticClient client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Returns the request to submit to each cluster. Pagination can only be
+     * applied once hits from all clusters are merged, so each cluster is
+     * asked for the first {@code from + size} hits instead.
+     */
+    private ElasticRequest toClusterRequest(ElasticRequest request) {
+        final ElasticRequest clusterRequest;
+        if (request.getFrom() != null && request.getFrom() > 0) {
+            clusterRequest = new ElasticRequest(request);
+            clusterRequest.setFrom(0);
+            if (request.getSize() != null) {
+                clusterRequest.setSize(request.getFrom() + request.getSize());
+            }
+        } else {
+            clusterRequest = request;
+        }
+        return clusterRequest;
+    }
+
+    /**
+     * Merges cluster responses into a single response, folding each response
+     * into the merged result as it arrives.
+     *
+     * @param responses Cluster responses in completion order
+     * @param request Original request or null for scroll responses
+     * @return Merged response
+     */
+    private ElasticResponse merge(Iterator<ElasticResponse> responses, ElasticRequest request) throws IOException {
+        final ResponseMerger merger = new ResponseMerger();
+        try {
+            while (responses.hasNext()) {
+                merger.add(responses.next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return merger.build(request);
+    }
+
+    /**
+     * Accumulates cluster responses. Hits are kept per cluster until all
+     * responses are merged, while aggregation buckets are merged by key as
+     * each response is added.
+     */
+    private final class ResponseMerger {
+
+        private final List<List<ElasticHit>> hitLists = new ArrayList<>();
+
+        private final Map<String,BucketMerger> aggregations = new LinkedHashMap<>();
+
+        private final String[] scrollIds = new String[clients.size()];
+
+        private long total;
+
+        private Float maxScore;
+
+        ResponseMerger() {
+            Arrays.fill(scrollIds, "");
+        }
+
+        void add(ElasticResponse response) {
+            hitLists.add(response.getHits());
+            total += response.getTotalNumHits();
+            if (response.getResults() != null && response.getResults().getMaxScore() != null) {
+                final float score = response.getResults().getMaxScore();
+                maxScore = maxScore == null ? score : Math.max(maxScore, score);
+            }
+            if (response.getAggregations() != null) {
+                for (final Map.Entry<String,ElasticAggregation> entry : response.getAggregations().entrySet()) {
+                    final BucketMerger buckets = aggregations.computeIfAbsent(entry.getKey(), k -> new BucketMerger());
+                    if (entry.getValue().getBuckets() != null) {
+                        buckets.add(entry.getValue().getBuckets());
+                    }
+                }
+            }
+            if (response.getScrollId() != null) {
+                final String[] ids = fromFederatedScrollId(response.getScrollId());
+                for (int i = 0; i < ids.length; i++) {
+                    if (!ids[i].isEmpty()) {
+                        scrollIds[i] = ids[i];
+                    }
+                }
+            }
+        }
+
+        ElasticResponse build(ElasticRequest request) {
+            List<ElasticHit> hits;
+            if (request != null && !request.getSorts().isEmpty()) {
+                hits = mergeSorted(hitLists, request.getSorts());
+            } else {
+                hits = new ArrayList<>();
+                hitLists.forEach(hits::addAll);
+            }
+            if (request != null && request.getFrom() != null && request.getFrom() > 0) {
+                final int from = Math.min(request.getFrom(), hits.size());
+                hits = hits.subList(from, hits.size());
+            }
+            if (request != null && request.getSize() != null && hits.size() > request.getSize()) {
+                hits = hits.subList(0, request.getSize());
+            }
+
+            final ElasticResults results = new ElasticResults();
+            results.setHits(new ArrayList<>(hits));
+            results.setTotal(total);
+            results.setMaxScore(maxScore);
+
+            final ElasticResponse merged = new ElasticResponse();
+            merged.setResults(results);
+            if (!aggregations.isEmpty()) {
+                final Map<String,ElasticAggregation> mergedAggregations = new LinkedHashMap<>();
+                aggregations.forEach((name, buckets) -> {
+                    final ElasticAggregation aggregation = new ElasticAggregation();
+                    aggregation.setBuckets(buckets.isEmpty() ? null : ElasticBuckets.valueOf(buckets.build()));
+                    mergedAggregations.put(name, aggregation);
+                });
+                merged.setAggregations(mergedAggregations);
+            }
+            final boolean scrollOpen = Arrays.stream(scrollIds).anyMatch(id -> !id.isEmpty());
+            merged.setScrollId(scrollOpen ? String.join(SCROLL_ID_SEPARATOR, scrollIds) : null);
+            return merged;
+        }
+
+    }
+
+    /**
+     * Merges buckets by key as bucket lists are added, summing
+     * {@code doc_count} values. Nested bucket aggregations are merged
+     * recursively. Other sub-aggregation values (e.g. metrics) cannot
+     * generally be combined and are taken from the first cluster reporting
+     * the key.
+     */
+    private static final class BucketMerger {
+
+        private final Map<Object,Map<String,Object>> merged = new LinkedHashMap<>();
+
+        private final Map<Object,Map<String,BucketMerger>> nested = new HashMap<>();
+
+        private int numLists;
+
+        boolean isEmpty() {
+            return numLists == 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        void add(List<Map<String,Object>> buckets) {
+            numLists++;
+            for (final Map<String,Object> bucket : buckets) {
+                final Object key = bucket.get(KEY);
+                final Map<String,Object> current = merged.get(key);
+                if (current == null) {
+                    merged.put(key, new LinkedHashMap<>(bucket));
+                } else if (bucket.get(DOC_COUNT) instanceof Number) {
+                    final long docCount = ((Number) bucket.get(DOC_COUNT)).longValue();
+                    final Object currentCount = current.get(DOC_COUNT);
+                    current.put(DOC_COUNT, currentCount instanceof Number ? ((Number) currentCount).longValue() + docCount : docCount);
+                }
+                for (final Map.Entry<String,Object> entry : bucket.entrySet()) {
+                    if (entry.getValue() instanceof Map && ((Map<?,?>) entry.getValue()).get(BUCKETS) instanceof List) {
+                        final List<Map<String,Object>> subBuckets = (List<Map<String,Object>>) ((Map<?,?>) entry.getValue()).get(BUCKETS);
+                        nested.computeIfAbsent(key, k -> new HashMap<>())
+                                .computeIfAbsent(entry.getKey(), k -> new BucketMerger())
+                                .add(subBuckets);
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Map<String,Object>> build() {
+            for (final Map.Entry<Object,Map<String,BucketMerger>> entry : nested.entrySet()) {
+                final Map<String,Object> bucket = merged.get(entry.getKey());
+                for (final Map.Entry<String,BucketMerger> subAggregation : entry.getValue().entrySet()) {
+                    if (subAggregation.getValue().numLists > 1) {
+                        final Map<String,Object> value = new LinkedHashMap<>((Map<String,Object>) bucket.get(subAggregation.getKey()));
+                        value.put(BUCKETS, subAggregation.getValue().build());
+                        bucket.put(subAggregation.getKey(), value);
+                    }
+                }
+            }
+            return new ArrayList<>(merged.values());
+        }
+
+    }
+
+    /**
+     * K-way merge of hit lists that are each already sorted by the cluster.
+     */
+    private List<ElasticHit> mergeSorted(List<List<ElasticHit>> hitLists, List<Map<String,Object>> sorts) {
+        final Comparator<ElasticHit> comparator = new SortValueComparator(sorts);
+        final PriorityQueue<PeekingIterator> queue = new PriorityQueue<>((a, b) -> comparator.compare(a.peek(), b.peek()));
+        int size = 0;
+        for (final List<ElasticHit> hits : hitLists) {
+            size += hits.size();
+            if (!hits.isEmpty()) {
+                queue.add(new PeekingIterator(hits.iterator()));
+            }
+        }
+        final List<ElasticHit> merged = new ArrayList<>(size);
+        while (!queue.isEmpty()) {
+            final PeekingIterator iterator = queue.poll();
+            merged.add(iterator.next());
+            if (iterator.hasNext()) {
+                queue.add(iterator);
+            }
+        }
+        return merged;
+    }
+
+    private String toFederatedScrollId(int index, String scrollId) {
+        if (scrollId == null) {
+            return null;
+        }
+        final String[] ids = new String[clients.size()];
+        Arrays.fill(ids, "");
+        ids[index] = scrollId;
+        return String.join(SCROLL_ID_SEPARATOR, ids);
+    }
+
+    private String[] fromFederatedScrollId(String scrollId) {
+        final String[] ids = new String[clients.size()];
+        Arrays.fill(ids, "");
+        final String[] parts = SCROLL_ID_SPLITTER.split(scrollId, -1);
+        System.arraycopy(parts, 0, ids, 0, Math.min(parts.length, ids.length));
+        return ids;
+    }
+
+    /**
+     * Compares hits by the sort values returned by Elasticsearch using the
+     * sort orders of the request.
+     */
+    private static class SortValueComparator implements Comparator<ElasticHit> {
+
+        private final boolean[] descending;
+
+        SortValueComparator(List<Map<String,Object>> sorts) {
+            descending = new boolean[sorts.size()];
+            for (int i = 0; i < sorts.size(); i++) {
+                final Object options = sorts.get(i).values().stream().findFirst().orElse(null);
+                descending[i] = options instanceof Map && "desc".equals(((Map<?,?>) options).get("order"));
+            }
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public int compare(ElasticHit o1, ElasticHit o2) {
+            final List<Object> values1 = o1.getSort() != null ? o1.getSort() : Collections.emptyList();
+            final List<Object> values2 = o2.getSort() != null ? o2.getSort() : Collections.emptyList();
+            final int n = Math.min(descending.length, Math.min(values1.size(), values2.size()));
+            for (int i = 0; i < n; i++) {
+                final Object value1 = values1.get(i);
+                final Object value2 = values2.get(i);
+                final int result;
+                if (value1 == null || value2 == null) {
+                    // missing values sort last regardless of order
+                    result = value1 == null ? (value2 == null ? 0 : 1) : -1;
+                } else if (value1 instanceof Number && value2 instanceof Number) {
+                    final int comparison = Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+                    result = descending[i] ? -comparison : comparison;
+                } else if (value1 instanceof Comparable && value1.getClass().equals(value2.getClass())) {
+                    final int comparison = ((Comparable) value1).compareTo(value2);
+                    result = descending[i] ? -comparison : comparison;
+                } else {
+                    final int comparison = value1.toString().compareTo(value2.toString());
+                    result = descending[i] ? -comparison : comparison;
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+
+    }
+
+    private static class PeekingIterator {
+
+        private final Iterator<ElasticHit> delegate;
+
+        private ElasticHit next;
+
+        PeekingIterator(Iterator<ElasticHit> delegate) {
+            this.delegate = delegate;
+            this.next = delegate.next();
+        }
+
+        ElasticHit peek() {
+            return next;
+        }
+
+        ElasticHit next() {
+            final ElasticHit current = next;
+            next = delegate.hasNext() ? delegate.next() : null;
+            return current;
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+    }
+
+    /**
+     * Iterates over cluster responses in completion order. A failure on any
+     * cluster fails the iteration with an {@link UncheckedIOException} and
+     * cancels outstanding requests.
+     */
+    static class CompletionIterator implements Iterator<ElasticResponse>, Closeable {
+
+        private final CompletionService<ElasticResponse> completionService;
+
+        private final List<Future<ElasticResponse>> futures;
+
+        private int remaining;
+
+        CompletionIterator(CompletionService<ElasticResponse> completionService, List<Future<ElasticResponse>> futures) {
+            this.completionService = completionService;
+            this.futures = futures;
+            this.remaining = futures.size();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public ElasticResponse next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                final ElasticResponse response = completionService.take().get();
+                remaining--;
+                return response;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new UncheckedIOException(new IOException("Interrupted waiting for federated search", e));
+            } catch (ExecutionException e) {
+                cancel();
+                LOGGER.fine("Federated search failed: " + e.getCause());
+                if (e.getCause() instanceof IOException) {
+                    throw new UncheckedIOException((IOException) e.getCause());
+                }
+                throw new UncheckedIOException(new IOException("Error executing federated search", e.getCause()));
+            }
+        }
+
+        /**
+         * Cancel the requests still running. Responses not yet returned are
+         * discarded.
+         */
+        @Override
+        public void close() {
+            cancel();
+        }
+
+        private void cancel() {
+            remaining = 0;
+            futures.forEach(future -> future.cancel(true));
+        }
+
+    }
+
+}
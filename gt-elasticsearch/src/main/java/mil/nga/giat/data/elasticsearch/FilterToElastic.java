@@ -174,6 +174,9 @@ class FilterToElastic implements FilterVisitor, ExpressionVisitor {
 
     private DateTimeFormatter dateFormatter;
 
+    /** Parameter index of each slot literal (or bbox filter) of a filter template being compiled */
+    Map<Object,Integer> slots;
+
     public FilterToElastic() {
         queryBuilder = MATCH_ALL;
         nativeQueryBuilder = ImmutableMap.of("match_all", Collections.EMPTY_MAP);
@@ -1001,6 +1004,7 @@ class FilterToElastic implements FilterVisitor, ExpressionVisitor {
                 // write out the literal allowing subclasses to override this
                 // behaviour (for writing out dates and the like using the BDMS custom functions)
                 writeLiteral(literal);
+                field = slot(expression, 0, target, field);
             }
         } catch (IOException e) {
             throw new FilterToElasticException("IO problems writing literal", e);
@@ -1008,7 +1012,44 @@ class FilterToElastic implements FilterVisitor, ExpressionVisitor {
         return context;
     }
 
-    private Object evaluateLiteral(Literal expression, Class<?> target) {
+    /**
+     * Encode a literal value as it is written into the query.
+     *
+     * @param expression Literal
+     * @param target Type to convert the literal to or null
+     * @param dateFormatter Formatter of date literals
+     * @return Encoded value
+     */
+    static Object encodeLiteral(Literal expression, Class<?> target, DateTimeFormatter dateFormatter) {
+        final Object literal = evaluateLiteral(expression, target);
+        final Object value;
+        if (literal instanceof Date) {
+            value = dateFormatter.print(((Date) literal).getTime());
+        } else {
+            value = literal;
+        }
+        return value;
+    }
+
+    /**
+     * Get the value to write into the query, which is a slot marker when
+     * compiling a filter template and the owner is a slot.
+     *
+     * @param owner Slot literal or filter
+     * @param component Index of the value within the slot parameters
+     * @param target Type the literal is converted to
+     * @param value Encoded value
+     * @return Slot marker or the encoded value
+     */
+    Object slot(Object owner, int component, Class<?> target, Object value) {
+        final Integer index = slots != null ? slots.get(owner) : null;
+        if (index == null) {
+            return value;
+        }
+        return new ElasticFilterTemplate.Slot(index + component, target, dateFormatter);
+    }
+
+    private static Object evaluateLiteral(Literal expression, Class<?> target) {
         Object literal = null;
 
         // HACK: let expression figure out the right value for numbers,
@@ -1183,7 +1224,7 @@ class FilterToElastic implements FilterVisitor, ExpressionVisitor {
     /*
      * helper to do a safe convesion of expression to a number
      */
-    private Number safeConvertToNumber(Expression expression, Class<?> target) {
+    private static Number safeConvertToNumber(Expression expression, Class<?> target) {
         return (Number) Converters.convert(expression.evaluate(null), target, 
                 new Hints(ConverterFactory.SAFE_CONVERSION, true));
     }
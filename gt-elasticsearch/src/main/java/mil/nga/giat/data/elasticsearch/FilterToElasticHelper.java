@@ -259,10 +259,13 @@ class FilterToElasticHelper {
                 minX = -180;
                 maxX = 180;
             }
+            // bounds are slot parameters (minX, minY, maxX, maxY) when compiling a filter template
             delegate.queryBuilder = ImmutableMap.of("bool", ImmutableMap.of("must", MATCH_ALL,
                     "filter", ImmutableMap.of("geo_bounding_box", ImmutableMap.of(key, 
-                            ImmutableMap.of("top_left", ImmutableList.of(minX, maxY), 
-                                    "bottom_right", ImmutableList.of(maxX, minY))))));
+                            ImmutableMap.of("top_left", ImmutableList.of(delegate.slot(filter, 0, null, minX),
+                                    delegate.slot(filter, 3, null, maxY)), 
+                                    "bottom_right", ImmutableList.of(delegate.slot(filter, 2, null, maxX),
+                                            delegate.slot(filter, 1, null, minY)))))));
         } else {
             FilterToElastic.LOGGER.fine(filter.getClass().getSimpleName() 
                     + " is unsupported for geo_point types");
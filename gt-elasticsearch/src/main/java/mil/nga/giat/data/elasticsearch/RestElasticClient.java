@@ -6,6 +6,7 @@ package mil.nga.giat.data.elasticsearch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -18,6 +19,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -49,6 +51,10 @@ public class RestElasticClient implements ElasticClient {
 
     private final static DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 
+    /** Reason of an error about a missing stored script, such as "unable to find script [id] in cluster state" */
+    private final static Pattern TEMPLATE_NOT_FOUND = Pattern.compile(
+            "(?i)unable to find (stored |on disk file )?script|script \\[[^\\]]*\\] (was )?(not found|does not exist)");
+
     private final RestClient client;
 
     private final RestClient proxyClient;
@@ -57,6 +63,13 @@ public class RestElasticClient implements ElasticClient {
 
     private final ObjectMapper mapper;
 
+    /** Maximum number of search templates registered by a client, bounding cluster state growth. */
+    static final int MAX_TEMPLATES = 1000;
+
+    private final ElasticRetryPolicy retryPolicy;
+
+    private final Set<String> templateIds;
+
     private Double version;
 
     public RestElasticClient(RestClient client) {
@@ -64,11 +77,17 @@ public class RestElasticClient implements ElasticClient {
     }
 
     public RestElasticClient(RestClient client, RestClient proxyClient, boolean enableRunAs) {
+        this(client, proxyClient, enableRunAs, new ElasticRetryPolicy());
+    }
+
+    RestElasticClient(RestClient client, RestClient proxyClient, boolean enableRunAs, ElasticRetryPolicy retryPolicy) {
         this.client = client;
         this.proxyClient = proxyClient;
         this.mapper = new ObjectMapper();
         this.mapper.setDateFormat(DATE_FORMAT);
         this.enableRunAs = enableRunAs;
+        this.retryPolicy = retryPolicy;
+        this.templateIds = ConcurrentHashMap.newKeySet();
     }
 
     @Override
@@ -183,6 +202,11 @@ public class RestElasticClient implements ElasticClient {
         }
         pathBuilder.append("/_search");
 
+        final boolean useTemplate = request.isSearchTemplate() && getVersion() >= 6;
+        if (useTemplate) {
+            pathBuilder.append("/template");
+        }
+
         final Map<String,Object> requestBody = new HashMap<>();
 
         if (request.getSize() != null) {
@@ -209,6 +233,14 @@ public class RestElasticClient implements ElasticClient {
             requestBody.put(key, request.getFields());
         }
 
+        if (!request.getDocValueFields().isEmpty()) {
+            requestBody.put("docvalue_fields", request.getDocValueFields());
+            if (sourceIncludes.isEmpty()) {
+                // all fields are read from doc values or stored fields
+                requestBody.put("_source", false);
+            }
+        }
+
         if (!request.getSorts().isEmpty()) {
             requestBody.put("sort", request.getSorts());
         }
@@ -221,10 +253,91 @@ public class RestElasticClient implements ElasticClient {
             requestBody.put("aggregations", request.getAggregations());
         }
 
-        return parseResponse(performRequest("POST", pathBuilder.toString(), requestBody));
+        if (useTemplate) {
+            return searchTemplate(pathBuilder.toString(), requestBody, request.getOpaqueId());
+        }
+
+        return parseResponse(performRequest("POST", pathBuilder.toString(), requestBody, false, request.getOpaqueId()));
+    }
+
+    private ElasticResponse searchTemplate(String path, Map<String,Object> requestBody, String opaqueId) throws IOException {
+        final ElasticSearchTemplate template = ElasticSearchTemplate.create(mapper, requestBody);
+        if (!templateIds.contains(template.getId()) && templateIds.size() >= MAX_TEMPLATES) {
+            LOGGER.fine("Maximum number of search templates registered. Sending full request.");
+            return parseResponse(performRequest("POST", path.replace("/_search/template", "/_search"), requestBody, false, opaqueId));
+        }
+        registerTemplate(template);
+
+        final Map<String,Object> templateBody = new HashMap<>();
+        templateBody.put("id", template.getId());
+        templateBody.put("params", template.getParams());
+        try {
+            return parseResponse(performRequest("POST", path, templateBody, false, opaqueId));
+        } catch (ResponseException e) {
+            if (!isTemplateNotFound(e.getResponse(), template.getId())) {
+                throw e;
+            }
+            // stored script may have been removed from the cluster, register again
+            LOGGER.fine("Search template " + template.getId() + " not found. Registering template again.");
+            templateIds.remove(template.getId());
+            registerTemplate(template);
+            return parseResponse(performRequest("POST", path, templateBody, false, opaqueId));
+        }
+    }
+
+    /**
+     * @return Whether a failed template search reports that the stored script
+     * of the template is missing, as a not found or bad request error whose
+     * reason names the template id. Other not found errors (e.g. a missing
+     * index) are not about the script.
+     */
+    private boolean isTemplateNotFound(Response response, String templateId) {
+        final int status = response.getStatusLine().getStatusCode();
+        if ((status != 404 && status != 400) || response.getEntity() == null) {
+            return false;
+        }
+        try (final InputStream inputStream = response.getEntity().getContent()) {
+            final Map<String,Object> body = this.mapper.readValue(inputStream, new TypeReference<Map<String,Object>>() {});
+            final Object error = body.get("error");
+            final List<Object> causes = new ArrayList<>();
+            causes.add(error);
+            if (error instanceof Map && ((Map<?,?>) error).get("root_cause") instanceof List) {
+                causes.addAll((List<?>) ((Map<?,?>) error).get("root_cause"));
+            }
+            for (final Object cause : causes) {
+                final Object type = cause instanceof Map ? ((Map<?,?>) cause).get("type") : null;
+                final Object reason = cause instanceof Map ? ((Map<?,?>) cause).get("reason") : cause;
+                if (reason != null && !"index_not_found_exception".equals(type)
+                        && reason.toString().contains(templateId)
+                        && TEMPLATE_NOT_FOUND.matcher(reason.toString()).find()) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            LOGGER.fine("Unable to read search template error: " + e);
+            return false;
+        }
+    }
+
+    private void registerTemplate(ElasticSearchTemplate template) throws IOException {
+        if (templateIds.contains(template.getId())) {
+            return;
+        }
+        final Map<String,Object> script = new HashMap<>();
+        script.put("lang", "mustache");
+        script.put("source", template.getSource());
+        LOGGER.fine("Registering search template " + template.getId() + ": " + template.getSource());
+        performRequest("PUT", "/_scripts/" + template.getId(), Collections.singletonMap("script", script), true);
+        templateIds.add(template.getId());
     }
 
     private Response performRequest(String method, String path, Map<String, Object> requestBody, boolean isAdmin) throws IOException {
+        return performRequest(method, path, requestBody, isAdmin, null);
+    }
+
+    private Response performRequest(String method, String path, Map<String, Object> requestBody, boolean isAdmin,
+            String opaqueId) throws IOException {
         final HttpEntity entity;
         if (requestBody != null) {
             final byte[] data = this.mapper.writeValueAsBytes(requestBody);
@@ -244,6 +357,7 @@ public class RestElasticClient implements ElasticClient {
         final Request request = new Request(method, path);
         request.setEntity(entity);
 
+        final RequestOptions.Builder optionsBuilder = RequestOptions.DEFAULT.toBuilder();
         if (!isAdmin && enableRunAs) {
             final SecurityContext ctx = SecurityContextHolder.getContext();
             final Authentication auth = ctx.getAuthentication();
@@ -253,38 +367,92 @@ public class RestElasticClient implements ElasticClient {
             if (!auth.isAuthenticated()) {
                 throw new IllegalStateException(String.format("User is not authenticated: %s", auth.getName()));
             }
-            final RequestOptions.Builder optionsBuilder = RequestOptions.DEFAULT.toBuilder();
             optionsBuilder.addHeader(RUN_AS, auth.getName());
-            request.setOptions(optionsBuilder);
             LOGGER.fine(String.format("Performing request on behalf of user %s", auth.getName()));
         } else {
             LOGGER.fine(String.format("Performing request with %s credentials", isAdmin ? "user" : "proxy"));
         }
-        final Response response = client.performRequest(request);
+        final String opaqueIdHeader = opaqueId != null ? opaqueId : ElasticOpaqueId.create(null, null);
+        if (opaqueIdHeader != null) {
+            optionsBuilder.addHeader(ElasticOpaqueId.HEADER, opaqueIdHeader);
+        }
+        request.setOptions(optionsBuilder);
+        // all GET and POST requests made by this client are reads (search, scroll, mapping)
+        final boolean idempotent = method.equals("GET") || method.equals("POST");
+        final Response response = performRequest(client, request, idempotent);
         if (response.getStatusLine().getStatusCode() >= 400) {
             throw new IOException("Error executing request: " + response.getStatusLine().getReasonPhrase());
         }
         return response;
     }
 
+    private Response performRequest(RestClient client, Request request, boolean idempotent) throws IOException {
+        // only requests deposit into the retry budget, so that retries do not pay for themselves
+        retryPolicy.onRequest();
+        int retries = 0;
+        while (true) {
+            final Response response;
+            try {
+                response = client.performRequest(request);
+            } catch (IOException e) {
+                if (!idempotent || !ElasticRetryPolicy.isRetryable(e) || !retryPolicy.shouldRetry(retries)) {
+                    throw e;
+                }
+                backoff(request, retries++, e.toString());
+                continue;
+            }
+            final int status = response.getStatusLine().getStatusCode();
+            if (!idempotent || !ElasticRetryPolicy.isRetryable(status) || !retryPolicy.shouldRetry(retries)) {
+                return response;
+            }
+            backoff(request, retries++, "status " + status);
+        }
+    }
+
+    private void backoff(Request request, int retry, String reason) throws IOException {
+        final long backoff = retryPolicy.getBackoffMillis(retry);
+        LOGGER.fine(String.format("Retrying %s %s in %d ms (retry %d) after %s", request.getMethod(), request.getEndpoint(), backoff, retry+1, reason));
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry request");
+        }
+    }
+
+    ElasticRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
     Response performRequest(String method, String path, Map<String,Object> requestBody) throws IOException {
         return performRequest(method, path, requestBody, false);
     }
 
     private ElasticResponse parseResponse(final Response response) throws IOException {
+        // repeated short values of the hits share a single string instance
+        final ElasticStringDictionary dictionary = new ElasticStringDictionary();
+        final ElasticResponse elasticResponse;
         try (final InputStream inputStream = response.getEntity().getContent()) {
-            return this.mapper.readValue(inputStream, ElasticResponse.class);
+            elasticResponse = this.mapper.readerFor(ElasticResponse.class)
+                    .withAttribute(SourceDeserializer.DICTIONARY, dictionary)
+                    .readValue(inputStream);
+        }
+        if (LOGGER.isLoggable(Level.FINE) && dictionary.getHits() > 0) {
+            LOGGER.fine(String.format("Deduplicated %d of %d string values (%d distinct), saving about %d bytes",
+                    dictionary.getHits(), dictionary.getHits() + dictionary.getMisses(), dictionary.size(),
+                    dictionary.getBytesSaved()));
         }
+        return elasticResponse;
     }
 
     @Override
-    public ElasticResponse scroll(String scrollId, Integer scrollTime) throws IOException {
+    public ElasticResponse scroll(String scrollId, Integer scrollTime, String opaqueId) throws IOException {
         final String path = "/_search/scroll";
 
         final Map<String,Object> requestBody = new HashMap<>();
         requestBody.put("scroll_id", scrollId);
         requestBody.put("scroll", scrollTime + "s");
-        return parseResponse(performRequest("POST", path, requestBody));
+        return parseResponse(performRequest("POST", path, requestBody, false, opaqueId));
     }
 
     @Override
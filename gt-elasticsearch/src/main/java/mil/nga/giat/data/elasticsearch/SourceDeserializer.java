@@ -0,0 +1,85 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Deserializes hit documents ({@code _source}, {@code fields}) into maps and
+ * lists like untyped deserialization. Field names are canonicalized by the
+ * parser. Short string values are shared through the
+ * {@link ElasticStringDictionary} set as the {@link #DICTIONARY} attribute of
+ * the deserialization, if any.
+ */
+public class SourceDeserializer extends StdDeserializer<Object> {
+
+    /** Deserialization attribute holding the string dictionary */
+    static final Object DICTIONARY = ElasticStringDictionary.class;
+
+    public SourceDeserializer() {
+        super(Object.class);
+    }
+
+    @Override
+    public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        return readValue(parser, (ElasticStringDictionary) context.getAttribute(DICTIONARY));
+    }
+
+    private Object readValue(JsonParser parser, ElasticStringDictionary dictionary) throws IOException {
+        final JsonToken token = parser.currentToken();
+        final Object value;
+        if (token == JsonToken.START_OBJECT || token == JsonToken.FIELD_NAME) {
+            value = readObject(parser, dictionary);
+        } else if (token == JsonToken.START_ARRAY) {
+            final List<Object> values = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                values.add(readValue(parser, dictionary));
+            }
+            value = values;
+        } else if (token == JsonToken.VALUE_STRING) {
+            if (dictionary != null) {
+                value = dictionary.canonicalize(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            } else {
+                value = parser.getText();
+            }
+        } else if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            value = parser.getNumberValue();
+        } else if (token == JsonToken.VALUE_TRUE) {
+            value = Boolean.TRUE;
+        } else if (token == JsonToken.VALUE_FALSE) {
+            value = Boolean.FALSE;
+        } else if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            value = parser.getEmbeddedObject();
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    private Map<String,Object> readObject(JsonParser parser, ElasticStringDictionary dictionary) throws IOException {
+        final Map<String,Object> values = new LinkedHashMap<>();
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        while (token == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            values.put(name, readValue(parser, dictionary));
+            token = parser.nextToken();
+        }
+        return values;
+    }
+
+}
@@ -47,6 +47,10 @@ public class ElasticAttributeTest {
 
     private boolean nested;
 
+    private boolean docValues;
+
+    private String binaryGeometryField;
+
     @Before
     public void setup() {
         name = "theName";
@@ -65,6 +69,8 @@ public class ElasticAttributeTest {
         analyzed = true;
         stored = true;
         nested = true;
+        docValues = true;
+        binaryGeometryField = "wkb";
     }
 
     @Test
@@ -82,6 +88,10 @@ public class ElasticAttributeTest {
         attr.setAnalyzed(analyzed);
         attr.setStored(stored);
         attr.setNested(nested);
+        attr.setDocValues(docValues);
+        attr.setUseDocValues(docValues);
+        attr.setBinaryGeometryField(binaryGeometryField);
+        attr.setBinaryGeometryFallback(true);
         assertEquals(attr.getName(), name);
         assertEquals(attr.getShortName(), shortName);
         assertEquals(attr.getUseShortName(), useShortName);
@@ -96,6 +106,10 @@ public class ElasticAttributeTest {
         assertEquals(attr.getAnalyzed(), analyzed);
         assertEquals(attr.isStored(), stored);
         assertEquals(attr.isNested(), nested);
+        assertEquals(attr.isDocValues(), docValues);
+        assertEquals(attr.isUseDocValues(), docValues);
+        assertEquals(attr.getBinaryGeometryField(), binaryGeometryField);
+        assertTrue(attr.isBinaryGeometryFallback());
     }
 
     @Test
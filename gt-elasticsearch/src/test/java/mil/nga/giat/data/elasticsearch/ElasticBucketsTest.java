@@ -0,0 +1,130 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ElasticBucketsTest {
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setup() {
+        mapper = new ObjectMapper();
+    }
+
+    @Test
+    public void testGeohashKeys() throws IOException {
+        final ElasticBuckets buckets = read("[{\"key\":\"u4pruydqqvj8\",\"doc_count\":3},{\"key\":\"0\",\"doc_count\":10},"
+                + "{\"key\":\"zzzz\",\"doc_count\":1}]");
+        assertEquals(3, buckets.size());
+        assertTrue(buckets.isGeohashKeyed());
+        assertEquals("u4pruydqqvj8", buckets.getKey(0));
+        assertEquals("0", buckets.getKey(1));
+        assertEquals("zzzz", buckets.getKey(2));
+        assertEquals(10, buckets.getDocCount(1));
+        assertEquals(10, buckets.getMaxDocCount());
+        assertArrayEquals(new int[] {2, 0, 1}, buckets.sortByDocCount());
+    }
+
+    @Test
+    public void testGeohashEncoding() {
+        for (final String geohash : new String[] {"0", "z", "u4pr", "s00000000000", "zzzzzzzzzzzz"}) {
+            assertEquals(geohash, ElasticBuckets.decodeGeohash(ElasticBuckets.encodeGeohash(geohash)));
+        }
+        assertTrue(ElasticBuckets.encodeGeohash("u4") < ElasticBuckets.encodeGeohash("u5"));
+        assertEquals(ElasticBuckets.INVALID_GEOHASH, ElasticBuckets.encodeGeohash(""));
+        assertEquals(ElasticBuckets.INVALID_GEOHASH, ElasticBuckets.encodeGeohash("abc"));
+        assertEquals(ElasticBuckets.INVALID_GEOHASH, ElasticBuckets.encodeGeohash("U4PR"));
+        assertEquals(ElasticBuckets.INVALID_GEOHASH, ElasticBuckets.encodeGeohash("u4pruydqqvj8u"));
+    }
+
+    @Test
+    public void testOtherKeys() throws IOException {
+        final ElasticBuckets buckets = read("[{\"key\":\"u4\",\"doc_count\":1},{\"key\":\"LTE\",\"doc_count\":2},"
+                + "{\"key\":310,\"doc_count\":3}]");
+        assertFalse(buckets.isGeohashKeyed());
+        assertEquals("u4", buckets.getKey(0));
+        assertEquals("LTE", buckets.getKey(1));
+        assertEquals(310, buckets.getKey(2));
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        final ElasticBuckets buckets = read("[{\"key\":\"u4\",\"doc_count\":1,\"avg\":{\"value\":1.5},\"count\":{\"value\":4}},"
+                + "{\"key\":\"u5\",\"doc_count\":2,\"avg\":{\"value\":null},\"count\":{\"value\":5}}]");
+        assertEquals(ImmutableList.of("avg", "count"), ImmutableList.copyOf(buckets.getMetricNames()));
+        assertEquals(1.5, buckets.getMetric("avg", 0), 1e-9);
+        assertTrue(Double.isNaN(buckets.getMetric("avg", 1)));
+        assertEquals(5, buckets.getMetric("count", 1), 1e-9);
+        assertTrue(Double.isNaN(buckets.getMetric("missing", 0)));
+
+        final Map<String,Object> avg = new LinkedHashMap<>();
+        avg.put("value", null);
+        assertEquals(ImmutableMap.of("key", "u4", "doc_count", 1, "avg", ImmutableMap.of("value", 1.5),
+                "count", ImmutableMap.of("value", 4)), buckets.get(0));
+        assertEquals(ImmutableMap.of("key", "u5", "doc_count", 2, "avg", avg, "count", ImmutableMap.of("value", 5)),
+                buckets.get(1));
+    }
+
+    @Test
+    public void testMapView() throws IOException {
+        final String content = "[{\"key\":\"u4\",\"doc_count\":1,\"stats\":{\"value\":2.0,\"value_as_string\":\"2\"},"
+                + "\"nested\":{\"buckets\":[{\"key\":\"a\",\"doc_count\":1}]},\"max\":{\"value\":3.0}},"
+                + "{\"doc_count\":5000000000,\"tag\":\"b\"}]";
+        final ElasticBuckets buckets = read(content);
+        final List<Map<String,Object>> expected = mapper.readValue(content, new TypeReference<List<Map<String,Object>>>() {});
+        assertEquals(expected, buckets);
+        assertEquals(expected.get(0).keySet(), buckets.get(0).keySet());
+        assertEquals(5000000000L, buckets.get(1).get("doc_count"));
+        assertNull(buckets.getKey(1));
+        assertFalse(buckets.get(1).containsKey("key"));
+        assertTrue(buckets.get(1).containsKey("tag"));
+        assertNull(buckets.get(1).get("max"));
+        assertEquals(expected, mapper.readValue(mapper.writeValueAsString(buckets),
+                new TypeReference<List<Map<String,Object>>>() {}));
+    }
+
+    @Test
+    public void testValueOf() {
+        final List<Map<String,Object>> maps = ImmutableList.of(
+                ImmutableMap.of("key", "u4", "doc_count", 3L, "avg", ImmutableMap.of("value", 1.5)),
+                ImmutableMap.of("key", "u5", "doc_count", 1, "name", "value"));
+        final ElasticBuckets buckets = ElasticBuckets.valueOf(maps);
+        assertTrue(buckets.isGeohashKeyed());
+        assertEquals(3, buckets.getDocCount(0));
+        assertEquals(1.5, buckets.getMetric("avg", 0), 1e-9);
+        assertEquals("value", buckets.get(1).get("name"));
+        assertArrayEquals(new int[] {1, 0}, buckets.sortByDocCount());
+        assertSame(buckets, ElasticBuckets.valueOf(buckets));
+        assertNull(ElasticBuckets.valueOf(null));
+    }
+
+    @Test
+    public void testAggregation() throws IOException {
+        final ElasticResponse response = mapper.readValue("{\"aggregations\":{\"first\":{\"buckets\":"
+                + "[{\"key\":\"0\",\"doc_count\":10}]}}}", ElasticResponse.class);
+        assertTrue(response.getAggregations().get("first").getBuckets() instanceof ElasticBuckets);
+    }
+
+    private ElasticBuckets read(String content) throws IOException {
+        final ElasticAggregation aggregation = mapper.readValue("{\"buckets\":" + content + "}", ElasticAggregation.class);
+        return (ElasticBuckets) aggregation.getBuckets();
+    }
+
+}
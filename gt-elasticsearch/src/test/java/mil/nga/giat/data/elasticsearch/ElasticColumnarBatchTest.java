@@ -0,0 +1,138 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.BINARY_GEOMETRY_FIELD;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DOC_VALUE;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+
+public class ElasticColumnarBatchTest {
+
+    private ElasticExtractionPlan plan;
+
+    private List<ElasticHit> hits;
+
+    private ElasticHitDecoder decoder;
+
+    @Before
+    public void setup() throws IOException {
+        final SimpleFeatureType featureType = ElasticHitFixtures.featureType(
+                "_id:String,geo:Point,shape:Polygon,radio:String,mcc:Integer,range:Double,updated:Date");
+        featureType.getDescriptor("updated").getUserData().put(DATE_FORMAT, "date_optional_time");
+        plan = new ElasticExtractionPlan(featureType);
+        decoder = new ElasticHitDecoder(ArrayEncoding.JSON, 0, new ElasticCircleCache());
+
+        hits = ElasticHitFixtures.hits("["
+                + "{\"_id\":\"1\",\"_source\":{\"geo\":\"10.0,20.0\",\"radio\":\"LTE\",\"mcc\":310,\"range\":1.5,"
+                + "\"updated\":\"2019-01-01\",\"shape\":{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,0],[1,1],[0,0]]]}}},"
+                + "{\"_id\":\"2\",\"_source\":{\"geo\":{\"lat\":30.0,\"lon\":40.0},\"radio\":\"GSM\",\"updated\":1546300800000}},"
+                + "{\"_id\":\"3\",\"_source\":{\"geo\":[50.0,60.0],\"radio\":\"LTE\",\"mcc\":\"311\","
+                + "\"updated\":\"not a date\"}}]");
+    }
+
+    @Test
+    public void testColumns() {
+        final ElasticColumnarBatch batch = ElasticColumnarBatch.create(plan, null, hits, decoder);
+        assertEquals(3, batch.size());
+        assertEquals(ImmutableList.of("_id", "geo", "shape", "radio", "mcc", "range", "updated"), batch.getColumnNames());
+
+        final ElasticColumnarBatch.PointColumn geo = (ElasticColumnarBatch.PointColumn) batch.getColumn("geo");
+        assertArrayEquals(new double[] {20.0, 40.0, 50.0}, geo.getX(), 1e-9);
+        assertArrayEquals(new double[] {10.0, 30.0, 60.0}, geo.getY(), 1e-9);
+
+        final ElasticColumnarBatch.StringColumn radio = (ElasticColumnarBatch.StringColumn) batch.getColumn("radio");
+        assertEquals(ImmutableList.of("LTE", "GSM"), radio.getDictionary());
+        assertArrayEquals(new int[] {0, 1, 0}, radio.getCodes());
+        assertEquals("GSM", radio.getValue(1));
+
+        final ElasticColumnarBatch.IntColumn mcc = (ElasticColumnarBatch.IntColumn) batch.getColumn("mcc");
+        assertEquals(310, mcc.getValues()[0]);
+        assertTrue(mcc.isNull(1));
+        assertEquals(311, mcc.getValues()[2]);
+
+        final ElasticColumnarBatch.DoubleColumn range = (ElasticColumnarBatch.DoubleColumn) batch.getColumn("range");
+        assertEquals(1.5, range.getValues()[0], 1e-9);
+        assertTrue(Double.isNaN(range.getValues()[1]));
+        assertTrue(range.isNull(1));
+
+        final ElasticColumnarBatch.LongColumn updated = (ElasticColumnarBatch.LongColumn) batch.getColumn("updated");
+        assertEquals(Date.class, updated.getBinding());
+        assertEquals(1546300800000L, updated.getValues()[0]);
+        assertEquals(1546300800000L, updated.getValues()[1]);
+        assertTrue(updated.isNull(2));
+
+        final ElasticColumnarBatch.ObjectColumn shape = (ElasticColumnarBatch.ObjectColumn) batch.getColumn("shape");
+        assertTrue(shape.getValues()[0] instanceof Polygon);
+        assertTrue(shape.isNull(1));
+
+        final ElasticColumnarBatch.StringColumn id = (ElasticColumnarBatch.StringColumn) batch.getColumn("_id");
+        assertEquals("3", id.getValue(2));
+    }
+
+    @Test
+    public void testBinaryGeometry() throws IOException {
+        final SimpleFeatureType featureType = ElasticHitFixtures.featureType("shape:Polygon");
+        featureType.getDescriptor("shape").getUserData().put(BINARY_GEOMETRY_FIELD, "shape_wkb");
+        final Polygon polygon = new GeometryFactory().createPolygon(new Coordinate[] {new Coordinate(0, 0),
+                new Coordinate(2, 0), new Coordinate(2, 2), new Coordinate(0, 0)});
+        final String wkb = Base64.getEncoder().encodeToString(new WKBWriter().write(polygon));
+        final List<ElasticHit> hits = ElasticHitFixtures.hits("["
+                + "{\"_id\":\"1\",\"_source\":{\"shape_wkb\":\"" + wkb + "\"}},"
+                + "{\"_id\":\"2\",\"_source\":{\"shape\":{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,0],[1,1],[0,0]]]}}}]");
+
+        final ElasticColumnarBatch batch = ElasticColumnarBatch.create(new ElasticExtractionPlan(featureType), null,
+                hits, decoder);
+        final Object[] shapes = ((ElasticColumnarBatch.ObjectColumn) batch.getColumn("shape")).getValues();
+        assertTrue(polygon.equalsExact((Polygon) shapes[0]));
+        assertEquals(4, ((Polygon) shapes[1]).getNumPoints());
+    }
+
+    @Test
+    public void testDocValueDateReadFromSource() throws IOException {
+        final SimpleFeatureType featureType = ElasticHitFixtures.featureType("day:Date");
+        featureType.getDescriptor("day").getUserData().put(DATE_FORMAT, "basic_date");
+        featureType.getDescriptor("day").getUserData().put(DOC_VALUE, true);
+        final List<ElasticHit> hits = ElasticHitFixtures.hits("["
+                + "{\"_id\":\"1\",\"_source\":{\"day\":\"20200101\"}},"
+                + "{\"_id\":\"2\",\"fields\":{\"day\":[\"1577836800000\"]}}]");
+
+        // only values read from the doc values are formatted as epoch millis
+        final ElasticExtractionPlan plan = new ElasticExtractionPlan(featureType);
+        final ElasticColumnarBatch batch = ElasticColumnarBatch.create(plan, null, hits, decoder);
+        final long[] days = ((ElasticColumnarBatch.LongColumn) batch.getColumn("day")).getValues();
+        assertEquals(1577836800000L, days[0]);
+        assertEquals(1577836800000L, days[1]);
+        final ElasticExtractionPlan.Step step = plan.getSteps()[0];
+        assertEquals(new Date(1577836800000L), decoder.decode(step, hits.get(0)));
+        assertEquals(new Date(1577836800000L), decoder.decode(step, hits.get(1)));
+    }
+
+    @Test
+    public void testSelectedColumns() {
+        final ElasticColumnarBatch batch = ElasticColumnarBatch.create(plan, ImmutableSet.of("geo", "mcc"), hits, decoder);
+        assertEquals(ImmutableList.of("geo", "mcc"), batch.getColumnNames());
+        assertNull(batch.getColumn("radio"));
+    }
+
+}
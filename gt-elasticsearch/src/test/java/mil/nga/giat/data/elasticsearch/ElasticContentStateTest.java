@@ -0,0 +1,94 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class ElasticContentStateTest {
+
+    private ElasticContentState state;
+
+    private AtomicInteger builds;
+
+    @Before
+    public void setup() {
+        state = new ElasticContentState(null);
+        builds = new AtomicInteger();
+    }
+
+    private SimpleFeatureType build() {
+        builds.incrementAndGet();
+        try {
+            return DataUtilities.createType("test", "name:String,geo:Point:srid=4326");
+        } catch (SchemaException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testBuiltFeatureTypeCached() {
+        final SimpleFeatureType featureType = state.getBuiltFeatureType(1, this::build);
+        assertSame(featureType, state.getBuiltFeatureType(1, this::build));
+        state.flush();
+        assertSame(featureType, state.getBuiltFeatureType(1, this::build));
+        assertSame(featureType, ((ElasticContentState) state.copy()).getBuiltFeatureType(1, this::build));
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    public void testBuiltFeatureTypeRebuiltOnNewVersion() {
+        final SimpleFeatureType featureType = state.getBuiltFeatureType(1, this::build);
+        assertNotSame(featureType, state.getBuiltFeatureType(2, this::build));
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    public void testExtractionPlansCachedPerFeatureType() throws SchemaException {
+        final SimpleFeatureType featureType = state.getBuiltFeatureType(1, this::build);
+        final SimpleFeatureType nameType = DataUtilities.createSubType(featureType, new String[] {"name"});
+        final ElasticExtractionPlan plan = state.getExtractionPlan(featureType);
+        final ElasticExtractionPlan namePlan = state.getExtractionPlan(nameType);
+        assertNotSame(plan, namePlan);
+        assertSame(plan, state.getExtractionPlan(featureType));
+        // equal types of the same property list share the plan
+        assertSame(namePlan, state.getExtractionPlan(DataUtilities.createSubType(featureType, new String[] {"name"})));
+    }
+
+    @Test
+    public void testExtractionPlansClearedOnNewVersion() {
+        final SimpleFeatureType featureType = state.getBuiltFeatureType(1, this::build);
+        final ElasticExtractionPlan plan = state.getExtractionPlan(featureType);
+        assertNotSame(plan, state.getExtractionPlan(state.getBuiltFeatureType(2, this::build)));
+    }
+
+    @Test
+    public void testRetypedFeatureTypesMemoized() {
+        final SimpleFeatureType featureType = state.getBuiltFeatureType(1, this::build);
+        final SimpleFeatureType nameType = state.getRetypedFeatureType(featureType, Arrays.asList("name"));
+        assertEquals(1, nameType.getAttributeCount());
+        assertSame(nameType, state.getRetypedFeatureType(featureType, Arrays.asList("name")));
+        assertNotSame(nameType, state.getRetypedFeatureType(featureType, Arrays.asList("geo")));
+        assertSame(state.getExtractionPlan(nameType), state.getExtractionPlan(
+                state.getRetypedFeatureType(featureType, Arrays.asList("name"))));
+    }
+
+    @Test
+    public void testRetypedFeatureTypesClearedOnNewSchema() {
+        final SimpleFeatureType featureType = state.getBuiltFeatureType(1, this::build);
+        final SimpleFeatureType nameType = state.getRetypedFeatureType(featureType, Arrays.asList("name"));
+        final SimpleFeatureType newType = state.getBuiltFeatureType(2, this::build);
+        assertNotSame(nameType, state.getRetypedFeatureType(newType, Arrays.asList("name")));
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class ElasticDateParserTest {
+
+    @Test
+    public void testCachedPerFormat() {
+        final ElasticDateParser parser = ElasticDateParser.forFormat("date_optional_time");
+        assertSame(parser, ElasticDateParser.forFormat("date_optional_time"));
+        assertSame(parser, ElasticDateParser.forFormat(null));
+        assertNotSame(parser, ElasticDateParser.forFormat("epoch_millis"));
+    }
+
+    @Test
+    public void testIsoDate() {
+        assertEquals(new Date(1546300800000L), ElasticDateParser.parseIsoDate("2019-01-01"));
+        assertEquals(new Date(1546336800000L), ElasticDateParser.parseIsoDate("2019-01-01T10"));
+        assertEquals(new Date(1546336800000L), ElasticDateParser.parseIsoDate("2019-01-01T10:00"));
+        assertEquals(new Date(1546336800123L), ElasticDateParser.parseIsoDate("2019-01-01T10:00:00.123"));
+        assertEquals(new Date(1546336800123L), ElasticDateParser.parseIsoDate("2019-01-01T10:00:00.123Z"));
+        assertEquals(new Date(1546333200000L), ElasticDateParser.parseIsoDate("2019-01-01T10:00:00+01:00"));
+        assertEquals(new Date(1546333200000L), ElasticDateParser.parseIsoDate("2019-01-01T10:00:00+0100"));
+        assertNull(ElasticDateParser.parseIsoDate("2019-02-30"));
+        assertNull(ElasticDateParser.parseIsoDate("2019-01-01 10:00:00"));
+        assertNull(ElasticDateParser.parseIsoDate("1546300800000"));
+    }
+
+    @Test
+    public void testEpochMillis() {
+        assertEquals(new Date(1546300800000L), ElasticDateParser.parseEpochMillis("1546300800000"));
+        assertEquals(new Date(-1000L), ElasticDateParser.parseEpochMillis("-1000"));
+        assertNull(ElasticDateParser.parseEpochMillis("2019-01-01"));
+        assertNull(ElasticDateParser.parseEpochMillis("-"));
+    }
+
+    @Test
+    public void testParse() {
+        final ElasticDateParser parser = ElasticDateParser.forFormat("strict_date_optional_time||epoch_millis");
+        assertEquals(new Date(1546336800000L), parser.parse("2019-01-01T10:00:00Z"));
+        assertEquals(new Date(1546300800000L), parser.parse("1546300800000"));
+    }
+
+    @Test
+    public void testParseYearBeforeEpochMillis() {
+        // formats are tried in order, so a year alone is not read as milliseconds
+        final ElasticDateParser parser = ElasticDateParser.forFormat("strict_date_optional_time||epoch_millis");
+        assertEquals(new Date(1577836800000L), parser.parse("2020"));
+        assertEquals(new Date(2020L), ElasticDateParser.forFormat("epoch_millis||strict_date_optional_time").parse("2020"));
+    }
+
+    @Test
+    public void testParseFallback() {
+        assertEquals(new Date(1546300800000L), ElasticDateParser.forFormat("date_optional_time").parse("2019-01"));
+        assertEquals(new Date(1546336800000L), ElasticDateParser.forFormat("yyyy/MM/dd HH:mm").parse("2019/01/01 10:00"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseInvalid() {
+        ElasticDateParser.forFormat("epoch_millis").parse("invalid");
+    }
+
+}
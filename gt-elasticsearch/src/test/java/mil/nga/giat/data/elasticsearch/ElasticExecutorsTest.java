@@ -0,0 +1,46 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Test;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ExecutorMode;
+
+public class ElasticExecutorsTest {
+
+    @Test
+    public void testPlatformExecutor() throws InterruptedException, ExecutionException {
+        final ExecutorService executor = ElasticExecutors.newExecutor(ExecutorMode.PLATFORM, "estest");
+        try {
+            final Thread thread = executor.submit(() -> Thread.currentThread()).get();
+            assertTrue(thread.isDaemon());
+            assertTrue(thread.getName().startsWith("estest-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualExecutor() throws InterruptedException, ExecutionException {
+        final ExecutorService executor = ElasticExecutors.newExecutor(ExecutorMode.VIRTUAL, "estest");
+        try {
+            final Thread thread = executor.submit(() -> Thread.currentThread()).get();
+            if (!ElasticExecutors.isVirtualThreadsAvailable()) {
+                // falls back to platform threads
+                assertTrue(thread.getName().startsWith("estest-"));
+            } else {
+                assertFalse(thread.getName().startsWith("estest-"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.geotools.data.store.ContentEntry;
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.operation.transform.IdentityTransform;
+import org.geotools.renderer.ScreenMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.google.common.collect.ImmutableList;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AttributeDecoding;
+
+public class ElasticFeatureReaderTest {
+
+    private ElasticDataStore dataStore;
+
+    private ContentState state;
+
+    private List<ElasticHit> hits;
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setup() throws IOException {
+        final SimpleFeatureType featureType = ElasticHitFixtures.featureType("_id:String,name:String,geo:Point");
+
+        dataStore = mock(ElasticDataStore.class);
+        when(dataStore.getArrayEncoding()).thenReturn(ArrayEncoding.JSON);
+        when(dataStore.getAttributeDecoding()).thenReturn(AttributeDecoding.EAGER);
+        final ContentEntry entry = mock(ContentEntry.class);
+        when(entry.getDataStore()).thenReturn(dataStore);
+        when(entry.getTypeName()).thenReturn("test");
+        state = new ContentState(entry);
+        state.setFeatureType(featureType);
+
+        hits = new ArrayList<>();
+        for (int i = 0; i < ElasticFeatureReader.DECODE_CHUNK_SIZE * 3 + 5; i++) {
+            hits.add(ElasticHitFixtures.hit("{\"_id\":\"" + i + "\",\"_source\":{\"name\":\"name" + i + "\"}}"));
+        }
+        pool = ElasticExecutors.newForkJoinPool(4, "estest");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testParallelDecodeKeepsOrder() {
+        when(dataStore.getDecodePool()).thenReturn(pool);
+        final ElasticFeatureReader reader = new ElasticFeatureReader(state, hits, null, 0);
+        for (int i = 0; i < hits.size(); i++) {
+            assertTrue(reader.hasNext());
+            final SimpleFeature feature = reader.next();
+            assertEquals("test." + i, feature.getID());
+            assertEquals("name" + i, feature.getAttribute("name"));
+        }
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    @Test
+    public void testScreenMapSkipsOccupiedPixels() throws IOException {
+        final List<ElasticHit> hits = new ArrayList<>();
+        for (final String location : new String[] {"1.2,1.2", "1.7,1.4", "5.5,5.5", "1.3,1.9", "6.0,2.0"}) {
+            hits.add(ElasticHitFixtures.hit(
+                    "{\"_id\":\"" + hits.size() + "\",\"_source\":{\"geo\":\"" + location + "\"}}"));
+        }
+        final ScreenMap screenMap = new ScreenMap(0, 0, 10, 10, IdentityTransform.create(2));
+        screenMap.setSpans(1, 1);
+
+        final ElasticFeatureReader reader = new ElasticFeatureReader(state, hits, null, 0);
+        reader.setScreenMap(screenMap);
+        final List<String> ids = new ArrayList<>();
+        while (reader.hasNext()) {
+            final SimpleFeature feature = reader.next();
+            ids.add(feature.getID());
+            assertNotNull(feature.getDefaultGeometry());
+        }
+        assertEquals(ImmutableList.of("test.0", "test.2", "test.4"), ids);
+    }
+
+    @Test
+    public void testRetypedFeatureType() {
+        final SimpleFeatureType featureType = SimpleFeatureTypeBuilder.retype(state.getFeatureType(),
+                new String[] {"name"});
+        final ElasticFeatureReader reader = new ElasticFeatureReader(state, hits.subList(0, 2), null, 0);
+        reader.setFeatureType(featureType);
+        assertSame(featureType, reader.getFeatureType());
+        final SimpleFeature feature = reader.next();
+        assertSame(featureType, feature.getFeatureType());
+        assertEquals(1, feature.getAttributeCount());
+        assertEquals("name0", feature.getAttribute("name"));
+    }
+
+    @Test
+    public void testSmallPageDecodedOnReadingThread() {
+        when(dataStore.getDecodePool()).thenReturn(pool);
+        final ElasticFeatureReader reader = new ElasticFeatureReader(state, hits.subList(0, 2), null, 0);
+        assertEquals("name0", reader.next().getAttribute("name"));
+        assertEquals("name1", reader.next().getAttribute("name"));
+        assertFalse(reader.hasNext());
+        assertEquals(0, pool.getPoolSize());
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+
+public class ElasticFieldPathTest {
+
+    private Map<String,Object> source;
+
+    private List<Object> values;
+
+    @Before
+    public void setup() throws IOException {
+        source = new ObjectMapper().readValue("{\"observations\":[{\"value\":1,\"tags\":[\"a\",\"b\"]},"
+                + "{\"value\":2,\"tags\":\"c\"},{\"other\":3},{\"value\":[4,5]}],\"flat.name\":\"x\"}",
+                new TypeReference<Map<String,Object>>() {});
+        values = new ArrayList<>();
+    }
+
+    @Test
+    public void testNestedArrays() {
+        final ElasticFieldPath path = new ElasticFieldPath("observations.value");
+        assertEquals("observations.value", path.getName());
+        assertArrayEquals(new String[] {"observations", "value"}, path.getPath());
+        assertEquals(4, path.collect(source, values, Integer.MAX_VALUE));
+        assertEquals(ImmutableList.of(1, 2, 4, 5), values);
+
+        values.clear();
+        assertEquals(3, new ElasticFieldPath("observations.tags").collect(source, values, Integer.MAX_VALUE));
+        assertEquals(ImmutableList.of("a", "b", "c"), values);
+    }
+
+    @Test
+    public void testLimit() {
+        final ElasticFieldPath path = new ElasticFieldPath("observations.value");
+        assertEquals(1, path.collect(source, values, 1));
+        assertEquals(ImmutableList.of(1), values);
+        assertEquals(2, path.collect(source, values, 2));
+        assertEquals(ImmutableList.of(1, 1, 2), values);
+    }
+
+    @Test
+    public void testFlattenedName() {
+        assertEquals(1, new ElasticFieldPath("flat.name").collect(source, values, Integer.MAX_VALUE));
+        assertEquals(ImmutableList.of("x"), values);
+    }
+
+    @Test
+    public void testMissing() {
+        assertEquals(0, new ElasticFieldPath("observations.missing").collect(source, values, Integer.MAX_VALUE));
+        assertEquals(0, new ElasticFieldPath("missing").collect(source, values, Integer.MAX_VALUE));
+        assertTrue(values.isEmpty());
+    }
+
+}
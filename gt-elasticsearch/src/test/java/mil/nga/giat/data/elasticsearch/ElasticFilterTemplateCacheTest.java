@@ -0,0 +1,165 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.GEOMETRY_TYPE;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.MATCH_ALL;
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.AttributeTypeBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import mil.nga.giat.data.elasticsearch.ElasticAttribute.ElasticGeometryType;
+
+public class ElasticFilterTemplateCacheTest {
+
+    private FilterFactory2 ff;
+
+    private SimpleFeatureType featureType;
+
+    private ElasticFilterTemplateCache cache;
+
+    @Before
+    public void setUp() {
+        ff = CommonFactoryFinder.getFilterFactory2();
+
+        final SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("test");
+        typeBuilder.add("radio", String.class);
+        typeBuilder.add("integerAttr", Integer.class);
+        typeBuilder.add("dateAttr", Date.class);
+
+        final AttributeTypeBuilder geoPointAttBuilder = new AttributeTypeBuilder();
+        geoPointAttBuilder.setName("geo_point");
+        geoPointAttBuilder.setBinding(Point.class);
+        final AttributeDescriptor geoPointAtt;
+        geoPointAtt = geoPointAttBuilder.buildDescriptor("geo_point", geoPointAttBuilder.buildType());
+        geoPointAtt.getUserData().put(GEOMETRY_TYPE, ElasticGeometryType.GEO_POINT);
+        typeBuilder.add(geoPointAtt);
+
+        featureType = typeBuilder.buildFeatureType();
+        cache = new ElasticFilterTemplateCache();
+    }
+
+    @Test
+    public void testComparison() {
+        final Filter filter1 = ff.equals(ff.property("radio"), ff.literal("GSM"));
+        final Filter filter2 = ff.equals(ff.property("radio"), ff.literal("LTE"));
+        assertEquals(encode(filter1), encodeCached(filter1, "test@0"));
+        assertEquals(ImmutableMap.of("term", ImmutableMap.of("radio", "LTE")), encodeCached(filter2, "test@0"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testConvertedLiteral() {
+        encodeCached(ff.greater(ff.property("integerAttr"), ff.literal("5")), "test@0");
+        final Filter filter = ff.greater(ff.property("integerAttr"), ff.literal("10"));
+        final Map<String,Object> queryBuilder = encodeCached(filter, "test@0");
+        assertEquals(encode(filter), queryBuilder);
+        assertEquals(ImmutableMap.of("range", ImmutableMap.of("integerAttr", ImmutableMap.of("gt", 10))), queryBuilder);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testDateLiteral() {
+        encodeCached(ff.less(ff.property("dateAttr"), ff.literal(new Date(0))), "test@0");
+        final Filter filter = ff.less(ff.property("dateAttr"), ff.literal(new Date(86400000)));
+        assertEquals(encode(filter), encodeCached(filter, "test@0"));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testBBox() {
+        final Filter filter1 = ff.and(ff.equals(ff.property("radio"), ff.literal("GSM")),
+                ff.bbox("geo_point", 0., 0., 1., 1., "EPSG:4326"));
+        final Filter filter2 = ff.and(ff.equals(ff.property("radio"), ff.literal("LTE")),
+                ff.bbox("geo_point", -10., -20., 30., 40., "EPSG:4326"));
+        assertEquals(encode(filter1), encodeCached(filter1, "test@0"));
+        final Map<String,Object> queryBuilder = encodeCached(filter2, "test@0");
+        assertEquals(encode(filter2), queryBuilder);
+        final Map<String,Object> expected = ImmutableMap.of("bool", ImmutableMap.of("must", ImmutableList.of(
+                ImmutableMap.of("term", ImmutableMap.of("radio", "LTE")),
+                ImmutableMap.of("bool", ImmutableMap.of("must", MATCH_ALL,
+                        "filter", ImmutableMap.of("geo_bounding_box", ImmutableMap.of("geo_point",
+                                ImmutableMap.of("top_left", ImmutableList.of(-10., 40.),
+                                        "bottom_right", ImmutableList.of(30., -20.)))))))));
+        assertEquals(expected, queryBuilder);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testClippedBBox() {
+        // encoding clips the literal geometry, so each encoding gets its own filter
+        assertEquals(encode(ff.bbox("geo_point", -190., 0., 1., 1., "EPSG:4326")),
+                encodeCached(ff.bbox("geo_point", -190., 0., 1., 1., "EPSG:4326"), "test@0"));
+        assertEquals(encode(ff.bbox("geo_point", -200., 0., 1., 1., "EPSG:4326")),
+                encodeCached(ff.bbox("geo_point", -200., 0., 1., 1., "EPSG:4326"), "test@0"));
+        assertEquals(encode(ff.bbox("geo_point", -180., -90., 180., 90., "EPSG:4326")),
+                encodeCached(ff.bbox("geo_point", -180., -90., 180., 90., "EPSG:4326"), "test@0"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testLike() {
+        final Filter filter1 = ff.like(ff.property("radio"), "G*");
+        final Filter filter2 = ff.like(ff.property("radio"), "L*");
+        encodeCached(filter1, "test@0");
+        assertEquals(encode(filter2), encodeCached(filter2, "test@0"));
+        assertEquals(encode(filter1), encodeCached(filter1, "test@0"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testVersion() {
+        encodeCached(ff.equals(ff.property("radio"), ff.literal("GSM")), "test@0");
+        encodeCached(ff.equals(ff.property("radio"), ff.literal("GSM")), "test@1");
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        cache = new ElasticFilterTemplateCache(1);
+        encodeCached(ff.equals(ff.property("radio"), ff.literal("GSM")), "test@0");
+        encodeCached(ff.notEqual(ff.property("radio"), ff.literal("GSM")), "test@0");
+        encodeCached(ff.equals(ff.property("radio"), ff.literal("LTE")), "test@0");
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    private Map<String,Object> encode(Filter filter) {
+        final FilterToElastic filterToElastic = new FilterToElastic();
+        filterToElastic.setFeatureType(featureType);
+        filterToElastic.encode(filter);
+        return filterToElastic.getQueryBuilder();
+    }
+
+    private Map<String,Object> encodeCached(Filter filter, String version) {
+        final FilterToElastic filterToElastic = new FilterToElastic();
+        filterToElastic.setFeatureType(featureType);
+        cache.encode(filterToElastic, filter, version);
+        return filterToElastic.getQueryBuilder();
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Feature types and search hits for decoding tests that do not need a
+ * cluster.
+ */
+final class ElasticHitFixtures {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ElasticHitFixtures() {
+    }
+
+    /**
+     * Create a feature type whose attributes are read from the fields of the
+     * same name.
+     *
+     * @param typeSpec Attributes as by {@link DataUtilities#createType(String, String)}
+     */
+    static SimpleFeatureType featureType(String typeSpec) {
+        final SimpleFeatureType featureType;
+        try {
+            featureType = DataUtilities.createType("test", typeSpec);
+        } catch (SchemaException e) {
+            throw new IllegalArgumentException(e);
+        }
+        for (final AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            descriptor.getUserData().put(FULL_NAME, descriptor.getLocalName());
+        }
+        return featureType;
+    }
+
+    static ElasticHit hit(String json) throws IOException {
+        return mapper.readValue(json, ElasticHit.class);
+    }
+
+    static List<ElasticHit> hits(String json) throws IOException {
+        return mapper.readValue(json, new TypeReference<List<ElasticHit>>() {});
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+
+public class ElasticLazyFeatureTest {
+
+    private SimpleFeatureType featureType;
+
+    private ElasticExtractionPlan plan;
+
+    private ElasticHit hit;
+
+    @Before
+    public void setup() throws IOException {
+        featureType = ElasticHitFixtures.featureType("_id:String,geo:Point,name:String,date:Date,tags:String");
+        featureType.getDescriptor("date").getUserData().put(DATE_FORMAT, "date_optional_time");
+        plan = new ElasticExtractionPlan(featureType);
+
+        hit = ElasticHitFixtures.hit("{\"_id\":\"1\",\"_source\":{\"geo\":\"10.0,20.0\",\"name\":\"test\","
+                + "\"date\":\"2019-01-01\",\"tags\":[\"a\",\"b\"]}}");
+    }
+
+    @Test
+    public void testDecodeOnAccess() {
+        final ElasticLazyFeature feature = new ElasticLazyFeature(featureType, "test.1", hit, plan,
+                new ElasticHitDecoder(ArrayEncoding.JSON, 0, new ElasticCircleCache()));
+        assertEquals("test.1", feature.getID());
+        for (int i = 0; i < featureType.getAttributeCount(); i++) {
+            assertFalse(feature.isDecoded(i));
+        }
+
+        final Point point = (Point) feature.getDefaultGeometry();
+        assertEquals(20.0, point.getX(), 1e-9);
+        assertEquals(10.0, point.getY(), 1e-9);
+        assertTrue(feature.isDecoded(featureType.indexOf("geo")));
+        assertFalse(feature.isDecoded(featureType.indexOf("name")));
+
+        assertEquals("test", feature.getAttribute("name"));
+        assertTrue(feature.isDecoded(featureType.indexOf("name")));
+        assertFalse(feature.isDecoded(featureType.indexOf("date")));
+    }
+
+    @Test
+    public void testDecodeAll() {
+        final ElasticLazyFeature feature = new ElasticLazyFeature(featureType, "test.1", hit, plan,
+                new ElasticHitDecoder(ArrayEncoding.CSV, 0, new ElasticCircleCache()));
+        assertEquals(5, feature.getAttributes().size());
+        assertEquals("1", feature.getAttribute("_id"));
+        assertEquals(new Date(1546300800000L), feature.getAttribute("date"));
+        assertEquals("a", feature.getAttribute("tags"));
+        for (int i = 0; i < featureType.getAttributeCount(); i++) {
+            assertTrue(feature.isDecoded(i));
+        }
+    }
+
+    @Test
+    public void testSetAttribute() {
+        final ElasticLazyFeature feature = new ElasticLazyFeature(featureType, "test.1", hit, plan,
+                new ElasticHitDecoder(ArrayEncoding.JSON, 0, new ElasticCircleCache()));
+        feature.setAttribute("name", "other");
+        assertTrue(feature.isDecoded(featureType.indexOf("name")));
+        assertEquals("other", feature.getAttribute("name"));
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class ElasticOpaqueIdTest {
+
+    @After
+    public void tearDown() {
+        ElasticOpaqueId.clearRequestId();
+    }
+
+    @Test
+    public void testCreate() {
+        assertNull(ElasticOpaqueId.create(null, null));
+        assertEquals("layer/search", ElasticOpaqueId.create("layer", ElasticOpaqueId.SEARCH));
+        ElasticOpaqueId.setRequestId("req1");
+        assertEquals("req1/layer/search", ElasticOpaqueId.create("layer", ElasticOpaqueId.SEARCH));
+    }
+
+    @Test
+    public void testRequestIdSanitized() {
+        ElasticOpaqueId.setRequestId("  req\n1\u00e9 ");
+        assertEquals("req_1_", ElasticOpaqueId.getRequestId());
+        ElasticOpaqueId.setRequestId("  ");
+        assertNull(ElasticOpaqueId.getRequestId());
+    }
+
+    @Test
+    public void testRequestIdTruncated() {
+        ElasticOpaqueId.setRequestId(" " + Strings.repeat("a", 10000) + " ");
+        assertEquals(Strings.repeat("a", ElasticOpaqueId.MAX_REQUEST_ID_LENGTH), ElasticOpaqueId.getRequestId());
+        assertEquals(Strings.repeat("a", ElasticOpaqueId.MAX_REQUEST_ID_LENGTH) + "/layer/scroll",
+                ElasticOpaqueId.create("layer", ElasticOpaqueId.SCROLL));
+    }
+
+}
@@ -9,9 +9,12 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 
@@ -29,8 +32,11 @@ import org.locationtech.jts.geom.MultiPoint;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.io.WKBWriter;
 
 import com.github.davidmoten.geo.GeoHash;
+import com.github.davidmoten.geo.LatLong;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class ElasticParserUtilTest {
@@ -164,6 +170,40 @@ public class ElasticParserUtilTest {
         assertEquals(0, expected.distance(actual), 1e-5);
     }
 
+    @Test
+    public void testGeoHashWithoutDigits() {
+        final LatLong latLon = GeoHash.decodeHash("bcdefg");
+        final Geometry expected = geometryFactory.createPoint(new Coordinate(latLon.getLon(), latLon.getLat()));
+        assertTrue(parserUtil.createGeometry("bcdefg").equals(expected));
+    }
+
+    @Test
+    public void testDecodeGeoHashCached() {
+        final LatLong latLon = ElasticParserUtil.decodeGeohash("u4pruyd");
+        assertSame(latLon, ElasticParserUtil.decodeGeohash("u4pruyd"));
+        assertEquals(GeoHash.decodeHash("u4pruyd").getLat(), latLon.getLat(), 0);
+    }
+
+    @Test
+    public void testParseLatLon() {
+        assertEquals(new Coordinate(-90.25, 45.5), ElasticParserUtil.parseLatLon(" +45.5 ;\t-90.25 "));
+        assertEquals(new Coordinate(0.5, 1), ElasticParserUtil.parseLatLon("1.,.5"));
+        assertNull(ElasticParserUtil.parseLatLon("45,"));
+        assertNull(ElasticParserUtil.parseLatLon("45-90"));
+        assertNull(ElasticParserUtil.parseLatLon("1.2.3,4"));
+    }
+
+    @Test
+    public void testParseDouble() {
+        for (int i = 0; i < 1000; i++) {
+            // fixed notation, as exponents are not parsed
+            final String value = String.format(Locale.ROOT, "%.12f", rand.nextDouble() * 360 - 180);
+            assertEquals(Double.parseDouble(value), ElasticParserUtil.parseDouble(value, 0, value.length()), 0);
+        }
+        assertEquals(0.1234567890123456789, ElasticParserUtil.parseDouble("0.1234567890123456789", 0, 21), 0);
+        assertEquals(-12.5, ElasticParserUtil.parseDouble("x-12.5", 1, 6), 0);
+    }
+
     @Test
     public void testInvalidStringGeometry() {
         final double lat = rand.nextDouble() * 90 - 90;
@@ -215,6 +255,69 @@ public class ElasticParserUtilTest {
         assertTrue(parserUtil.createGeometry(rgb.toMap(geom)).equalsExact(geom, 1e-9));
     }
 
+    @Test
+    public void testGeoShapePolygonPackedSequence() throws IOException {
+        Polygon geom = rgb.createRandomPolygon();
+        Polygon polygon = (Polygon) parserUtil.createGeometry(rgb.toMap(geom));
+        assertTrue(polygon.getExteriorRing().getCoordinateSequence() instanceof PackedCoordinateSequence.Double);
+        assertEquals(2, polygon.getExteriorRing().getCoordinateSequence().getDimension());
+    }
+
+    @Test
+    public void testGeoShapeLineStringVertexSkip() {
+        Map<String, Object> inputMap = new HashMap<>();
+        inputMap.put("type", "linestring");
+        inputMap.put("coordinates", Arrays.asList(Arrays.asList(0.0, 0.0), Arrays.asList(0.05, 0.05),
+                Arrays.asList(1.0, 1.0), Arrays.asList(1.05, 1.0), Arrays.asList(2.0, 2.0)));
+        parserUtil.setVertexSkipDistance(0.1);
+        Geometry geometry = parserUtil.createGeometry(inputMap);
+        assertEquals(3, geometry.getNumPoints());
+        assertEquals(new Coordinate(2.0, 2.0), geometry.getCoordinates()[2]);
+        parserUtil.setVertexSkipDistance(0);
+        assertEquals(5, parserUtil.createGeometry(inputMap).getNumPoints());
+    }
+
+    @Test
+    public void testGeoShapeVertexSkipEuclideanDistance() {
+        Map<String, Object> inputMap = new HashMap<>();
+        inputMap.put("type", "linestring");
+        inputMap.put("coordinates", Arrays.asList(Arrays.asList(0.0, 0.0), Arrays.asList(0.08, 0.08),
+                Arrays.asList(0.1, 0.1), Arrays.asList(1.0, 1.0)));
+        parserUtil.setVertexSkipDistance(0.1);
+        Geometry geometry = parserUtil.createGeometry(inputMap);
+        // each ordinate is within the distance but the vertex is not
+        assertEquals(3, geometry.getNumPoints());
+        assertEquals(new Coordinate(0.08, 0.08), geometry.getCoordinates()[1]);
+    }
+
+    @Test
+    public void testGeoShapePolygonVertexSkipKeepsValidRing() {
+        Map<String, Object> inputMap = new HashMap<>();
+        inputMap.put("type", "polygon");
+        inputMap.put("coordinates", Collections.singletonList(Arrays.asList(Arrays.asList(0.0, 0.0),
+                Arrays.asList(0.01, 0.0), Arrays.asList(0.01, 0.01), Arrays.asList(0.0, 0.0))));
+        parserUtil.setVertexSkipDistance(1.0);
+        Geometry geometry = parserUtil.createGeometry(inputMap);
+        assertEquals(4, geometry.getNumPoints());
+    }
+
+    @Test
+    public void testGeometryFromWkb() {
+        Polygon polygon = geometryFactory.createPolygon(new Coordinate[] {new Coordinate(0, 0),
+                new Coordinate(1, 0), new Coordinate(1, 1), new Coordinate(0, 0)});
+        byte[] wkb = new WKBWriter().write(polygon);
+        assertTrue(polygon.equalsExact(parserUtil.createGeometryFromWkb(wkb)));
+        assertTrue(polygon.equalsExact(parserUtil.createGeometryFromWkb(Base64.getEncoder().encodeToString(wkb))));
+    }
+
+    @Test
+    public void testGeometryFromInvalidWkb() {
+        assertNull(parserUtil.createGeometryFromWkb("not base64!"));
+        assertNull(parserUtil.createGeometryFromWkb(Base64.getEncoder().encodeToString(new byte[] {1, 2, 3})));
+        // polygon ring with a negative number of points
+        assertNull(parserUtil.createGeometryFromWkb(new byte[] {1, 3, 0, 0, 0, 1, 0, 0, 0, -1, -1, -1, -1}));
+    }
+
     @Test
     public void testGeoShapeCircle() {
         Map<String, Object> inputMap = new HashMap<>();
@@ -229,6 +332,53 @@ public class ElasticParserUtilTest {
         assertNotNull(geometry);
     }
 
+    @Test
+    public void testGeoShapeCircleWithTolerance() {
+        Map<String, Object> inputMap = new HashMap<>();
+        inputMap.put("type", "circle");
+        inputMap.put("radius", "5nmi");
+        inputMap.put("coordinates", Arrays.asList("8.0", "35.0"));
+        assertEquals(117, parserUtil.createGeometry(inputMap).getNumPoints());
+        parserUtil.setCircleTolerance(0.0001);
+        assertEquals(72, parserUtil.createGeometry(inputMap).getNumPoints());
+        parserUtil.setCircleTolerance(0.01);
+        assertEquals(13, parserUtil.createGeometry(inputMap).getNumPoints());
+        parserUtil.setCircleTolerance(1.0);
+        assertEquals(13, parserUtil.createGeometry(inputMap).getNumPoints());
+        parserUtil.setCircleTolerance(0);
+        assertEquals(117, parserUtil.createGeometry(inputMap).getNumPoints());
+    }
+
+    @Test
+    public void testGeoShapeCircleCached() {
+        Map<String, Object> inputMap = new HashMap<>();
+        inputMap.put("type", "circle");
+        inputMap.put("radius", "5nmi");
+        inputMap.put("coordinates", Arrays.asList(8.0, 35.0));
+        Geometry first = parserUtil.createGeometry(inputMap);
+        Geometry second = parserUtil.createGeometry(inputMap);
+        assertTrue(first.equalsExact(second));
+        ((Polygon) first).getExteriorRing().getCoordinateSequence().setOrdinate(1, 0, 0.0);
+        first.geometryChanged();
+        assertFalse(first.equalsExact(second));
+        assertTrue(second.equalsExact(parserUtil.createGeometry(inputMap)));
+    }
+
+    @Test
+    public void testGeoShapeCircleCacheShared() {
+        Map<String, Object> inputMap = new HashMap<>();
+        inputMap.put("type", "circle");
+        inputMap.put("radius", "5nmi");
+        inputMap.put("coordinates", Arrays.asList(8.0, 35.0));
+        ElasticCircleCache circles = new ElasticCircleCache();
+        Geometry first = new ElasticParserUtil(circles).createGeometry(inputMap);
+        Geometry second = new ElasticParserUtil(circles).createGeometry(inputMap);
+        assertEquals(1, circles.size());
+        assertTrue(first.equalsExact(second));
+        assertNotSame(((Polygon) first).getExteriorRing().getCoordinateSequence(),
+                ((Polygon) second).getExteriorRing().getCoordinateSequence());
+    }
+
     @Test
     public void testGeoShapeCircleWithMissingCenter() {
         Map<String, Object> inputMap = new HashMap<>();
@@ -435,6 +585,23 @@ public class ElasticParserUtilTest {
         assertEquals(values.get(0), map);
     }
 
+    @Test
+    public void testReadFieldWithPath() {
+        properties.put("parent", new LinkedHashMap<String, Object>());
+        ((Map) properties.get("parent")).put("attr", Arrays.asList("value1", "value2"));
+        List<Object> values = parserUtil.readField(properties, "parent.attr", new String[] { "parent", "attr" });
+        assertEquals(Arrays.asList("value1", "value2"), values);
+        assertNull(parserUtil.readField(properties, "parent.missing", new String[] { "parent", "missing" }));
+    }
+
+    @Test
+    public void testReadFlattenedFieldWithPath() {
+        properties.put("parent.attr", "value");
+        List<Object> values = parserUtil.readField(properties, "parent.attr", new String[] { "parent", "attr" });
+        assertEquals(1, values.size());
+        assertEquals("value", values.get(0));
+    }
+
     @Test
     public void testConvertToMeters() {
         double distance = ElasticParserUtil.convertToMeters("1.2mm");
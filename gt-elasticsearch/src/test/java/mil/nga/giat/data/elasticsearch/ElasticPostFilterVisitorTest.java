@@ -0,0 +1,105 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.filter.visitor.DuplicatingFilterVisitor;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.PropertyIsEqualTo;
+
+import mil.nga.giat.data.elasticsearch.ElasticPostFilterVisitor.PreparedSpatialFilter;
+import mil.nga.giat.data.elasticsearch.ElasticPostFilterVisitor.Relation;
+
+public class ElasticPostFilterVisitorTest {
+
+    private static final String POLYGON = "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))";
+
+    private List<SimpleFeature> features;
+
+    @Before
+    public void setup() throws SchemaException, ParseException {
+        final SimpleFeatureType featureType = DataUtilities.createType("test", "name:String,geo:Geometry");
+        final WKTReader reader = new WKTReader();
+        final String[] geometries = new String[] {"POINT(5 5)", "POINT(10 5)", "POINT(0 0)", "POINT(20 20)",
+                "LINESTRING(5 5, 20 5)", "LINESTRING(0 0, 0 10)", "POLYGON((5 5, 20 5, 20 20, 5 20, 5 5))",
+                "POLYGON((-1 -1, 11 -1, 11 11, -1 11, -1 -1))", "MULTIPOINT((5 5), (20 20))", null};
+        features = new ArrayList<>();
+        for (int i = 0; i < geometries.length; i++) {
+            final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+            builder.set("name", i % 2 == 0 ? "even" : "odd");
+            builder.set("geo", geometries[i] != null ? reader.read(geometries[i]) : null);
+            features.add(builder.buildFeature("test." + i));
+        }
+    }
+
+    @Test
+    public void testSpatialOperators() throws CQLException {
+        for (final String operator : new String[] {"INTERSECTS", "TOUCHES", "CROSSES", "OVERLAPS", "DISJOINT",
+                "CONTAINS", "WITHIN"}) {
+            assertSameResults(operator + "(geo, " + POLYGON + ")");
+            assertSameResults(operator + "(" + POLYGON + ", geo)");
+        }
+        assertSameResults("TOUCHES(geo, POINT(0 0))");
+        assertSameResults("CROSSES(geo, LINESTRING(-5 5, 15 5))");
+    }
+
+    @Test
+    public void testPreparedRelation() throws CQLException {
+        final Filter within = ElasticPostFilterVisitor.compile(ECQL.toFilter("WITHIN(geo, " + POLYGON + ")"));
+        assertEquals(Relation.CONTAINS, ((PreparedSpatialFilter) within).getRelation());
+        final Filter swapped = ElasticPostFilterVisitor.compile(ECQL.toFilter("WITHIN(" + POLYGON + ", geo)"));
+        assertEquals(Relation.WITHIN, ((PreparedSpatialFilter) swapped).getRelation());
+    }
+
+    @Test
+    public void testNotPrepared() throws CQLException {
+        final Filter filter = ElasticPostFilterVisitor.compile(ECQL.toFilter("INTERSECTS(geo, geo)"));
+        assertFalse(filter instanceof PreparedSpatialFilter);
+    }
+
+    @Test
+    public void testAttributePredicatesFirst() throws CQLException {
+        final String cql = "TOUCHES(geo, " + POLYGON + ") AND name = 'even'";
+        final Filter filter = ElasticPostFilterVisitor.compile(ECQL.toFilter(cql));
+        assertTrue(filter instanceof And);
+        assertTrue(((And) filter).getChildren().get(0) instanceof PropertyIsEqualTo);
+        assertTrue(((And) filter).getChildren().get(1) instanceof PreparedSpatialFilter);
+        assertSameResults(cql);
+        assertSameResults("NOT (CROSSES(geo, " + POLYGON + ")) OR name = 'odd'");
+    }
+
+    @Test
+    public void testVisitorsSeeOriginalFilter() throws CQLException {
+        final Filter original = ECQL.toFilter("INTERSECTS(geo, " + POLYGON + ")");
+        final Filter compiled = ElasticPostFilterVisitor.compile(original);
+        assertEquals(original, compiled.accept(new DuplicatingFilterVisitor(), null));
+        assertEquals(original.toString(), compiled.toString());
+    }
+
+    private void assertSameResults(String cql) throws CQLException {
+        final Filter filter = ECQL.toFilter(cql);
+        final Filter compiled = ElasticPostFilterVisitor.compile(filter);
+        for (final SimpleFeature feature : features) {
+            assertEquals(cql + " " + feature.getDefaultGeometry(), filter.evaluate(feature), compiled.evaluate(feature));
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.MATCH_ALL;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.Query;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.util.factory.Hints;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+public class ElasticQueryPlanTest {
+
+    private SimpleFeatureType featureType;
+
+    private FilterToElastic filterToElastic;
+
+    private Map<String,String> parameters;
+
+    private Query query;
+
+    @Before
+    public void setup() {
+        final SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("test");
+        typeBuilder.add("name", String.class);
+        featureType = typeBuilder.buildFeatureType();
+        filterToElastic = new FilterToElastic();
+        filterToElastic.setFeatureType(featureType);
+        parameters = new HashMap<>();
+        final Hints hints = new Hints();
+        hints.put(Hints.VIRTUAL_TABLE_PARAMETERS, parameters);
+        query = new Query();
+        query.setFilter(Filter.INCLUDE);
+        query.setHints(hints);
+    }
+
+    @Test
+    public void testQuery() {
+        filterToElastic.encode(query);
+        final ElasticQueryPlan plan = new ElasticQueryPlan(filterToElastic, featureType, featureType);
+        assertEquals(MATCH_ALL, plan.getQueryBuilder());
+        assertEquals(MATCH_ALL, plan.getNativeQueryBuilder());
+        assertNull(plan.getAggregations());
+        assertNull(plan.getPrecision());
+        assertFalse(plan.isNestedAggregation());
+        assertTrue(plan.isFullySupported());
+        assertSame(featureType, plan.getTargetFeatureType());
+        assertSame(featureType, plan.getReadFeatureType());
+    }
+
+    @Test
+    public void testGridPrecision() {
+        parameters.put("a", "{\"agg\":{\"geohash_grid\":{\"field\":\"geo\",\"precision\":5}}}");
+        filterToElastic.encode(query);
+        final ElasticQueryPlan plan = new ElasticQueryPlan(filterToElastic, featureType, featureType);
+        assertEquals(Integer.valueOf(5), plan.getPrecision());
+        assertFalse(plan.isNestedAggregation());
+    }
+
+    @Test
+    public void testNestedGridAggregation() {
+        parameters.put("a", "{\"agg\":{\"geohash_grid\":{\"field\":\"geo\",\"precision\":\"4\"},"
+                + "\"aggs\":{\"mcc\":{\"terms\":{\"field\":\"mcc\"}}}}}");
+        filterToElastic.encode(query);
+        final ElasticQueryPlan plan = new ElasticQueryPlan(filterToElastic, featureType, featureType);
+        assertEquals(Integer.valueOf(4), plan.getPrecision());
+        assertTrue(plan.isNestedAggregation());
+    }
+
+    @Test
+    public void testOtherAggregation() {
+        parameters.put("a", "{\"other\":{\"geohash_grid\":{\"field\":\"geo\",\"precision\":5}}}");
+        filterToElastic.encode(query);
+        final ElasticQueryPlan plan = new ElasticQueryPlan(filterToElastic, featureType, featureType);
+        assertNotNull(plan.getAggregations());
+        assertNull(plan.getPrecision());
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ElasticSearchTemplateTest {
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setup() {
+        mapper = new ObjectMapper();
+    }
+
+    @Test
+    public void testLiteralsAsParams() throws IOException {
+        final ElasticSearchTemplate template = ElasticSearchTemplate.create(mapper, body(1.0, 2.0, "2019-01-01"));
+        assertTrue(template.getId().startsWith(ElasticSearchTemplate.ID_PREFIX));
+        assertEquals("{\"size\":{{#toJson}}p0{{/toJson}},\"query\":{\"bool\":{\"filter\":["
+                + "{\"geo_bounding_box\":{\"geo\":{\"top_left\":{{#toJson}}p1{{/toJson}}}}},"
+                + "{\"range\":{\"date\":{\"gte\":{{#toJson}}p2{{/toJson}}}}}]}}}", template.getSource());
+        assertEquals(ImmutableMap.of("p0", 10, "p1", ImmutableList.of(1.0, 2.0), "p2", "2019-01-01"), template.getParams());
+    }
+
+    @Test
+    public void testSameStructureSameTemplate() throws IOException {
+        final ElasticSearchTemplate template1 = ElasticSearchTemplate.create(mapper, body(1.0, 2.0, "2019-01-01"));
+        final ElasticSearchTemplate template2 = ElasticSearchTemplate.create(mapper, body(3.0, 4.0, "2020-01-01"));
+        assertEquals(template1.getId(), template2.getId());
+        assertEquals(template1.getSource(), template2.getSource());
+        assertNotEquals(template1.getParams(), template2.getParams());
+    }
+
+    @Test
+    public void testDifferentStructureDifferentTemplate() throws IOException {
+        final ElasticSearchTemplate template1 = ElasticSearchTemplate.create(mapper, body(1.0, 2.0, "2019-01-01"));
+        final Map<String,Object> body = body(1.0, 2.0, "2019-01-01");
+        body.put("from", 10);
+        final ElasticSearchTemplate template2 = ElasticSearchTemplate.create(mapper, body);
+        assertNotEquals(template1.getId(), template2.getId());
+    }
+
+    private Map<String,Object> body(double x, double y, String date) throws IOException {
+        final String json = "{\"size\":10,\"query\":{\"bool\":{\"filter\":["
+                + "{\"geo_bounding_box\":{\"geo\":{\"top_left\":[" + x + "," + y + "]}}},"
+                + "{\"range\":{\"date\":{\"gte\":\"" + date + "\"}}}]}}}";
+        return mapper.readValue(json, new TypeReference<Map<String,Object>>() {});
+    }
+
+}
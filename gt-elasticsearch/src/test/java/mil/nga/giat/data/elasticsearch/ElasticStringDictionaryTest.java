@@ -0,0 +1,85 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+
+public class ElasticStringDictionaryTest {
+
+    @Test
+    public void testCanonicalize() {
+        final ElasticStringDictionary dictionary = new ElasticStringDictionary();
+        final char[] chars = "xxLTEyyLTE".toCharArray();
+        final String value = dictionary.canonicalize(chars, 2, 3);
+        assertEquals("LTE", value);
+        assertSame(value, dictionary.canonicalize(chars, 7, 3));
+        assertEquals("xx", dictionary.canonicalize(chars, 0, 2));
+        assertEquals(2, dictionary.size());
+        assertEquals(1, dictionary.getHits());
+        assertEquals(2, dictionary.getMisses());
+        assertTrue(dictionary.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void testLongValuesNotShared() {
+        final ElasticStringDictionary dictionary = new ElasticStringDictionary();
+        final char[] chars = Strings.repeat("a", ElasticStringDictionary.MAX_VALUE_LENGTH + 1).toCharArray();
+        final String value = dictionary.canonicalize(chars, 0, chars.length);
+        assertEquals(new String(chars), value);
+        assertNotSame(value, dictionary.canonicalize(chars, 0, chars.length));
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    public void testBounded() {
+        final ElasticStringDictionary dictionary = new ElasticStringDictionary();
+        for (int i = 0; i < 10000; i++) {
+            final char[] chars = String.valueOf(i).toCharArray();
+            assertEquals(String.valueOf(i), dictionary.canonicalize(chars, 0, chars.length));
+        }
+        assertTrue(dictionary.size() < 10000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDeserializeSource() throws IOException {
+        final ElasticStringDictionary dictionary = new ElasticStringDictionary();
+        final String json = "[{\"_source\":{\"radio\":\"LTE\",\"mcc\":310,\"tags\":[\"LTE\",true,null,1.5],"
+                + "\"nested\":{\"radio\":\"LTE\"}},\"fields\":{\"status\":[\"active\"]}},"
+                + "{\"_source\":{\"radio\":\"LTE\"},\"fields\":{\"status\":[\"active\"]}}]";
+        final List<ElasticHit> hits = Arrays.asList(new ObjectMapper().readerFor(ElasticHit[].class)
+                .withAttribute(SourceDeserializer.DICTIONARY, dictionary)
+                .<ElasticHit[]>readValue(json));
+
+        final Map<String,Object> source = hits.get(0).getSource();
+        assertEquals("LTE", source.get("radio"));
+        assertEquals(310, source.get("mcc"));
+        assertEquals(Arrays.asList("LTE", true, null, 1.5), source.get("tags"));
+        assertSame(source.get("radio"), ((List<Object>) source.get("tags")).get(0));
+        assertSame(source.get("radio"), ((Map<String,Object>) source.get("nested")).get("radio"));
+        assertSame(source.get("radio"), hits.get(1).getSource().get("radio"));
+        assertSame(hits.get(0).field("status").get(0), hits.get(1).field("status").get(0));
+        assertEquals(4, dictionary.getHits());
+    }
+
+    @Test
+    public void testDeserializeSourceWithoutDictionary() throws IOException {
+        final ElasticHit hit = new ObjectMapper().readValue("{\"_source\":{\"radio\":\"LTE\",\"geo\":{\"lat\":1.0}}}",
+                ElasticHit.class);
+        assertEquals("LTE", hit.getSource().get("radio"));
+        assertEquals(1.0, ((Map<?,?>) hit.getSource().get("geo")).get("lat"));
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class FederatedElasticClientTest {
+
+    private ElasticClient client1;
+
+    private ElasticClient client2;
+
+    private FederatedElasticClient client;
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setup() {
+        client1 = mock(ElasticClient.class);
+        client2 = mock(ElasticClient.class);
+        client = new FederatedElasticClient(ImmutableList.of(client1, client2));
+        mapper = new ObjectMapper();
+    }
+
+    @Test
+    public void testSearchConcatenatesHits() throws IOException {
+        when(client1.search(any(), any(), any())).thenReturn(response("{\"hits\":{\"total\":1,\"hits\":[{\"_id\":\"a\"}]}}"));
+        when(client2.search(any(), any(), any())).thenReturn(response("{\"hits\":{\"total\":2,\"hits\":[{\"_id\":\"b\"},{\"_id\":\"c\"}]}}"));
+
+        final ElasticResponse response = client.search("index", "type", new ElasticRequest());
+        assertEquals(3, response.getNumHits());
+        assertEquals(3, response.getTotalNumHits());
+        assertNull(response.getScrollId());
+    }
+
+    @Test
+    public void testSearchMergesSortedHits() throws IOException {
+        when(client1.search(any(), any(), any())).thenReturn(response("{\"hits\":{\"total\":2,\"hits\":["
+                + "{\"_id\":\"a\",\"sort\":[1]},{\"_id\":\"c\",\"sort\":[5]}]}}"));
+        when(client2.search(any(), any(), any())).thenReturn(response("{\"hits\":{\"total\":2,\"hits\":["
+                + "{\"_id\":\"b\",\"sort\":[3]},{\"_id\":\"d\",\"sort\":[7]}]}}"));
+
+        final ElasticRequest request = new ElasticRequest();
+        request.addSort("value", "asc");
+        request.setSize(3);
+        final ElasticResponse response = client.search("index", "type", request);
+        assertEquals(3, response.getNumHits());
+        assertEquals("a", response.getHits().get(0).getId());
+        assertEquals("b", response.getHits().get(1).getId());
+        assertEquals("c", response.getHits().get(2).getId());
+    }
+
+    @Test
+    public void testSearchAppliesOffsetAfterMerge() throws IOException {
+        when(client1.search(any(), any(), any())).thenReturn(response("{\"hits\":{\"total\":2,\"hits\":["
+                + "{\"_id\":\"d\",\"sort\":[7]},{\"_id\":\"a\",\"sort\":[1]}]}}"));
+        when(client2.search(any(), any(), any())).thenReturn(response("{\"hits\":{\"total\":1,\"hits\":["
+                + "{\"_id\":\"b\",\"sort\":[3]}]}}"));
+
+        final ElasticRequest request = new ElasticRequest();
+        request.addSort("value", "desc");
+        request.setFrom(1);
+        request.setSize(1);
+        final ElasticResponse response = client.search("index", "type", request);
+        assertEquals(1, response.getNumHits());
+        assertEquals("b", response.getHits().get(0).getId());
+        verify(client1).search(any(), any(), argThat(r -> r.getFrom() == 0 && r.getSize() == 2));
+    }
+
+    @Test
+    public void testSearchSumsBucketCounts() throws IOException {
+        when(client1.search(any(), any(), any())).thenReturn(response("{\"aggregations\":{\"agg\":{\"buckets\":["
+                + "{\"key\":\"u0\",\"doc_count\":2},{\"key\":\"u1\",\"doc_count\":3}]}}}"));
+        when(client2.search(any(), any(), any())).thenReturn(response("{\"aggregations\":{\"agg\":{\"buckets\":["
+                + "{\"key\":\"u1\",\"doc_count\":4},{\"key\":\"u2\",\"doc_count\":1}]}}}"));
+
+        final ElasticResponse response = client.search("index", "type", new ElasticRequest());
+        final List<Map<String,Object>> buckets = response.getAggregations().get("agg").getBuckets();
+        assertEquals(3, buckets.size());
+        assertEquals(2, ((Number) buckets.get(0).get("doc_count")).longValue());
+        assertEquals(7, ((Number) buckets.get(1).get("doc_count")).longValue());
+        assertEquals(1, ((Number) buckets.get(2).get("doc_count")).longValue());
+    }
+
+    @Test
+    public void testScrollRoutesIdsToClusters() throws IOException {
+        when(client1.search(any(), any(), any())).thenReturn(response("{\"_scroll_id\":\"s1\",\"hits\":{\"hits\":[{\"_id\":\"a\"}]}}"));
+        when(client2.search(any(), any(), any())).thenReturn(response("{\"_scroll_id\":\"s2\",\"hits\":{\"hits\":[{\"_id\":\"b\"}]}}"));
+        when(client1.scroll("s1", 10, null)).thenReturn(response("{\"_scroll_id\":\"s1\",\"hits\":{\"hits\":[]}}"));
+        when(client2.scroll("s2", 10, null)).thenReturn(response("{\"_scroll_id\":\"s3\",\"hits\":{\"hits\":[{\"_id\":\"c\"}]}}"));
+
+        final ElasticResponse response = client.search("index", "type", new ElasticRequest());
+        assertEquals("s1;s2", response.getScrollId());
+
+        final ElasticResponse next = client.scroll(response.getScrollId(), 10);
+        assertEquals(1, next.getNumHits());
+        assertEquals(";s3", next.getScrollId());
+
+        client.clearScroll(ImmutableSet.of(response.getScrollId(), next.getScrollId()));
+        verify(client1).clearScroll(ImmutableSet.of("s1"));
+        verify(client2).clearScroll(ImmutableSet.of("s2", "s3"));
+    }
+
+    @Test(expected=IOException.class)
+    public void testSearchFailure() throws IOException {
+        when(client1.search(any(), any(), any())).thenReturn(response("{}"));
+        when(client2.search(any(), any(), any())).thenThrow(new IOException("unavailable"));
+        client.search("index", "type", new ElasticRequest());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        client.close();
+        verify(client1).close();
+        verify(client2).close();
+    }
+
+    private ElasticResponse response(String json) throws IOException {
+        return mapper.readValue(json, ElasticResponse.class);
+    }
+
+}
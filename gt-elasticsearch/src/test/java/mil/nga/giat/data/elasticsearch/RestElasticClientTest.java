@@ -6,6 +6,7 @@ package mil.nga.giat.data.elasticsearch;
 
 import static org.junit.Assert.*;
 
+import org.apache.http.ConnectionClosedException;
 import org.apache.http.Header;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.ResponseException;
@@ -27,6 +28,8 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.StatusLine;
@@ -331,6 +334,18 @@ public class RestElasticClientTest {
         client.search("status_s", "active", request);
     }
 
+    @Test
+    public void testSearchDocValueFields() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search",
+                "{\"_source\":false,\"docvalue_fields\":[\"obj1\",{\"field\":\"date\",\"format\":\"epoch_millis\"}]}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.addDocValueField("obj1", null);
+        request.addDocValueField("date", "epoch_millis");
+        client.search("status_s", "active", request);
+    }
+
     @Test
     public void testSearchSourceFilteringWithProxyClient2() throws IOException {
         final RequestMatcher matcher = new RequestMatcher("POST", "/status_s/_search",
@@ -629,6 +644,234 @@ public class RestElasticClientTest {
         proxyClient.search("status_s", "active", new ElasticRequest());
     }
 
+    @Test
+    public void testScrollRetriesUnavailable() throws IOException {
+        final RestElasticClient client = new RestElasticClient(mockRestClient, null, false, new ElasticRetryPolicy(2, 1, 1, 0.1));
+        final RequestMatcher matcher = new RequestMatcher("/_search/scroll", "{\"scroll_id\":\"scrollId\",\"scroll\":\"10s\"}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockStatusResponse(503), mockResponse);
+
+        client.scroll("scrollId", 10);
+        verify(mockRestClient, times(2)).performRequest(argThat(matcher));
+        assertEquals(1, client.getRetryPolicy().getRetryCount());
+    }
+
+    @Test
+    public void testScrollRetriesExhausted() throws IOException {
+        final RestElasticClient client = new RestElasticClient(mockRestClient, null, false, new ElasticRetryPolicy(2, 1, 1, 0.1));
+        final RequestMatcher matcher = new RequestMatcher("/_search/scroll", "{\"scroll_id\":\"scrollId\",\"scroll\":\"10s\"}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenThrow(new ConnectionClosedException("Connection reset"));
+
+        try {
+            client.scroll("scrollId", 10);
+            fail();
+        } catch (ConnectionClosedException e) {
+            // expected
+        }
+        verify(mockRestClient, times(3)).performRequest(argThat(matcher));
+        assertEquals(2, client.getRetryPolicy().getRetryCount());
+        assertEquals(1, client.getRetryPolicy().getFailureCount());
+    }
+
+    @Test
+    public void testClearScrollNotRetried() throws IOException {
+        final RestElasticClient client = new RestElasticClient(mockRestClient, null, false, new ElasticRetryPolicy(2, 1, 1, 0.1));
+        final RequestMatcher matcher = new RequestMatcher("DELETE", "/_search/scroll",
+                "{\"scroll_id\":[\"id1\"]}", null);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockStatusResponse(503));
+
+        try {
+            client.clearScroll(ImmutableSet.of("id1"));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        verify(mockRestClient, times(1)).performRequest(argThat(matcher));
+        assertEquals(0, client.getRetryPolicy().getRetryCount());
+    }
+
+    @Test
+    public void testRetryBudget() throws IOException {
+        final RestElasticClient client = new RestElasticClient(mockRestClient, null, false, new ElasticRetryPolicy(100, 0, 0, 0));
+        final RequestMatcher matcher = new RequestMatcher("/_search/scroll", "{\"scroll_id\":\"scrollId\",\"scroll\":\"10s\"}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockStatusResponse(429));
+
+        try {
+            client.scroll("scrollId", 10);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        // initial budget allows ten retries
+        verify(mockRestClient, times(11)).performRequest(argThat(matcher));
+        assertEquals(10, client.getRetryPolicy().getRetryCount());
+        assertEquals(1, client.getRetryPolicy().getBudgetExhaustedCount());
+    }
+
+    @Test
+    public void testRetryBudgetExhaustedUnderSustainedFailures() throws IOException {
+        final RestElasticClient client = new RestElasticClient(mockRestClient, null, false, new ElasticRetryPolicy(2, 0, 0, 0.1));
+        final RequestMatcher matcher = new RequestMatcher("/_search/scroll", "{\"scroll_id\":\"scrollId\",\"scroll\":\"10s\"}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockStatusResponse(503));
+
+        for (int i = 0; i < 100; i++) {
+            try {
+                client.scroll("scrollId", 10);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        // retries are limited to the initial budget plus a tenth of the requests
+        assertEquals(100, client.getRetryPolicy().getRequestCount());
+        assertTrue(client.getRetryPolicy().getRetryCount() <= 20);
+        assertTrue(client.getRetryPolicy().getBudgetExhaustedCount() > 0);
+    }
+
+    @Test
+    public void testSearchTemplate() throws IOException {
+        final ArgumentMatcher<Request> putScript = r -> r.getMethod().equals("PUT") && r.getEndpoint().startsWith("/_scripts/elasticgeo-");
+        final ArgumentMatcher<Request> searchTemplate = r -> r.getMethod().equals("POST") && r.getEndpoint().equals("/status_s/_search/template");
+        when(mockRestClient.performRequest(argThat(putScript))).thenReturn(mockResponse);
+        when(mockRestClient.performRequest(argThat(searchTemplate))).thenAnswer(invocation -> {
+            when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream("{}".getBytes()));
+            return mockResponse;
+        });
+
+        for (final String value : ImmutableList.of("a", "b")) {
+            final ElasticRequest request = new ElasticRequest();
+            request.setQuery(ImmutableMap.of("term", ImmutableMap.of("status_s", value)));
+            request.setSearchTemplate(true);
+            client.search("status_s", "active", request);
+        }
+
+        verify(mockRestClient, times(1)).performRequest(argThat(putScript));
+        verify(mockRestClient, times(2)).performRequest(argThat(searchTemplate));
+    }
+
+    @Test
+    public void testSearchTemplateNotFound() throws IOException {
+        final ArgumentMatcher<Request> putScript = r -> r.getMethod().equals("PUT") && r.getEndpoint().startsWith("/_scripts/elasticgeo-");
+        final ArgumentMatcher<Request> searchTemplate = r -> r.getMethod().equals("POST") && r.getEndpoint().equals("/status_s/_search/template");
+        final AtomicReference<String> templateId = new AtomicReference<>();
+        final ResponseException mockException = mockTemplateError(400, () -> "{\"error\":{\"type\":\"illegal_argument_exception\","
+                + "\"reason\":\"unable to find script [" + templateId.get() + "] in cluster state\"}}");
+        when(mockRestClient.performRequest(argThat(putScript))).thenAnswer(invocation -> {
+            templateId.set(((Request) invocation.getArgument(0)).getEndpoint().substring("/_scripts/".length()));
+            return mockResponse;
+        });
+        when(mockRestClient.performRequest(argThat(searchTemplate))).thenThrow(mockException).thenAnswer(invocation -> {
+            when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream("{}".getBytes()));
+            return mockResponse;
+        });
+
+        final ElasticRequest request = new ElasticRequest();
+        request.setQuery(ImmutableMap.of("term", ImmutableMap.of("status_s", "a")));
+        request.setSearchTemplate(true);
+        client.search("status_s", "active", request);
+
+        verify(mockRestClient, times(2)).performRequest(argThat(putScript));
+        verify(mockRestClient, times(2)).performRequest(argThat(searchTemplate));
+    }
+
+    @Test
+    public void testSearchTemplateIndexNotFound() throws IOException {
+        final ArgumentMatcher<Request> putScript = r -> r.getMethod().equals("PUT") && r.getEndpoint().startsWith("/_scripts/elasticgeo-");
+        final ArgumentMatcher<Request> searchTemplate = r -> r.getMethod().equals("POST") && r.getEndpoint().equals("/status_s/_search/template");
+        final ResponseException mockException = mockTemplateError(404, "{\"error\":{\"type\":\"index_not_found_exception\","
+                + "\"reason\":\"no such index [status_s]\"},\"status\":404}");
+        when(mockRestClient.performRequest(argThat(putScript))).thenReturn(mockResponse);
+        when(mockRestClient.performRequest(argThat(searchTemplate))).thenThrow(mockException);
+
+        final ElasticRequest request = new ElasticRequest();
+        request.setQuery(ImmutableMap.of("term", ImmutableMap.of("status_s", "a")));
+        request.setSearchTemplate(true);
+        try {
+            client.search("status_s", "active", request);
+            fail();
+        } catch (ResponseException e) {
+            assertSame(mockException, e);
+        }
+
+        verify(mockRestClient, times(1)).performRequest(argThat(putScript));
+        verify(mockRestClient, times(1)).performRequest(argThat(searchTemplate));
+    }
+
+    @Test
+    public void testSearchTemplateBadRequest() throws IOException {
+        final ArgumentMatcher<Request> putScript = r -> r.getMethod().equals("PUT") && r.getEndpoint().startsWith("/_scripts/elasticgeo-");
+        final ArgumentMatcher<Request> searchTemplate = r -> r.getMethod().equals("POST") && r.getEndpoint().equals("/status_s/_search/template");
+        final ResponseException mockException = mockTemplateError(400,
+                "{\"error\":{\"type\":\"parsing_exception\",\"reason\":\"unknown query [foo]\"}}");
+        when(mockRestClient.performRequest(argThat(putScript))).thenReturn(mockResponse);
+        when(mockRestClient.performRequest(argThat(searchTemplate))).thenThrow(mockException);
+
+        final ElasticRequest request = new ElasticRequest();
+        request.setQuery(ImmutableMap.of("foo", ImmutableMap.of("status_s", "a")));
+        request.setSearchTemplate(true);
+        try {
+            client.search("status_s", "active", request);
+            fail();
+        } catch (ResponseException e) {
+            assertSame(mockException, e);
+        }
+
+        verify(mockRestClient, times(1)).performRequest(argThat(putScript));
+        verify(mockRestClient, times(1)).performRequest(argThat(searchTemplate));
+    }
+
+    @Test
+    public void testSearchWithOpaqueId() throws IOException {
+        final ArgumentMatcher<Request> matcher = r -> r.getEndpoint().equals("/status_s/_search")
+                && r.getOptions().getHeaders().size() == 1
+                && r.getOptions().getHeaders().get(0).getName().equals(ElasticOpaqueId.HEADER)
+                && r.getOptions().getHeaders().get(0).getValue().equals("req1/layer/search");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticOpaqueId.setRequestId("req1");
+        try {
+            final ElasticRequest request = new ElasticRequest();
+            request.setOpaqueId(ElasticOpaqueId.create("layer", ElasticOpaqueId.SEARCH));
+            client.search("status_s", "active", request);
+        } finally {
+            ElasticOpaqueId.clearRequestId();
+        }
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testScrollWithOpaqueIdAndProxyClient() throws IOException {
+        final ArgumentMatcher<Request> matcher = r -> r.getEndpoint().equals("/_search/scroll")
+                && r.getOptions().getHeaders().size() == 2
+                && r.getOptions().getHeaders().get(0).getValue().equals("runAsTest")
+                && r.getOptions().getHeaders().get(1).getValue().equals("layer/scroll");
+        when(mockProxyRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        proxyClient.scroll("id1", 10, ElasticOpaqueId.create("layer", ElasticOpaqueId.SCROLL));
+        verify(mockProxyRestClient).performRequest(argThat(matcher));
+    }
+
+    private ResponseException mockTemplateError(int status, String body) throws IOException {
+        return mockTemplateError(status, () -> body);
+    }
+
+    private ResponseException mockTemplateError(int status, Supplier<String> body) throws IOException {
+        final Response mockErrorResponse = mockStatusResponse(status);
+        final HttpEntity mockErrorEntity = mock(HttpEntity.class);
+        when(mockErrorResponse.getEntity()).thenReturn(mockErrorEntity);
+        when(mockErrorEntity.getContent()).thenAnswer(invocation -> new ByteArrayInputStream(body.get().getBytes()));
+        final ResponseException mockException = mock(ResponseException.class);
+        when(mockException.getResponse()).thenReturn(mockErrorResponse);
+        return mockException;
+    }
+
+    private Response mockStatusResponse(int status) {
+        final Response mockResponse = mock(Response.class);
+        final StatusLine mockStatusLine = mock(StatusLine.class);
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(status);
+        return mockResponse;
+    }
+
     private void mockVersion(String version) throws IOException {
         final Response mockResponse = mock(Response.class);
         final HttpEntity mockEntity = mock(HttpEntity.class);
@@ -22,6 +22,8 @@
 
 package org.elasticsearch.common;
 
+import java.util.regex.Pattern;
+
 public class Strings {
 
     public static boolean hasLength(String input) {
@@ -29,7 +31,7 @@ public class Strings {
     }
 
     public static String[] delimitedListToStringArray(String input, String delimiter) {
-        return input.split(delimiter);
+        return input.split(Pattern.quote(delimiter));
     }
 
 }